@@ -163,4 +163,11 @@ public class GraphDatabase {
         Util.throwServiceExceptionIfError(err);
         return new NodeIterator(result);
     }
+
+    public void runIndexMaintenance() throws RemoteException, Neo4jServiceException {
+
+        ParcelableError err = new ParcelableError();
+        mProxy.runIndexMaintenance(err);
+        Util.throwServiceExceptionIfError(err);
+    }
 }
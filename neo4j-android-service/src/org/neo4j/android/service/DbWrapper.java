@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
 import org.neo4j.android.common.IGraphDatabase;
 import org.neo4j.android.common.INodeIterator;
 import org.neo4j.android.common.IRelationshipIterator;
@@ -43,6 +45,10 @@ import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.index.impl.lucene.LuceneDataSource;
+import org.neo4j.index.lucene.PagedIndexHits;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.QueryCursor;
 import org.neo4j.javax.transaction.InvalidTransactionException;
 import org.neo4j.javax.transaction.SystemException;
 import org.neo4j.javax.transaction.TransactionManager;
@@ -50,6 +56,7 @@ import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.TopLevelTransaction;
 import org.neo4j.kernel.Traversal;
 import org.neo4j.kernel.Uniqueness;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
@@ -671,6 +678,33 @@ public class DbWrapper extends IGraphDatabase.Stub {
         }
     }
 
+    @Override
+    public String getNodesPageFromIndex(String name, String key, ParcelableIndexValue value, int offset, int limit,
+            String cursor, List<ParcelableNode> nodes, ParcelableError err) throws RemoteException {
+        try {
+            resumeTrxIfExists();
+            try {
+                Index<Node> nodeIndex = mDb.index().forNodes(name);
+                PagedIndexHits<Node> hits = (PagedIndexHits<Node>) nodeIndex.query(key,
+                        pageOf(key, value, offset, limit, cursor));
+                try {
+                    for (Node node : hits) {
+                        nodes.add(ParcelableFactory.makeParcelableNode(node));
+                    }
+                    return hits.getCursor() != null ? hits.getCursor().toString() : null;
+                } finally {
+                    hits.close();
+                }
+            } finally {
+                suspendCurrentTrx("getNodesPageFromIndex");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get nodes from index '" + name + "'", e);
+            err.setError(Errors.TRANSACTION, e.getMessage());
+            return null;
+        }
+    }
+
     // -------------------------------------------------------------------------
     // Relationship Indexing support
     // -------------------------------------------------------------------------
@@ -891,6 +925,65 @@ public class DbWrapper extends IGraphDatabase.Stub {
         }
     }
 
+    @Override
+    public String getRelationshipsPageFromIndex(String name, String key, ParcelableIndexValue value, int offset,
+            int limit, String cursor, List<ParcelableRelationship> relationships, ParcelableError err)
+            throws RemoteException {
+        try {
+            resumeTrxIfExists();
+            try {
+                RelationshipIndex index = mDb.index().forRelationships(name);
+                PagedIndexHits<Relationship> hits = (PagedIndexHits<Relationship>) index.query(key,
+                        pageOf(key, value, offset, limit, cursor));
+                try {
+                    for (Relationship relationship : hits) {
+                        relationships.add(ParcelableFactory.makeParcelableRelationship(relationship));
+                    }
+                    return hits.getCursor() != null ? hits.getCursor().toString() : null;
+                } finally {
+                    hits.close();
+                }
+            } finally {
+                suspendCurrentTrx("getRelationshipsPageFromIndex");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get relationships from index '" + name + "'", e);
+            err.setError(Errors.TRANSACTION, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The query for a page of the hits of an exact lookup of {@code value}.
+     * The indexes created through this service are exact ones, where a term
+     * query finds the same as {@link Index#get(String, Object)}.
+     */
+    private static QueryContext pageOf(String key, ParcelableIndexValue value, int offset, int limit, String cursor) {
+        QueryContext context = new QueryContext(new TermQuery(new Term(key, value.get().toString()))).top(limit);
+        return cursor != null ? context.after(QueryCursor.parse(cursor)) : context.skip(offset);
+    }
+
+    // -------------------------------------------------------------------------
+    // Index maintenance
+    // -------------------------------------------------------------------------
+
+    @Override
+    public void runIndexMaintenance(ParcelableError err) throws RemoteException {
+
+        try {
+            checkCallerHasWritePermission();
+
+            XaDataSource dataSource = mDb.getConfig().getTxModule().getXaDataSourceManager()
+                    .getXaDataSource(LuceneDataSource.DEFAULT_NAME);
+            if (dataSource instanceof LuceneDataSource) {
+                ((LuceneDataSource) dataSource).runMaintenance();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to run index maintenance", e);
+            err.setError(Errors.INDEX_MAINTENANCE, e.getMessage());
+        }
+    }
+
     // -------------------------------------------------------------------------
     // Helpers
     // -------------------------------------------------------------------------
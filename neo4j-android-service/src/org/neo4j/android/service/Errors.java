@@ -32,4 +32,6 @@ public class Errors {
     public static int NODE_ITERATOR = 4;
 
     public static int RELATIONSHIP_ITERATOR = 5;
+
+    public static int INDEX_MAINTENANCE = 6;
 }
@@ -19,10 +19,13 @@
  */
 package org.neo4j.graphalgo;
 
-import org.neo4j.graphalgo.impl.path.AStar;
+import java.util.concurrent.ExecutorService;
+
 import org.neo4j.graphalgo.impl.path.AllPaths;
 import org.neo4j.graphalgo.impl.path.AllSimplePaths;
-import org.neo4j.graphalgo.impl.path.Dijkstra;
+import org.neo4j.graphalgo.impl.path.ParallelShortestPath;
+import org.neo4j.graphalgo.impl.path.PrimitiveAStar;
+import org.neo4j.graphalgo.impl.path.PrimitiveDijkstra;
 import org.neo4j.graphalgo.impl.path.ShortestPath;
 import org.neo4j.graphalgo.impl.util.DoubleEvaluator;
 import org.neo4j.graphdb.Node;
@@ -110,6 +113,33 @@ public abstract class GraphAlgoFactory
         return new ShortestPath( maxDepth, expander, maxHitCount );
     }
     
+    /**
+     * Returns an algorithm which finds the same shortest paths as
+     * {@link #shortestPath(RelationshipExpander, int, int)}, but expands the
+     * frontiers of its search one level at the time, split over several
+     * threads. Worth it for graphs where the frontiers get large, like
+     * social graphs. The threads of {@code executor} only see what has
+     * been committed, not the changes of the calling thread's transaction.
+     * 
+     * @see ParallelShortestPath
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     * {@link Relationship}s for each {@link Node}.
+     * @param maxDepth the max {@link Path#length()} returned paths are allowed
+     * to have.
+     * @param maxHitCount the maximum number of connecting nodes to return
+     * paths through.
+     * @param executor the {@link ExecutorService} to run the expansion in,
+     * which isn't shut down by the algorithm.
+     * @param threads the number of parts to split each level into, f.ex.
+     * the number of threads of {@code executor}.
+     * @return an algorithm which finds shortest paths between two nodes.
+     */
+    public static PathFinder<Path> shortestPath( RelationshipExpander expander, int maxDepth,
+            int maxHitCount, ExecutorService executor, int threads )
+    {
+        return new ParallelShortestPath( maxDepth, expander, maxHitCount, executor, threads );
+    }
+    
     /**
      * Returns an algorithm which can find simple all paths of a certain length
      * between two nodes. These returned paths cannot contain loops (i.e. a node
@@ -138,7 +168,7 @@ public abstract class GraphAlgoFactory
      * See http://en.wikipedia.org/wiki/A*_search_algorithm for more
      * information.
      * 
-     * @see AStar
+     * @see PrimitiveAStar
      * @param expander the {@link RelationshipExpander} to use for expanding
      * {@link Relationship}s for each {@link Node}.
      * @param lengthEvaluator evaluator that can return the cost represented
@@ -152,7 +182,7 @@ public abstract class GraphAlgoFactory
     public static PathFinder<WeightedPath> aStar( RelationshipExpander expander,
             CostEvaluator<Double> lengthEvaluator, EstimateEvaluator<Double> estimateEvaluator )
     {
-        return new AStar( expander, lengthEvaluator, estimateEvaluator );
+        return new PrimitiveAStar( expander, lengthEvaluator, estimateEvaluator );
     }
 
     /**
@@ -166,7 +196,7 @@ public abstract class GraphAlgoFactory
      * See http://en.wikipedia.org/wiki/Dijkstra%27s_algorithm for more
      * information.
      * 
-     * @see Dijkstra
+     * @see PrimitiveDijkstra
      * @param expander the {@link RelationshipExpander} to use for expanding
      * {@link Relationship}s for each {@link Node}.
      * @param costEvaluator evaluator that can return the cost represented
@@ -177,7 +207,7 @@ public abstract class GraphAlgoFactory
     public static PathFinder<WeightedPath> dijkstra( RelationshipExpander expander,
             CostEvaluator<Double> costEvaluator )
     {
-        return new Dijkstra( expander, costEvaluator );
+        return new PrimitiveDijkstra( expander, costEvaluator );
     }
     
     /**
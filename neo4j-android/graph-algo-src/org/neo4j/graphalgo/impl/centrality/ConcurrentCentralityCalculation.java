@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.centrality;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.graphalgo.impl.centrality.ShortestPathBasedCentrality.Partial;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPath;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathFactory;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Like {@link ParallellCentralityCalculation}, but spreads the start nodes
+ * over a number of threads. Every start node is processed independently of
+ * the others (Brandes' algorithm for {@link BetweennessCentrality} and
+ * {@link StressCentrality} only sums up contributions per start node), so
+ * each thread gets its own {@link SingleSourceShortestPath} from the factory
+ * and takes the next unprocessed start node until there are none left. The
+ * results each thread reports are kept apart and merged into the centrality
+ * measures when all threads are done.
+ *
+ * Only measures which report their results through
+ * {@link ShortestPathBasedCentrality#addCentralityToNode(Node, Object)} and
+ * {@link ShortestPathBasedCentrality#setCentralityForNode(Node, Object)} can
+ * be added, i.e. {@link BetweennessCentrality}, {@link StressCentrality},
+ * {@link ClosenessCentrality} and {@link Eccentricity}. {@link NetworkDiameter}
+ * and {@link NetworkRadius} keep other state and can't.
+ * @complexity Same as {@link ParallellCentralityCalculation}, divided by the
+ *             number of threads.
+ * @param <ShortestPathCostType>
+ *            The datatype used by the underlying
+ *            {@link SingleSourceShortestPath} algorithm, i.e. the type the edge
+ *            weights are represented by.
+ */
+public class ConcurrentCentralityCalculation<ShortestPathCostType>
+{
+    protected SingleSourceShortestPathFactory<ShortestPathCostType> singleSourceShortestPathFactory;
+    protected Set<Node> nodeSet;
+    protected int threads;
+    List<ShortestPathBasedCentrality<?,ShortestPathCostType>> calculations = new LinkedList<ShortestPathBasedCentrality<?,ShortestPathCostType>>();
+    protected boolean doneCalculation = false;
+
+    /**
+     * Default constructor.
+     * @param singleSourceShortestPathFactory
+     *            Creates the singleSourceShortestPath for each thread.
+     * @param nodeSet
+     *            A set containing the nodes for which centrality values should
+     *            be computed.
+     * @param threads
+     *            The number of threads to run the calculation in, f.ex.
+     *            the number of available processors.
+     */
+    public ConcurrentCentralityCalculation(
+        SingleSourceShortestPathFactory<ShortestPathCostType> singleSourceShortestPathFactory,
+        Set<Node> nodeSet, int threads )
+    {
+        super();
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads "
+                + threads );
+        }
+        this.singleSourceShortestPathFactory = singleSourceShortestPathFactory;
+        this.nodeSet = nodeSet;
+        this.threads = threads;
+    }
+
+    /**
+     * This adds a centrality measure to be included in the calculation.
+     * @param shortestPathBasedCentrality
+     *            The centrality algorithm.
+     */
+    public void addCalculation(
+        ShortestPathBasedCentrality<?,ShortestPathCostType> shortestPathBasedCentrality )
+    {
+        if ( doneCalculation )
+        {
+            throw new RuntimeException(
+                "Trying to add a centrality calculation to a concurrent computation that has already been done." );
+        }
+        calculations.add( shortestPathBasedCentrality );
+        shortestPathBasedCentrality.doneCalculation = true;
+    }
+
+    /**
+     * Method that will perform the calculation, returning when all threads
+     * are done. After this we are of course unable to add more measures to
+     * this object.
+     */
+    public void calculate()
+    {
+        // Don't do it more than once
+        if ( doneCalculation )
+        {
+            return;
+        }
+        doneCalculation = true;
+        final Node[] startNodes = nodeSet.toArray( new Node[nodeSet.size()] );
+        final AtomicInteger nextStartNode = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List<Future<List<Partial<?>>>> results = new ArrayList<Future<List<Partial<?>>>>();
+            for ( int i = 0; i < threads; i++ )
+            {
+                results.add( executor.submit( new Callable<List<Partial<?>>>()
+                {
+                    public List<Partial<?>> call()
+                    {
+                        return process( startNodes, nextStartNode );
+                    }
+                } ) );
+            }
+            for ( Future<List<Partial<?>>> result : results )
+            {
+                merge( result.get() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while calculating centralities", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Partial<?>> process( Node[] startNodes, AtomicInteger nextStartNode )
+    {
+        SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath = singleSourceShortestPathFactory
+            .newInstance();
+        for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+        {
+            calculation.beginPartial();
+        }
+        List<Partial<?>> partials = new ArrayList<Partial<?>>();
+        try
+        {
+            for ( int i = nextStartNode.getAndIncrement(); i < startNodes.length; i = nextStartNode
+                .getAndIncrement() )
+            {
+                singleSourceShortestPath.reset();
+                singleSourceShortestPath.setStartNode( startNodes[i] );
+                for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+                {
+                    calculation.processShortestPaths( startNodes[i],
+                        singleSourceShortestPath );
+                }
+            }
+        }
+        finally
+        {
+            for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+            {
+                partials.add( calculation.endPartial() );
+            }
+        }
+        return partials;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void merge( List<Partial<?>> partials )
+    {
+        int i = 0;
+        for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+        {
+            ((ShortestPathBasedCentrality<Object,ShortestPathCostType>) calculation)
+                .mergePartial( (Partial<Object>) partials.get( i++ ) );
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.centrality;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPath;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Approximate betweenness centrality, which instead of running Brandes'
+ * algorithm from every node in the node set only runs it from a sample of
+ * them, picked with replacement. Each sampled start node contributes its
+ * dependencies divided by the probability of it being picked and by the
+ * number of samples, which makes the result an unbiased estimate of the
+ * exact {@link BetweennessCentrality}. The spread of the contributions is
+ * kept track of too, so that {@link #getStandardError(Node)} can tell how
+ * good the estimate for a node is, f.ex. the exact value is within about
+ * two standard errors of the estimate in 95% of the cases.
+ * @complexity Using a {@link SingleSourceShortestPath} algorithm with time
+ *             complexity A, this algorithm runs in time O(k * (A + m)) for k
+ *             samples.
+ * @param <ShortestPathCostType>
+ *            The datatype used by the underlying
+ *            {@link SingleSourceShortestPath} algorithm, i.e. the type the edge
+ *            weights are represented by.
+ */
+public class SampledBetweennessCentrality<ShortestPathCostType> extends
+    BetweennessCentrality<ShortestPathCostType>
+{
+    /**
+     * How start nodes are picked.
+     */
+    public static enum Sampling
+    {
+        /**
+         * Every node in the node set is equally likely to be picked.
+         */
+        UNIFORM,
+        /**
+         * Nodes are picked with a probability proportional to their number
+         * of relationships of the types and direction of the
+         * {@link SingleSourceShortestPath}. Whether this gives better
+         * estimates than {@link #UNIFORM} depends on the graph.
+         */
+        DEGREE
+    }
+
+    protected int samples;
+    protected Sampling sampling;
+    protected Random random;
+    protected Map<Node,Double> sumsOfSquares;
+
+    /**
+     * Uniform sampling.
+     * @param singleSourceShortestPath
+     *            Underlying singleSourceShortestPath.
+     * @param nodeSet
+     *            A set containing the nodes for which centrality values should
+     *            be computed.
+     * @param samples
+     *            The number of start nodes to sample.
+     */
+    public SampledBetweennessCentrality(
+        SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath,
+        Set<Node> nodeSet, int samples )
+    {
+        this( singleSourceShortestPath, nodeSet, samples, Sampling.UNIFORM,
+            new Random() );
+    }
+
+    /**
+     * Default constructor.
+     * @param singleSourceShortestPath
+     *            Underlying singleSourceShortestPath.
+     * @param nodeSet
+     *            A set containing the nodes for which centrality values should
+     *            be computed.
+     * @param samples
+     *            The number of start nodes to sample.
+     * @param sampling
+     *            How to pick the start nodes.
+     * @param random
+     *            The source of randomness, f.ex. with a fixed seed to get the
+     *            same estimates every time.
+     */
+    public SampledBetweennessCentrality(
+        SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath,
+        Set<Node> nodeSet, int samples, Sampling sampling, Random random )
+    {
+        super( singleSourceShortestPath, nodeSet );
+        if ( samples < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of samples "
+                + samples );
+        }
+        this.samples = samples;
+        this.sampling = sampling;
+        this.random = random;
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        sumsOfSquares = new HashMap<Node,Double>();
+    }
+
+    @Override
+    protected void addCentralityToNode( Node node, Double value )
+    {
+        super.addCentralityToNode( node, value );
+        Double sumOfSquares = sumsOfSquares.get( node );
+        sumsOfSquares.put( node, (sumOfSquares == null ? 0d : sumOfSquares)
+            + value * value );
+    }
+
+    /**
+     * Runs the calculation from the sampled start nodes. Since this differs
+     * from how the other centrality measures are computed, this one can't
+     * be added to a {@link ParallellCentralityCalculation}.
+     */
+    @Override
+    public void calculate()
+    {
+        // Don't do it more than once
+        if ( doneCalculation )
+        {
+            return;
+        }
+        doneCalculation = true;
+        Node[] nodes = nodeSet.toArray( new Node[nodeSet.size()] );
+        if ( nodes.length == 0 )
+        {
+            return;
+        }
+        double[] cumulativeDegrees = sampling == Sampling.DEGREE ?
+            cumulativeDegrees( nodes ) : null;
+        double totalDegree = cumulativeDegrees != null ?
+            cumulativeDegrees[nodes.length - 1] : 0;
+        double exactFactor = globalFactor;
+        try
+        {
+            for ( int i = 0; i < samples; i++ )
+            {
+                int sample;
+                double probability;
+                if ( cumulativeDegrees == null || totalDegree == 0 )
+                {
+                    sample = random.nextInt( nodes.length );
+                    probability = 1.0 / nodes.length;
+                }
+                else
+                {
+                    sample = pick( cumulativeDegrees, random.nextDouble()
+                        * totalDegree );
+                    probability = ( cumulativeDegrees[sample] - ( sample == 0 ? 0
+                        : cumulativeDegrees[sample - 1] ) ) / totalDegree;
+                }
+                // Scale the contributions of this start node, see the
+                // class description
+                globalFactor = exactFactor / ( probability * samples );
+                singleSourceShortestPath.reset();
+                singleSourceShortestPath.setStartNode( nodes[sample] );
+                processShortestPaths( nodes[sample], singleSourceShortestPath );
+            }
+        }
+        finally
+        {
+            globalFactor = exactFactor;
+        }
+    }
+
+    private double[] cumulativeDegrees( Node[] nodes )
+    {
+        double[] result = new double[nodes.length];
+        double sum = 0;
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            for ( @SuppressWarnings( "unused" ) Relationship relationship : nodes[i].getRelationships(
+                singleSourceShortestPath.getDirection(),
+                singleSourceShortestPath.getRelationshipTypes() ) )
+            {
+                sum++;
+            }
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    /**
+     * @return the first index with a cumulative degree above {@code value},
+     *         which is never a node without relationships.
+     */
+    private static int pick( double[] cumulativeDegrees, double value )
+    {
+        int low = 0;
+        int high = cumulativeDegrees.length - 1;
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( cumulativeDegrees[middle] > value )
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The standard error of the estimated centrality for a node, computed
+     * from how much the contributions of the sampled start nodes differ.
+     * @param node
+     * @return the standard error, or null if the node is not contained in
+     *         the node set initially given.
+     */
+    public Double getStandardError( Node node )
+    {
+        calculate();
+        Double estimate = centralities.get( node );
+        if ( estimate == null )
+        {
+            return null;
+        }
+        Double sumOfSquares = sumsOfSquares.get( node );
+        if ( sumOfSquares == null )
+        {
+            return 0d;
+        }
+        // Each contribution is X/samples, where the mean of X is the estimate
+        double variance = sumOfSquares - estimate * estimate / samples;
+        return variance > 0 ? Math.sqrt( variance ) : 0d;
+    }
+}
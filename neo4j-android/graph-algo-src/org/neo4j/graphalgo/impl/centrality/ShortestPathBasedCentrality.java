@@ -57,6 +57,12 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      * addCentralityToNode.
      */
     protected Map<Node,CentralityType> centralities = null;
+    /**
+     * Set for worker threads of a {@link ConcurrentCentralityCalculation},
+     * where results are collected per thread and merged afterwards.
+     */
+    private final ThreadLocal<Partial<CentralityType>> partial =
+        new ThreadLocal<Partial<CentralityType>>();
 
     /**
      * Default constructor.
@@ -106,6 +112,9 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      */
     protected void addCentralityToNode( Node node, CentralityType value )
     {
+        Partial<CentralityType> partial = this.partial.get();
+        Map<Node,CentralityType> centralities = partial != null ? partial.added
+            : this.centralities;
         CentralityType centrality = centralities.get( node );
         if ( centrality == null )
         {
@@ -123,7 +132,47 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      */
     protected void setCentralityForNode( Node node, CentralityType value )
     {
-        centralities.put( node, value );
+        Partial<CentralityType> partial = this.partial.get();
+        ( partial != null ? partial.set : centralities ).put( node, value );
+    }
+
+    /**
+     * Makes results reported by the current thread go to a separate
+     * {@link Partial} until {@link #endPartial()} is called.
+     */
+    void beginPartial()
+    {
+        partial.set( new Partial<CentralityType>() );
+    }
+
+    Partial<CentralityType> endPartial()
+    {
+        Partial<CentralityType> result = partial.get();
+        partial.remove();
+        return result;
+    }
+
+    /**
+     * Merges results collected by another thread into the centralities.
+     * Values added are accumulated on top of the current ones, values set
+     * replace them.
+     */
+    void mergePartial( Partial<CentralityType> partial )
+    {
+        for ( Map.Entry<Node,CentralityType> entry : partial.added.entrySet() )
+        {
+            addCentralityToNode( entry.getKey(), entry.getValue() );
+        }
+        centralities.putAll( partial.set );
+    }
+
+    /**
+     * Results reported by one thread during a concurrent calculation.
+     */
+    static class Partial<CentralityType>
+    {
+        final Map<Node,CentralityType> added = new HashMap<Node,CentralityType>();
+        final Map<Node,CentralityType> set = new HashMap<Node,CentralityType>();
     }
 
     /**
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+/**
+ * A {@link PathFinder} for many cheapest path queries against a graph which
+ * seldom changes. {@link Landmarks} are built once, or read from
+ * {@code file} if it was written for the current state of the graph, and
+ * used as estimates for {@link PrimitiveAStar}.
+ *
+ * A transaction event handler keeps track of changes: a committed
+ * transaction which creates or deletes relationships or changes their
+ * properties makes the landmarks stale, after which queries are answered by
+ * {@link PrimitiveDijkstra} until {@link #rebuild()} is called. Nodes created
+ * after the landmarks were built simply get no estimate. Call
+ * {@link #shutdown()} before the graph database is shut down, it unregisters
+ * the handler and writes the landmarks to {@code file} if they're still valid.
+ */
+public class LandmarkAStar implements PathFinder<WeightedPath>
+{
+    private final GraphDatabaseService graphDb;
+    private final RelationshipExpander expander;
+    private final CostEvaluator<Double> costEvaluator;
+    private final int landmarkCount;
+    private final File file;
+    private final TransactionEventHandler<Boolean> changeListener = new ChangeListener();
+    private final PathFinder<WeightedPath> fallback;
+    private volatile PathFinder<WeightedPath> finder;
+    // Guards changes, and installing rebuilt landmarks against commits
+    private final Object changeLock = new Object();
+    private int changes;
+
+    /**
+     * @param landmarkCount the number of landmarks to build. More landmarks
+     * give better estimates, but cost memory and time to build, each one
+     * keeps two {@code double}s per node.
+     * @param file where to keep the landmarks between sessions, or
+     * {@code null} to always build them.
+     */
+    public LandmarkAStar( GraphDatabaseService graphDb, RelationshipExpander expander,
+            CostEvaluator<Double> costEvaluator, int landmarkCount, File file )
+    {
+        this.graphDb = graphDb;
+        this.expander = expander;
+        this.costEvaluator = costEvaluator;
+        this.landmarkCount = landmarkCount;
+        this.file = file;
+        this.fallback = new PrimitiveDijkstra( expander, costEvaluator );
+        graphDb.registerTransactionEventHandler( changeListener );
+        Landmarks landmarks = readIfCurrent();
+        this.finder = landmarks != null ? new Finder( landmarks ) : null;
+        if ( finder == null )
+        {
+            rebuild();
+        }
+    }
+
+    private Landmarks readIfCurrent()
+    {
+        if ( file == null || !file.exists() )
+        {
+            return null;
+        }
+        try
+        {
+            Landmarks landmarks = Landmarks.read( file );
+            return landmarks.getLastCommittedTx() == Landmarks.lastCommittedTx( graphDb ) ?
+                    landmarks : null;
+        }
+        catch ( IOException e )
+        {
+            // Just build them again
+            return null;
+        }
+    }
+
+    /**
+     * Builds the landmarks from scratch for the current state of the graph
+     * and, if a file was given, writes them to it.
+     */
+    public synchronized void rebuild()
+    {
+        int changesBefore;
+        synchronized ( changeLock )
+        {
+            changesBefore = changes;
+            finder = fallback;
+        }
+        Landmarks landmarks = Landmarks.build( graphDb, expander, costEvaluator, landmarkCount );
+        synchronized ( changeLock )
+        {
+            if ( changes != changesBefore )
+            {
+                // The graph changed while building, they may not reflect that
+                return;
+            }
+            finder = new Finder( landmarks );
+        }
+        // Written outside the lock, a change committed meanwhile is
+        // caught by the transaction id they were built at
+        write( landmarks );
+    }
+
+    private void write( Landmarks landmarks )
+    {
+        if ( file == null )
+        {
+            return;
+        }
+        try
+        {
+            landmarks.write( file );
+        }
+        catch ( IOException e )
+        {
+            // They'll be built again next time
+            file.delete();
+        }
+    }
+
+    /**
+     * @return whether or not the graph has changed in a way which makes
+     * the landmarks unusable, in which case queries are slower until
+     * {@link #rebuild()} is called.
+     */
+    public boolean isStale()
+    {
+        return finder == fallback;
+    }
+
+    public WeightedPath findSinglePath( Node start, Node end )
+    {
+        return finder.findSinglePath( start, end );
+    }
+
+    public Iterable<WeightedPath> findAllPaths( Node start, Node end )
+    {
+        return finder.findAllPaths( start, end );
+    }
+
+    public synchronized void shutdown()
+    {
+        graphDb.unregisterTransactionEventHandler( changeListener );
+        PathFinder<WeightedPath> current = finder;
+        if ( current instanceof Finder && file != null )
+        {
+            // Nothing relevant changed since they were built, so they're
+            // valid for the graph as it is now
+            Landmarks landmarks = ((Finder) current).landmarks;
+            write( landmarks.withLastCommittedTx( Landmarks.lastCommittedTx( graphDb ) ) );
+        }
+    }
+
+    private class Finder extends PrimitiveAStar
+    {
+        private final Landmarks landmarks;
+
+        Finder( Landmarks landmarks )
+        {
+            super( expander, costEvaluator, landmarks.estimateEvaluator() );
+            this.landmarks = landmarks;
+        }
+    }
+
+    private class ChangeListener implements TransactionEventHandler<Boolean>
+    {
+        public Boolean beforeCommit( TransactionData data ) throws Exception
+        {
+            return data.createdRelationships().iterator().hasNext() ||
+                    data.deletedRelationships().iterator().hasNext() ||
+                    data.assignedRelationshipProperties().iterator().hasNext() ||
+                    data.removedRelationshipProperties().iterator().hasNext();
+        }
+
+        public void afterCommit( TransactionData data, Boolean changesCosts )
+        {
+            if ( changesCosts )
+            {
+                synchronized ( changeLock )
+                {
+                    changes++;
+                    finder = fallback;
+                }
+            }
+        }
+
+        public void afterRollback( TransactionData data, Boolean changesCosts )
+        {
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphalgo.impl.util.IntPriorityQueue;
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+
+/**
+ * Precomputed cheapest costs from and to a few landmark nodes, used as
+ * estimates for A* (the ALT technique). By the triangle inequality
+ * {@code d(L,t) - d(L,v)} and {@code d(v,L) - d(t,L)} are never more than the
+ * real cost {@code d(v,t)}, so the largest of those over all landmarks is an
+ * estimate which still gives the cheapest paths, but a much tighter one than
+ * none at all which is what Dijkstra has.
+ *
+ * Landmarks are picked one at a time as the node farthest away from the
+ * landmarks picked so far. The distances are only valid for the graph as it
+ * looked when they were built, see {@link LandmarkAStar}.
+ */
+public final class Landmarks
+{
+    private static final int MAGIC = 0x4C4D4B31;
+
+    private final long lastCommittedTx;
+    private final long[] landmarks;
+    private final long[] ids;
+    private final LongIntMap indexes;
+    // Indexed as [landmark][node]
+    private final double[][] from;
+    private final double[][] to;
+
+    private Landmarks( long lastCommittedTx, long[] landmarks, long[] ids,
+            double[][] from, double[][] to )
+    {
+        this.lastCommittedTx = lastCommittedTx;
+        this.landmarks = landmarks;
+        this.ids = ids;
+        this.indexes = new LongIntMap( ids.length );
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            indexes.put( ids[i], i );
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Picks {@code count} landmarks and computes the cheapest cost from and
+     * to each of them for every node in the graph.
+     */
+    public static Landmarks build( GraphDatabaseService graphDb, RelationshipExpander expander,
+            CostEvaluator<Double> costEvaluator, int count )
+    {
+        long lastCommittedTx = lastCommittedTx( graphDb );
+        LongIntMap indexes = new LongIntMap();
+        long[] ids = new long[16];
+        int nodeCount = 0;
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            if ( nodeCount == ids.length )
+            {
+                ids = Arrays.copyOf( ids, nodeCount << 1 );
+            }
+            ids[nodeCount] = node.getId();
+            indexes.put( node.getId(), nodeCount++ );
+        }
+        ids = Arrays.copyOf( ids, nodeCount );
+        count = Math.min( count, nodeCount );
+
+        long[] landmarks = new long[count];
+        double[][] from = new double[count][];
+        double[][] to = new double[count][];
+        double[] closest = new double[nodeCount];
+        Arrays.fill( closest, Double.POSITIVE_INFINITY );
+        // Start from the node farthest away from an arbitrary node
+        int next = count > 0 ? farthest( costs( graphDb, expander, costEvaluator, indexes, ids,
+                ids[0] ), false ) : 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            landmarks[i] = ids[next];
+            from[i] = costs( graphDb, expander, costEvaluator, indexes, ids, ids[next] );
+            to[i] = costs( graphDb, expander.reversed(), costEvaluator, indexes, ids, ids[next] );
+            for ( int node = 0; node < nodeCount; node++ )
+            {
+                closest[node] = Math.min( closest[node], from[i][node] );
+            }
+            next = farthest( closest, true );
+        }
+        return new Landmarks( lastCommittedTx, landmarks, ids, from, to );
+    }
+
+    /**
+     * @return the index of the node with the highest finite cost in
+     * {@code costs}. If {@code preferUnreachable} the first node which can't
+     * be reached at all is returned instead, so that landmarks also end up
+     * in parts of the graph not covered by any landmark yet.
+     */
+    private static int farthest( double[] costs, boolean preferUnreachable )
+    {
+        int result = 0;
+        double max = -1;
+        for ( int i = 0; i < costs.length; i++ )
+        {
+            if ( preferUnreachable && costs[i] == Double.POSITIVE_INFINITY )
+            {
+                return i;
+            }
+            if ( costs[i] != Double.POSITIVE_INFINITY && costs[i] > max )
+            {
+                max = costs[i];
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Single source Dijkstra which computes the cheapest cost from
+     * {@code source} to every node, {@link Double#POSITIVE_INFINITY} for the
+     * nodes which cannot be reached.
+     */
+    private static double[] costs( GraphDatabaseService graphDb, RelationshipExpander expander,
+            CostEvaluator<Double> costEvaluator, LongIntMap indexes, long[] ids, long source )
+    {
+        double[] costs = new double[ids.length];
+        Arrays.fill( costs, Double.POSITIVE_INFINITY );
+        boolean[] done = new boolean[ids.length];
+        IntPriorityQueue open = new IntPriorityQueue();
+        int sourceIndex = indexes.get( source );
+        costs[sourceIndex] = 0d;
+        open.offer( sourceIndex, 0d );
+        while ( !open.isEmpty() )
+        {
+            int index = open.poll();
+            done[index] = true;
+            Node node = graphDb.getNodeById( ids[index] );
+            for ( Relationship relationship : expander.expand( node ) )
+            {
+                int other = indexes.get( relationship.getOtherNode( node ).getId() );
+                if ( other == LongIntMap.NO_VALUE || done[other] )
+                {
+                    continue;
+                }
+                double cost = costs[index] + costEvaluator.getCost(
+                        relationship, Direction.OUTGOING );
+                if ( cost < costs[other] )
+                {
+                    costs[other] = cost;
+                    open.offer( other, cost );
+                }
+            }
+        }
+        return costs;
+    }
+
+    static long lastCommittedTx( GraphDatabaseService graphDb )
+    {
+        if ( !(graphDb instanceof AbstractGraphDatabase) )
+        {
+            return -1;
+        }
+        return ((AbstractGraphDatabase) graphDb).getConfig().getTxModule()
+                .getXaDataSourceManager().getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME )
+                .getLastCommittedTxId();
+    }
+
+    /**
+     * @return the id of the last transaction committed in the graph when
+     * these landmarks were built.
+     */
+    public long getLastCommittedTx()
+    {
+        return lastCommittedTx;
+    }
+
+    /**
+     * @return these landmarks, marked as valid for the graph as it looked
+     * when {@code lastCommittedTx} was committed.
+     */
+    public Landmarks withLastCommittedTx( long lastCommittedTx )
+    {
+        return new Landmarks( lastCommittedTx, landmarks, ids, from, to );
+    }
+
+    public long[] getLandmarks()
+    {
+        return landmarks.clone();
+    }
+
+    /**
+     * @return a lower bound of the cost to get from the node with id
+     * {@code start} to the node with id {@code end}, zero for nodes created
+     * after these landmarks were built.
+     */
+    public double estimate( long start, long end )
+    {
+        int startIndex = indexes.get( start );
+        int endIndex = indexes.get( end );
+        if ( startIndex == LongIntMap.NO_VALUE || endIndex == LongIntMap.NO_VALUE )
+        {
+            return 0d;
+        }
+        double result = 0d;
+        for ( int i = 0; i < landmarks.length; i++ )
+        {
+            result = max( result, from[i][endIndex] - from[i][startIndex] );
+            result = max( result, to[i][startIndex] - to[i][endIndex] );
+        }
+        return result;
+    }
+
+    private static double max( double current, double candidate )
+    {
+        // Differences involving unreachable nodes are NaN or infinite, skip those
+        return candidate > current && candidate != Double.POSITIVE_INFINITY ? candidate : current;
+    }
+
+    public EstimateEvaluator<Double> estimateEvaluator()
+    {
+        return new EstimateEvaluator<Double>()
+        {
+            public Double getCost( Node node, Node goal )
+            {
+                return estimate( node.getId(), goal.getId() );
+            }
+        };
+    }
+
+    public void write( File file ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new FileOutputStream( file ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeLong( lastCommittedTx );
+            out.writeInt( landmarks.length );
+            out.writeInt( ids.length );
+            for ( long landmark : landmarks )
+            {
+                out.writeLong( landmark );
+            }
+            for ( long id : ids )
+            {
+                out.writeLong( id );
+            }
+            for ( int i = 0; i < landmarks.length; i++ )
+            {
+                writeCosts( out, from[i] );
+                writeCosts( out, to[i] );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void writeCosts( DataOutputStream out, double[] costs ) throws IOException
+    {
+        for ( double cost : costs )
+        {
+            out.writeDouble( cost );
+        }
+    }
+
+    /**
+     * Reads landmarks previously written with {@link #write(File)}.
+     *
+     * @throws IOException if the file couldn't be read or isn't a landmarks file.
+     */
+    public static Landmarks read( File file ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new FileInputStream( file ) ) );
+        try
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                throw new IOException( file + " doesn't contain landmarks" );
+            }
+            long lastCommittedTx = in.readLong();
+            long[] landmarks = new long[in.readInt()];
+            long[] ids = new long[in.readInt()];
+            for ( int i = 0; i < landmarks.length; i++ )
+            {
+                landmarks[i] = in.readLong();
+            }
+            for ( int i = 0; i < ids.length; i++ )
+            {
+                ids[i] = in.readLong();
+            }
+            double[][] from = new double[landmarks.length][];
+            double[][] to = new double[landmarks.length][];
+            for ( int i = 0; i < landmarks.length; i++ )
+            {
+                from[i] = readCosts( in, ids.length );
+                to[i] = readCosts( in, ids.length );
+            }
+            return new Landmarks( lastCommittedTx, landmarks, ids, from, to );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static double[] readCosts( DataInputStream in, int count ) throws IOException
+    {
+        double[] costs = new double[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            costs[i] = in.readDouble();
+        }
+        return costs;
+    }
+}
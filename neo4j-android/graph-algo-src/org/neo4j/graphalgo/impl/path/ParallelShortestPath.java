@@ -0,0 +1,462 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphalgo.impl.util.StoreAccess;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+
+/**
+ * Finds the same shortest paths as {@link ShortestPath}, also by searching
+ * from both ends, but one whole level at the time and with the expansion of
+ * each level split over the threads of an {@link ExecutorService}. For every
+ * level the side with the smallest frontier is expanded.
+ *
+ * Expanding a level is done in two steps. First the frontier nodes are
+ * expanded in parallel, each thread collecting the relationships which lead
+ * to nodes not visited on a previous level, checked against a bitmap of
+ * visited node ids (sized from the highest node id in use). Then the
+ * collected relationships are merged into the next frontier and the
+ * recorded parents, which is cheap compared to loading the relationships.
+ * Frontiers and parents are primitive arrays indexed by per-side slots.
+ *
+ * Small frontiers are expanded as one part, so it's only for graphs where
+ * the frontiers grow large, like social graphs, where this is faster than
+ * {@link ShortestPath}.
+ *
+ * Every level is expanded by the threads of the executor, which don't see
+ * the uncommitted changes of the transaction of the calling thread, so the
+ * paths are found in what has been committed. Without an executor, or with
+ * one thread, everything is done in the calling thread and its transaction
+ * state is seen.
+ */
+public class ParallelShortestPath implements PathFinder<Path>
+{
+    /**
+     * Frontiers smaller than this are expanded as one part.
+     */
+    static final int MIN_PARALLEL_FRONTIER = 64;
+
+    private final int maxDepth;
+    private final RelationshipExpander expander;
+    private final int maxResultCount;
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * @param maxDepth the maximum depth for the traversal. Returned paths
+     * will never have a greater {@link Path#length()} than {@code maxDepth}.
+     * @param expander the {@link RelationshipExpander} to use for deciding
+     * which relationships to expand for each {@link Node}.
+     * @param maxResultCount the maximum number of connecting nodes to build
+     * paths through.
+     * @param executor runs the expansion of a level, it's not shut down
+     * by this class.
+     * @param threads the number of parts to split each level into.
+     */
+    public ParallelShortestPath( int maxDepth, RelationshipExpander expander, int maxResultCount,
+            ExecutorService executor, int threads )
+    {
+        this.maxDepth = maxDepth;
+        this.expander = expander;
+        this.maxResultCount = maxResultCount;
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    public Iterable<Path> findAllPaths( Node start, Node end )
+    {
+        return internalPaths( start, end, maxResultCount );
+    }
+
+    public Path findSinglePath( Node start, Node end )
+    {
+        Iterator<Path> paths = internalPaths( start, end, 1 ).iterator();
+        return paths.hasNext() ? paths.next() : null;
+    }
+
+    private Iterable<Path> internalPaths( Node start, Node end, int maxHits )
+    {
+        if ( start.equals( end ) )
+        {
+            return Arrays.asList( PathImpl.singular( start ) );
+        }
+        long highestNodeId = StoreAccess.highestPossibleNodeIdInUse( start.getGraphDatabase() );
+        Side startSide = new Side( start, expander, highestNodeId );
+        Side endSide = new Side( end, expander.reversed(), highestNodeId );
+        while ( startSide.depth + endSide.depth < maxDepth )
+        {
+            Side side = startSide.frontierSize <= endSide.frontierSize ? startSide : endSide;
+            if ( side.frontierSize == 0 )
+            {
+                break;
+            }
+            expand( side );
+            Side other = side == startSide ? endSide : startSide;
+            List<Integer> hits = side.hits( other, maxHits );
+            if ( !hits.isEmpty() )
+            {
+                return toPaths( startSide, endSide, side == startSide, hits );
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private void expand( Side side )
+    {
+        int frontierSize = side.frontierSize;
+        if ( executor == null || threads <= 1 )
+        {
+            side.merge( side.expand( 0, frontierSize ) );
+            side.finishLevel();
+            return;
+        }
+        // Small frontiers are expanded by a worker too, so that all levels
+        // see the same, committed, state
+        List<Callable<Expansion>> parts = new ArrayList<Callable<Expansion>>();
+        final Side expandedSide = side;
+        int partSize = frontierSize < MIN_PARALLEL_FRONTIER ? frontierSize :
+                ( frontierSize + threads - 1 ) / threads;
+        for ( int partStart = 0; partStart < frontierSize; partStart += partSize )
+        {
+            final int from = partStart;
+            final int to = Math.min( partStart + partSize, frontierSize );
+            parts.add( new Callable<Expansion>()
+            {
+                public Expansion call()
+                {
+                    return expandedSide.expand( from, to );
+                }
+            } );
+        }
+        try
+        {
+            for ( Future<Expansion> part : executor.invokeAll( parts ) )
+            {
+                side.merge( part.get() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while finding shortest path", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+        side.finishLevel();
+    }
+
+    /**
+     * Relationships found when expanding a part of a frontier, leading to
+     * nodes not visited on a previous level.
+     */
+    private static class Expansion
+    {
+        private Node[] targets = new Node[16];
+        private long[] relationships = new long[16];
+        private int[] parents = new int[16];
+        private int size;
+
+        void add( Node target, long relationship, int parent )
+        {
+            if ( size == targets.length )
+            {
+                int length = size << 1;
+                targets = Arrays.copyOf( targets, length );
+                relationships = Arrays.copyOf( relationships, length );
+                parents = Arrays.copyOf( parents, length );
+            }
+            targets[size] = target;
+            relationships[size] = relationship;
+            parents[size++] = parent;
+        }
+    }
+
+    /**
+     * The search from one end.
+     */
+    private static class Side
+    {
+        private final RelationshipExpander expander;
+        private final LongIntMap slots = new LongIntMap();
+        private Node[] nodes = new Node[16];
+        private int[] depths = new int[16];
+        private int[] firstParent = new int[16];
+        private int slotCount;
+
+        // Parents, as linked lists: relationship, slot it came from, next entry
+        private long[] parentRelationships = new long[16];
+        private int[] parentSlots = new int[16];
+        private int[] nextParent = new int[16];
+        private int parentCount;
+
+        // Node ids visited on previous levels, read by the expanding threads
+        private long[] visited;
+
+        private int[] frontier = new int[16];
+        private int frontierSize;
+        private int[] nextFrontier = new int[16];
+        private int nextFrontierSize;
+        private int depth;
+
+        Side( Node node, RelationshipExpander expander, long highestNodeId )
+        {
+            this.expander = expander;
+            this.visited = new long[(int) ( Math.max( highestNodeId, 63 ) >>> 6 ) + 1];
+            frontier[frontierSize++] = add( node, 0 );
+            markVisited( node.getId() );
+        }
+
+        private boolean isVisited( long nodeId )
+        {
+            int word = (int) ( nodeId >>> 6 );
+            return word < visited.length && ( visited[word] & ( 1L << nodeId ) ) != 0;
+        }
+
+        private void markVisited( long nodeId )
+        {
+            int word = (int) ( nodeId >>> 6 );
+            if ( word >= visited.length )
+            {
+                visited = Arrays.copyOf( visited, Math.max( word + 1, visited.length << 1 ) );
+            }
+            visited[word] |= 1L << nodeId;
+        }
+
+        private int add( Node node, int depth )
+        {
+            int slot = slotCount++;
+            if ( slot == nodes.length )
+            {
+                int length = slot << 1;
+                nodes = Arrays.copyOf( nodes, length );
+                depths = Arrays.copyOf( depths, length );
+                firstParent = Arrays.copyOf( firstParent, length );
+            }
+            slots.put( node.getId(), slot );
+            nodes[slot] = node;
+            depths[slot] = depth;
+            firstParent[slot] = -1;
+            return slot;
+        }
+
+        private void addParent( int slot, long relationship, int parent )
+        {
+            int entry = parentCount++;
+            if ( entry == parentSlots.length )
+            {
+                int length = entry << 1;
+                parentRelationships = Arrays.copyOf( parentRelationships, length );
+                parentSlots = Arrays.copyOf( parentSlots, length );
+                nextParent = Arrays.copyOf( nextParent, length );
+            }
+            parentRelationships[entry] = relationship;
+            parentSlots[entry] = parent;
+            nextParent[entry] = firstParent[slot];
+            firstParent[slot] = entry;
+        }
+
+        /**
+         * Expands the frontier nodes in {@code [from,to)}. Only reads the
+         * state of this side, so it can run in several threads at once.
+         */
+        Expansion expand( int from, int to )
+        {
+            Expansion expansion = new Expansion();
+            for ( int i = from; i < to; i++ )
+            {
+                int slot = frontier[i];
+                Node node = nodes[slot];
+                for ( Relationship relationship : expander.expand( node ) )
+                {
+                    Node target = relationship.getOtherNode( node );
+                    if ( !isVisited( target.getId() ) )
+                    {
+                        expansion.add( target, relationship.getId(), slot );
+                    }
+                }
+            }
+            return expansion;
+        }
+
+        /**
+         * Adds what was found by {@link #expand(int, int)} to the next
+         * frontier, keeping all parents on the previous level of each node.
+         */
+        void merge( Expansion expansion )
+        {
+            int nextDepth = depth + 1;
+            for ( int i = 0; i < expansion.size; i++ )
+            {
+                long nodeId = expansion.targets[i].getId();
+                int slot = slots.get( nodeId );
+                if ( slot == LongIntMap.NO_VALUE )
+                {
+                    slot = add( expansion.targets[i], nextDepth );
+                    if ( nextFrontierSize == nextFrontier.length )
+                    {
+                        nextFrontier = Arrays.copyOf( nextFrontier, nextFrontierSize << 1 );
+                    }
+                    nextFrontier[nextFrontierSize++] = slot;
+                }
+                addParent( slot, expansion.relationships[i], expansion.parents[i] );
+            }
+        }
+
+        /**
+         * Makes the next frontier the current one, once all parts of it
+         * have been merged.
+         */
+        void finishLevel()
+        {
+            for ( int i = 0; i < nextFrontierSize; i++ )
+            {
+                markVisited( nodes[nextFrontier[i]].getId() );
+            }
+            int[] oldFrontier = frontier;
+            frontier = nextFrontier;
+            frontierSize = nextFrontierSize;
+            nextFrontier = oldFrontier;
+            nextFrontierSize = 0;
+            depth++;
+        }
+
+        /**
+         * @return the slots of the nodes in the frontier which the other
+         * side has visited too, only those with the lowest total depth
+         * and at most {@code maxHits} of them.
+         */
+        List<Integer> hits( Side other, int maxHits )
+        {
+            List<Integer> result = new ArrayList<Integer>();
+            int lowestOtherDepth = Integer.MAX_VALUE;
+            for ( int i = 0; i < frontierSize; i++ )
+            {
+                int otherSlot = other.slots.get( nodes[frontier[i]].getId() );
+                if ( otherSlot == LongIntMap.NO_VALUE )
+                {
+                    continue;
+                }
+                int otherDepth = other.depths[otherSlot];
+                if ( otherDepth < lowestOtherDepth )
+                {
+                    lowestOtherDepth = otherDepth;
+                    result.clear();
+                }
+                if ( otherDepth == lowestOtherDepth && result.size() < maxHits )
+                {
+                    result.add( frontier[i] );
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return all relationship paths from the start of this side to
+         * the node in {@code slot}, each starting from this side's end.
+         */
+        List<LinkedList<Relationship>> paths( int slot, GraphDatabaseService graphDb )
+        {
+            List<LinkedList<Relationship>> result = new ArrayList<LinkedList<Relationship>>();
+            if ( depths[slot] == 0 )
+            {
+                result.add( new LinkedList<Relationship>() );
+                return result;
+            }
+            for ( int entry = firstParent[slot]; entry != -1; entry = nextParent[entry] )
+            {
+                Relationship relationship = graphDb.getRelationshipById(
+                        parentRelationships[entry] );
+                for ( LinkedList<Relationship> path : paths( parentSlots[entry], graphDb ) )
+                {
+                    path.addLast( relationship );
+                    result.add( path );
+                }
+            }
+            return result;
+        }
+    }
+
+    private static Iterable<Path> toPaths( Side startSide, Side endSide, boolean startExpanded,
+            List<Integer> hits )
+    {
+        Side expanded = startExpanded ? startSide : endSide;
+        Side other = startExpanded ? endSide : startSide;
+        Node start = startSide.nodes[0];
+        Node end = endSide.nodes[0];
+        GraphDatabaseService graphDb = start.getGraphDatabase();
+        Collection<Path> paths = new ArrayList<Path>();
+        for ( int slot : hits )
+        {
+            int otherSlot = other.slots.get( expanded.nodes[slot].getId() );
+            int startSlot = startExpanded ? slot : otherSlot;
+            int endSlot = startExpanded ? otherSlot : slot;
+            List<LinkedList<Relationship>> endPaths = endSide.paths( endSlot, graphDb );
+            for ( LinkedList<Relationship> startPath : startSide.paths( startSlot, graphDb ) )
+            {
+                PathImpl.Builder startBuilder = toBuilder( start, startPath );
+                for ( LinkedList<Relationship> endPath : endPaths )
+                {
+                    paths.add( startBuilder.build( toBuilder( end, endPath ) ) );
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static PathImpl.Builder toBuilder( Node startNode, LinkedList<Relationship> rels )
+    {
+        PathImpl.Builder builder = new PathImpl.Builder( startNode );
+        for ( Relationship rel : rels )
+        {
+            builder = builder.push( rel );
+        }
+        return builder;
+    }
+}
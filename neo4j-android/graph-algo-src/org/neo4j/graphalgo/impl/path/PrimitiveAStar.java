@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphdb.RelationshipExpander;
+
+/**
+ * The A* algorithm on top of the primitive state of {@link PrimitiveDijkstra},
+ * where the open set is ordered by cost so far plus the estimate from
+ * {@code estimateEvaluator}. Unlike {@link AStar} nodes already in the open
+ * set get their priority lowered when a cheaper way to them is found, and
+ * {@link #findAllPaths(org.neo4j.graphdb.Node, org.neo4j.graphdb.Node)}
+ * returns all equally cheap paths.
+ */
+public class PrimitiveAStar extends PrimitiveDijkstra
+{
+    public PrimitiveAStar( RelationshipExpander expander,
+            CostEvaluator<Double> lengthEvaluator, EstimateEvaluator<Double> estimateEvaluator )
+    {
+        super( expander, lengthEvaluator, estimateEvaluator );
+    }
+}
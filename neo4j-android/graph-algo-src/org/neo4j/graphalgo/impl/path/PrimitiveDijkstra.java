@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphalgo.impl.util.IntPriorityQueue;
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphalgo.impl.util.WeightedPathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+/**
+ * Dijkstra's algorithm over primitive state. Every node reached gets a dense
+ * index from a {@link LongIntMap} and its cost, estimate and predecessors are
+ * kept in arrays indexed by that, with an {@link IntPriorityQueue} (binary
+ * heap with decrease-key) as open set. Compared to {@link Dijkstra}, which
+ * is built on top of a traversal, no path or branch objects are created per
+ * expanded relationship and no ids are boxed.
+ *
+ * Given an {@link EstimateEvaluator} the search becomes A*, see
+ * {@link PrimitiveAStar}.
+ */
+public class PrimitiveDijkstra implements PathFinder<WeightedPath>
+{
+    private final RelationshipExpander expander;
+    private final CostEvaluator<Double> costEvaluator;
+    private final EstimateEvaluator<Double> estimateEvaluator;
+
+    public PrimitiveDijkstra( RelationshipExpander expander, CostEvaluator<Double> costEvaluator )
+    {
+        this( expander, costEvaluator, null );
+    }
+
+    PrimitiveDijkstra( RelationshipExpander expander, CostEvaluator<Double> costEvaluator,
+            EstimateEvaluator<Double> estimateEvaluator )
+    {
+        this.expander = expander;
+        this.costEvaluator = costEvaluator;
+        this.estimateEvaluator = estimateEvaluator;
+    }
+
+    public WeightedPath findSinglePath( Node start, Node end )
+    {
+        Search search = new Search( start, end );
+        if ( !search.run( true ) )
+        {
+            return null;
+        }
+        return search.paths().next();
+    }
+
+    public Iterable<WeightedPath> findAllPaths( Node start, Node end )
+    {
+        final Search search = new Search( start, end );
+        if ( !search.run( false ) )
+        {
+            return Collections.emptyList();
+        }
+        return new Iterable<WeightedPath>()
+        {
+            public Iterator<WeightedPath> iterator()
+            {
+                return search.paths();
+            }
+        };
+    }
+
+    private class Search
+    {
+        private final Node start;
+        private final Node end;
+        private final LongIntMap indexes = new LongIntMap();
+        private final IntPriorityQueue open = new IntPriorityQueue();
+        private int count;
+
+        // Per node, indexed by the dense index of the node
+        private Node[] nodes = new Node[16];
+        private double[] costs = new double[16];
+        private double[] estimates = new double[16];
+        private int[] firstPredecessor = new int[16];
+
+        // Predecessors, as linked lists: relationship, node it came from, next entry
+        private long[] predecessorRelationships = new long[16];
+        private int[] predecessorNodes = new int[16];
+        private int[] nextPredecessor = new int[16];
+        private int predecessorCount;
+
+        private int startIndex;
+        private int endIndex = -1;
+
+        Search( Node start, Node end )
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        private int indexOf( Node node )
+        {
+            int index = indexes.get( node.getId() );
+            if ( index == LongIntMap.NO_VALUE )
+            {
+                index = count++;
+                if ( index == nodes.length )
+                {
+                    int length = index << 1;
+                    nodes = Arrays.copyOf( nodes, length );
+                    costs = Arrays.copyOf( costs, length );
+                    estimates = Arrays.copyOf( estimates, length );
+                    firstPredecessor = Arrays.copyOf( firstPredecessor, length );
+                }
+                indexes.put( node.getId(), index );
+                nodes[index] = node;
+                costs[index] = Double.POSITIVE_INFINITY;
+                estimates[index] = estimateEvaluator != null ?
+                        estimateEvaluator.getCost( node, end ) : 0d;
+                firstPredecessor[index] = -1;
+            }
+            return index;
+        }
+
+        private void addPredecessor( int index, Relationship relationship, int from,
+                boolean replace )
+        {
+            int entry = predecessorCount++;
+            if ( entry == predecessorNodes.length )
+            {
+                int length = entry << 1;
+                predecessorRelationships = Arrays.copyOf( predecessorRelationships, length );
+                predecessorNodes = Arrays.copyOf( predecessorNodes, length );
+                nextPredecessor = Arrays.copyOf( nextPredecessor, length );
+            }
+            predecessorRelationships[entry] = relationship.getId();
+            predecessorNodes[entry] = from;
+            nextPredecessor[entry] = replace ? -1 : firstPredecessor[index];
+            firstPredecessor[index] = entry;
+        }
+
+        /**
+         * Runs the search until the cheapest cost to the end node is known.
+         * If {@code single} is {@code false} it continues until all nodes
+         * which could lie on an equally cheap path have been expanded, so
+         * that all of those paths are recorded as predecessors.
+         *
+         * @return whether or not the end node was reached.
+         */
+        boolean run( boolean single )
+        {
+            startIndex = indexOf( start );
+            costs[startIndex] = 0d;
+            open.offer( startIndex, estimates[startIndex] );
+            while ( !open.isEmpty() )
+            {
+                if ( endIndex != -1 && open.peekPriority() > costs[endIndex] )
+                {
+                    break;
+                }
+                int index = open.poll();
+                Node node = nodes[index];
+                if ( node.equals( end ) )
+                {
+                    endIndex = index;
+                    if ( single )
+                    {
+                        break;
+                    }
+                    continue;
+                }
+                double cost = costs[index];
+                for ( Relationship relationship : expander.expand( node ) )
+                {
+                    int other = indexOf( relationship.getOtherNode( node ) );
+                    double otherCost = cost + costEvaluator.getCost(
+                            relationship, Direction.OUTGOING );
+                    if ( otherCost < costs[other] )
+                    {
+                        costs[other] = otherCost;
+                        addPredecessor( other, relationship, index, true );
+                        open.offer( other, otherCost + estimates[other] );
+                    }
+                    else if ( !single && otherCost == costs[other] )
+                    {
+                        addPredecessor( other, relationship, index, false );
+                    }
+                }
+            }
+            return endIndex != -1;
+        }
+
+        /**
+         * @return the cheapest paths, found by walking the recorded
+         * predecessors backwards from the end node. Nodes already on the
+         * path are skipped so that zero cost cycles won't produce loops.
+         */
+        Iterator<WeightedPath> paths()
+        {
+            return new PrefetchingIterator<WeightedPath>()
+            {
+                private final int[] pathNodes = new int[count];
+                private final int[] pathEntries = new int[count];
+                private final boolean[] onPath = new boolean[count];
+                private int depth;
+                {
+                    pathNodes[0] = endIndex;
+                    pathEntries[0] = firstPredecessor[endIndex];
+                    onPath[endIndex] = true;
+                    depth = 1;
+                }
+
+                @Override
+                protected WeightedPath fetchNextOrNull()
+                {
+                    while ( depth > 0 )
+                    {
+                        int top = depth - 1;
+                        int index = pathNodes[top];
+                        if ( index == startIndex )
+                        {
+                            WeightedPath path = toPath( top );
+                            pop();
+                            return path;
+                        }
+                        int entry = pathEntries[top];
+                        if ( entry == -1 )
+                        {
+                            pop();
+                            continue;
+                        }
+                        int from = predecessorNodes[entry];
+                        if ( onPath[from] )
+                        {
+                            pathEntries[top] = nextPredecessor[entry];
+                            continue;
+                        }
+                        pathNodes[depth] = from;
+                        pathEntries[depth] = firstPredecessor[from];
+                        onPath[from] = true;
+                        depth++;
+                    }
+                    return null;
+                }
+
+                private void pop()
+                {
+                    depth--;
+                    onPath[pathNodes[depth]] = false;
+                    if ( depth > 0 )
+                    {
+                        pathEntries[depth - 1] = nextPredecessor[pathEntries[depth - 1]];
+                    }
+                }
+
+                private WeightedPath toPath( int top )
+                {
+                    GraphDatabaseService graphDb = start.getGraphDatabase();
+                    PathImpl.Builder builder = new PathImpl.Builder( start );
+                    for ( int i = top - 1; i >= 0; i-- )
+                    {
+                        builder = builder.push( graphDb.getRelationshipById(
+                                predecessorRelationships[pathEntries[i]] ) );
+                    }
+                    return new WeightedPathImpl( costs[endIndex], builder.build() );
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+/**
+ * A partition of the nodes of a {@link GraphSnapshot} into components or
+ * communities, numbered 0 to {@link #getComponentCount()} - 1 in the order
+ * of the first node (by snapshot index) in each.
+ */
+public class Components
+{
+    private final GraphSnapshot snapshot;
+    private final int[] components;
+    private final int componentCount;
+
+    /**
+     * @param labels
+     *            For every node, the index of some node which identifies its
+     *            component. The array is renumbered in place.
+     */
+    Components( GraphSnapshot snapshot, int[] labels )
+    {
+        this.snapshot = snapshot;
+        int[] numbers = new int[labels.length];
+        Arrays.fill( numbers, -1 );
+        int count = 0;
+        for ( int node = 0; node < labels.length; node++ )
+        {
+            int label = labels[node];
+            if ( numbers[label] == -1 )
+            {
+                numbers[label] = count++;
+            }
+            labels[node] = numbers[label];
+        }
+        this.components = labels;
+        this.componentCount = count;
+    }
+
+    public GraphSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    public int getComponentCount()
+    {
+        return componentCount;
+    }
+
+    /**
+     * @return the component of every node, indexed like the snapshot.
+     */
+    public int[] getComponents()
+    {
+        return components;
+    }
+
+    /**
+     * @return the component of the node with index {@code node} in the
+     * snapshot.
+     */
+    public int getComponent( int node )
+    {
+        return components[node];
+    }
+
+    /**
+     * @return the component of a node, or null if the node is not contained
+     *         in the snapshot.
+     */
+    public Integer getComponent( Node node )
+    {
+        int index = snapshot.indexOf( node.getId() );
+        return index != -1 ? components[index] : null;
+    }
+
+    /**
+     * @return the number of nodes in every component, indexed by component.
+     */
+    public int[] getComponentSizes()
+    {
+        int[] sizes = new int[componentCount];
+        for ( int component : components )
+        {
+            sizes[component]++;
+        }
+        return sizes;
+    }
+
+    /**
+     * Stores the component of every node in the snapshot as a property on
+     * the node, committing a transaction for every {@code batchSize} nodes.
+     * Nodes deleted after the snapshot was built are skipped.
+     * @param graphDb
+     *            The graph database the snapshot was built from.
+     * @param key
+     *            The property key to store the components under.
+     * @param batchSize
+     *            The number of nodes to update in each transaction.
+     */
+    public void writeTo( GraphDatabaseService graphDb, String key, int batchSize )
+    {
+        new NodePropertyWriter()
+        {
+            @Override
+            Object value( int node )
+            {
+                return components[node];
+            }
+        }.write( graphDb, snapshot, key, batchSize );
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.neo4j.graphdb.Direction;
+
+/**
+ * Weakly and strongly connected components of a {@link GraphSnapshot}.
+ */
+public abstract class ConnectedComponents
+{
+    private ConnectedComponents()
+    {
+    }
+
+    /**
+     * Finds the weakly connected components, i.e. the components when the
+     * direction of relationships is ignored, by union-find over all
+     * relationships. A snapshot built with {@link Direction#OUTGOING} holds
+     * every relationship once, which is all this needs.
+     * @complexity O(n + m) times the inverse Ackermann function, roughly.
+     */
+    public static Components weak( GraphSnapshot snapshot )
+    {
+        return weak( snapshot, 1 );
+    }
+
+    /**
+     * Like {@link #weak(GraphSnapshot)}, with the relationships split into
+     * ranges which are united on {@code threads} threads.
+     */
+    public static Components weak( final GraphSnapshot snapshot, int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads " + threads );
+        }
+        int nodeCount = snapshot.nodeCount();
+        final AtomicIntegerArray parents = new AtomicIntegerArray( nodeCount );
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            parents.set( node, node );
+        }
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool( threads )
+            : null;
+        try
+        {
+            new RangeTask<Void>()
+            {
+                @Override
+                Void run( int from, int to )
+                {
+                    for ( int node = from; node < to; node++ )
+                    {
+                        for ( int relationship = snapshot.firstRelationship( node ), end = snapshot
+                            .endRelationship( node ); relationship < end; relationship++ )
+                        {
+                            union( parents, node, snapshot.target( relationship ) );
+                        }
+                    }
+                    return null;
+                }
+            }.run( executor, threads, nodeCount );
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+        int[] roots = new int[nodeCount];
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            roots[node] = find( parents, node );
+        }
+        return new Components( snapshot, roots );
+    }
+
+    /**
+     * Links the roots of two sets, always the higher index below the lower
+     * one so concurrent unions can't create cycles. A root is only replaced
+     * if it still is a root, otherwise the union is retried.
+     */
+    private static void union( AtomicIntegerArray parents, int first, int second )
+    {
+        while ( true )
+        {
+            first = find( parents, first );
+            second = find( parents, second );
+            if ( first == second )
+            {
+                return;
+            }
+            if ( first < second )
+            {
+                int swap = first;
+                first = second;
+                second = swap;
+            }
+            if ( parents.compareAndSet( first, first, second ) )
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the root of a set, halving the path to it on the way.
+     */
+    private static int find( AtomicIntegerArray parents, int node )
+    {
+        while ( true )
+        {
+            int parent = parents.get( node );
+            if ( parent == node )
+            {
+                return node;
+            }
+            int grandParent = parents.get( parent );
+            if ( grandParent != parent )
+            {
+                parents.compareAndSet( node, parent, grandParent );
+            }
+            node = grandParent;
+        }
+    }
+
+    /**
+     * Finds the strongly connected components, i.e. the largest sets of
+     * nodes which can all reach each other following the direction of the
+     * snapshot, with Tarjan's algorithm. The depth first search keeps its
+     * own stack, so long paths can't overflow the thread stack. A snapshot
+     * built with {@link Direction#BOTH} gives the weakly connected
+     * components instead.
+     * @complexity O(n + m)
+     */
+    public static Components strong( GraphSnapshot snapshot )
+    {
+        int nodeCount = snapshot.nodeCount();
+        int[] order = new int[nodeCount];
+        int[] lowest = new int[nodeCount];
+        int[] next = new int[nodeCount];
+        int[] path = new int[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] components = new int[nodeCount];
+        Arrays.fill( order, -1 );
+        Arrays.fill( components, -1 );
+        int visited = 0;
+        int stackSize = 0;
+        for ( int root = 0; root < nodeCount; root++ )
+        {
+            if ( order[root] != -1 )
+            {
+                continue;
+            }
+            int depth = 0;
+            order[root] = lowest[root] = visited++;
+            next[root] = snapshot.firstRelationship( root );
+            stack[stackSize++] = root;
+            path[depth++] = root;
+            while ( depth > 0 )
+            {
+                int node = path[depth - 1];
+                if ( next[node] < snapshot.endRelationship( node ) )
+                {
+                    int target = snapshot.target( next[node]++ );
+                    if ( order[target] == -1 )
+                    {
+                        order[target] = lowest[target] = visited++;
+                        next[target] = snapshot.firstRelationship( target );
+                        stack[stackSize++] = target;
+                        path[depth++] = target;
+                    }
+                    else if ( components[target] == -1 )
+                    {
+                        // Still on the stack, i.e. in the component being built
+                        lowest[node] = Math.min( lowest[node], order[target] );
+                    }
+                    continue;
+                }
+                depth--;
+                if ( lowest[node] == order[node] )
+                {
+                    int member;
+                    do
+                    {
+                        member = stack[--stackSize];
+                        components[member] = node;
+                    }
+                    while ( member != node );
+                }
+                if ( depth > 0 )
+                {
+                    int parent = path[depth - 1];
+                    lowest[parent] = Math.min( lowest[parent], lowest[node] );
+                }
+            }
+        }
+        return new Components( snapshot, components );
+    }
+}
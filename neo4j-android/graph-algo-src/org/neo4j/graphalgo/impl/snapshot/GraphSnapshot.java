@@ -0,0 +1,403 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphalgo.impl.util.StoreAccess;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+
+/**
+ * A read-only copy of the nodes and relationships of a graph in compressed
+ * sparse row form: nodes get dense indexes {@code 0..nodeCount-1} and the
+ * relationships of node {@code i} are the ones between
+ * {@link #firstRelationship(int)} and {@link #endRelationship(int)}, each
+ * with a target node index and optionally a weight, all in plain arrays.
+ * Algorithms running on it don't go through node and relationship objects,
+ * caches or locks.
+ *
+ * It's built by reading the node and relationship stores record by record,
+ * so it contains what was committed when it was built, and doesn't change
+ * after that. Weights are read through the regular API though, since they
+ * are properties. For graph databases not backed by the regular stores the
+ * graph is read through the API instead.
+ */
+public final class GraphSnapshot
+{
+    private final long[] nodeIds;
+    private final LongIntMap indexes;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long[] relationshipIds;
+    private final double[] weights;
+
+    private GraphSnapshot( long[] nodeIds, LongIntMap indexes, int[] offsets, int[] targets,
+            long[] relationshipIds, double[] weights )
+    {
+        this.nodeIds = nodeIds;
+        this.indexes = indexes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.relationshipIds = relationshipIds;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds a snapshot without weights.
+     *
+     * @see #build(GraphDatabaseService, Direction, String, double, RelationshipType...)
+     */
+    public static GraphSnapshot build( GraphDatabaseService graphDb, Direction direction,
+            RelationshipType... types )
+    {
+        return build( graphDb, direction, null, 0, types );
+    }
+
+    /**
+     * Builds a snapshot of all nodes and the relationships of the given types.
+     *
+     * @param direction {@link Direction#OUTGOING} to include each relationship
+     * from its start node to its end node, {@link Direction#INCOMING} for the
+     * other way around and {@link Direction#BOTH} for both.
+     * @param weightProperty the relationship property holding the weight,
+     * or {@code null} for no weights.
+     * @param defaultWeight weight for relationships without the property.
+     * @param types the relationship types to include, all if none given.
+     */
+    public static GraphSnapshot build( GraphDatabaseService graphDb, Direction direction,
+            String weightProperty, double defaultWeight, RelationshipType... types )
+    {
+        Collector collector = new Collector();
+        NeoStore neoStore = StoreAccess.neoStore( graphDb );
+        if ( neoStore != null )
+        {
+            scanStore( graphDb, neoStore, collector, types );
+        }
+        else
+        {
+            scanGraph( graphDb, collector, types );
+        }
+        return collector.toSnapshot( graphDb, direction, weightProperty, defaultWeight );
+    }
+
+    private static void scanStore( GraphDatabaseService graphDb, NeoStore neoStore,
+            Collector collector, RelationshipType... types )
+    {
+        NodeStore nodeStore = neoStore.getNodeStore();
+        long highNodeId = nodeStore.getHighId();
+        for ( long id = 0; id < highNodeId; id++ )
+        {
+            if ( nodeStore.loadLightNode( id ) )
+            {
+                collector.node( id );
+            }
+        }
+        boolean[] includedTypes = typeIds( graphDb, types );
+        RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+        long highRelationshipId = relationshipStore.getHighId();
+        for ( long id = 0; id < highRelationshipId; id++ )
+        {
+            RelationshipRecord record = relationshipStore.getLightRel( id );
+            if ( record != null && (includedTypes == null ||
+                    (record.getType() < includedTypes.length && includedTypes[record.getType()])) )
+            {
+                collector.relationship( id, record.getFirstNode(), record.getSecondNode() );
+            }
+        }
+    }
+
+    /**
+     * @return which relationship type ids to include, indexed by id, or
+     * {@code null} for all.
+     */
+    private static boolean[] typeIds( GraphDatabaseService graphDb, RelationshipType... types )
+    {
+        if ( types.length == 0 )
+        {
+            return null;
+        }
+        boolean[] result = new boolean[0];
+        for ( RelationshipType type : types )
+        {
+            Integer id = ((AbstractGraphDatabase) graphDb).getConfig()
+                    .getRelationshipTypeHolder().getIdFor( type.name() );
+            if ( id != null )
+            {
+                if ( id >= result.length )
+                {
+                    result = Arrays.copyOf( result, id + 1 );
+                }
+                result[id] = true;
+            }
+        }
+        return result;
+    }
+
+    private static void scanGraph( GraphDatabaseService graphDb, Collector collector,
+            RelationshipType... types )
+    {
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            collector.node( node.getId() );
+        }
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            Iterable<Relationship> relationships = types.length == 0 ?
+                    node.getRelationships( Direction.OUTGOING ) :
+                    node.getRelationships( Direction.OUTGOING, types );
+            for ( Relationship relationship : relationships )
+            {
+                collector.relationship( relationship.getId(), node.getId(),
+                        relationship.getEndNode().getId() );
+            }
+        }
+    }
+
+    /**
+     * Collects nodes and relationships in the order they are read, to be
+     * sorted into compressed sparse row form in {@link #toSnapshot}.
+     */
+    private static class Collector
+    {
+        private final LongIntMap indexes = new LongIntMap();
+        private long[] nodeIds = new long[1024];
+        private int nodeCount;
+        private long[] relationshipIds = new long[1024];
+        private long[] startNodes = new long[1024];
+        private long[] endNodes = new long[1024];
+        private int relationshipCount;
+
+        void node( long id )
+        {
+            if ( nodeCount == nodeIds.length )
+            {
+                nodeIds = Arrays.copyOf( nodeIds, nodeCount << 1 );
+            }
+            indexes.put( id, nodeCount );
+            nodeIds[nodeCount++] = id;
+        }
+
+        void relationship( long id, long startNode, long endNode )
+        {
+            if ( relationshipCount == relationshipIds.length )
+            {
+                int length = relationshipCount << 1;
+                relationshipIds = Arrays.copyOf( relationshipIds, length );
+                startNodes = Arrays.copyOf( startNodes, length );
+                endNodes = Arrays.copyOf( endNodes, length );
+            }
+            relationshipIds[relationshipCount] = id;
+            startNodes[relationshipCount] = startNode;
+            endNodes[relationshipCount++] = endNode;
+        }
+
+        GraphSnapshot toSnapshot( GraphDatabaseService graphDb, Direction direction,
+                String weightProperty, double defaultWeight )
+        {
+            boolean outgoing = direction != Direction.INCOMING;
+            boolean incoming = direction != Direction.OUTGOING;
+            int[] starts = new int[relationshipCount];
+            int[] ends = new int[relationshipCount];
+            int[] offsets = new int[nodeCount + 1];
+            for ( int i = 0; i < relationshipCount; i++ )
+            {
+                starts[i] = indexes.get( startNodes[i] );
+                ends[i] = indexes.get( endNodes[i] );
+                if ( starts[i] == LongIntMap.NO_VALUE || ends[i] == LongIntMap.NO_VALUE )
+                {
+                    // Created after the nodes were read
+                    starts[i] = LongIntMap.NO_VALUE;
+                    continue;
+                }
+                if ( outgoing )
+                {
+                    offsets[starts[i] + 1]++;
+                }
+                if ( incoming )
+                {
+                    offsets[ends[i] + 1]++;
+                }
+            }
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] targets = new int[offsets[nodeCount]];
+            long[] ids = new long[offsets[nodeCount]];
+            double[] weights = weightProperty != null ? new double[offsets[nodeCount]] : null;
+            int[] next = Arrays.copyOf( offsets, nodeCount );
+            for ( int i = 0; i < relationshipCount; i++ )
+            {
+                if ( starts[i] == LongIntMap.NO_VALUE )
+                {
+                    continue;
+                }
+                double weight = weights != null ? weight( graphDb, relationshipIds[i],
+                        weightProperty, defaultWeight ) : 0;
+                if ( outgoing )
+                {
+                    int slot = next[starts[i]]++;
+                    targets[slot] = ends[i];
+                    ids[slot] = relationshipIds[i];
+                    if ( weights != null )
+                    {
+                        weights[slot] = weight;
+                    }
+                }
+                if ( incoming )
+                {
+                    int slot = next[ends[i]]++;
+                    targets[slot] = starts[i];
+                    ids[slot] = relationshipIds[i];
+                    if ( weights != null )
+                    {
+                        weights[slot] = weight;
+                    }
+                }
+            }
+            return new GraphSnapshot( Arrays.copyOf( nodeIds, nodeCount ), indexes, offsets,
+                    targets, ids, weights );
+        }
+
+        private static double weight( GraphDatabaseService graphDb, long relationshipId,
+                String weightProperty, double defaultWeight )
+        {
+            Object value = graphDb.getRelationshipById( relationshipId ).getProperty(
+                    weightProperty, null );
+            return value instanceof Number ? ((Number) value).doubleValue() : defaultWeight;
+        }
+    }
+
+    /**
+     * @return a snapshot of the same nodes with the direction of every
+     * relationship reversed, i.e. the relationships of a node are the ones
+     * pointing to it in this snapshot.
+     */
+    public GraphSnapshot reversed()
+    {
+        int nodeCount = nodeIds.length;
+        int[] reversedOffsets = new int[nodeCount + 1];
+        for ( int target : targets )
+        {
+            reversedOffsets[target + 1]++;
+        }
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            reversedOffsets[i + 1] += reversedOffsets[i];
+        }
+        int[] reversedTargets = new int[targets.length];
+        long[] reversedIds = new long[targets.length];
+        double[] reversedWeights = weights != null ? new double[targets.length] : null;
+        int[] next = Arrays.copyOf( reversedOffsets, nodeCount );
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            for ( int relationship = offsets[node]; relationship < offsets[node + 1]; relationship++ )
+            {
+                int slot = next[targets[relationship]]++;
+                reversedTargets[slot] = node;
+                reversedIds[slot] = relationshipIds[relationship];
+                if ( weights != null )
+                {
+                    reversedWeights[slot] = weights[relationship];
+                }
+            }
+        }
+        return new GraphSnapshot( nodeIds, indexes, reversedOffsets, reversedTargets,
+                reversedIds, reversedWeights );
+    }
+
+    public int nodeCount()
+    {
+        return nodeIds.length;
+    }
+
+    /**
+     * @return the number of entries in the relationship arrays, i.e. twice
+     * the number of relationships for a snapshot built with
+     * {@link Direction#BOTH}.
+     */
+    public int relationshipCount()
+    {
+        return targets.length;
+    }
+
+    public long nodeId( int node )
+    {
+        return nodeIds[node];
+    }
+
+    /**
+     * @return the index of the node with id {@code nodeId}, or -1 if the
+     * snapshot doesn't contain it.
+     */
+    public int indexOf( long nodeId )
+    {
+        return indexes.get( nodeId );
+    }
+
+    public int degree( int node )
+    {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    public int firstRelationship( int node )
+    {
+        return offsets[node];
+    }
+
+    public int endRelationship( int node )
+    {
+        return offsets[node + 1];
+    }
+
+    public int target( int relationship )
+    {
+        return targets[relationship];
+    }
+
+    public long relationshipId( int relationship )
+    {
+        return relationshipIds[relationship];
+    }
+
+    public boolean hasWeights()
+    {
+        return weights != null;
+    }
+
+    /**
+     * @return the weight of a relationship, 1 if the snapshot was built
+     * without weights.
+     */
+    public double weight( int relationship )
+    {
+        return weights != null ? weights[relationship] : 1d;
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.neo4j.graphdb.Direction;
+
+/**
+ * Community detection by label propagation on a {@link GraphSnapshot}.
+ * Every node starts out with a label of its own, and in each iteration
+ * takes the label carried by most of its relationships (by weight, if the
+ * snapshot has weights). A node keeps its label if that is one of the most
+ * common ones, other ties are broken by a pseudo random order of the labels
+ * derived from a seed which can be set.
+ * <p>
+ * The iterations are synchronous: the new labels are computed from the
+ * labels of the previous iteration only, so the nodes can be split over
+ * several threads and the communities don't depend on the number of
+ * threads. Synchronous updates can make neighbouring nodes swap labels back
+ * and forth forever, so a node which changed label in the previous
+ * iteration only changes again for every other node, again picked pseudo
+ * randomly. The calculation stops when no label changed in an iteration, or
+ * after the maximum number of iterations.
+ * <p>
+ * Communities usually follow relationships regardless of direction, so the
+ * snapshot is typically built with {@link Direction#BOTH}.
+ * @complexity O(i(n + m)) when i iterations are done, divided by the number
+ *             of threads.
+ */
+public class LabelPropagation
+{
+    protected GraphSnapshot snapshot;
+    protected int threads = 1;
+    protected long seed = 0;
+    protected boolean doneCalculation = false;
+    protected Components communities;
+    protected int totalIterations = 0;
+    private int maxIterations = 50;
+
+    /**
+     * @param snapshot
+     *            The graph to find communities in.
+     */
+    public LabelPropagation( GraphSnapshot snapshot )
+    {
+        super();
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @param threads
+     *            The number of threads to run each iteration in, 1 per
+     *            default.
+     */
+    public void setThreads( int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads "
+                + threads );
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param seed
+     *            Decides how ties between labels are broken, 0 per default.
+     */
+    public void setSeed( long seed )
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Limit the maximum number of iterations to run, 50 per default.
+     * @param maxIterations
+     *            the maxIterations to set
+     */
+    public void setMaxIterations( int maxIterations )
+    {
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    /**
+     * @return the number of iterations made.
+     */
+    public int getTotalIterations()
+    {
+        return totalIterations;
+    }
+
+    /**
+     * @return the communities found.
+     */
+    public Components getCommunities()
+    {
+        calculate();
+        return communities;
+    }
+
+    public void reset()
+    {
+        doneCalculation = false;
+    }
+
+    public void calculate()
+    {
+        // Don't do it more than once
+        if ( doneCalculation )
+        {
+            return;
+        }
+        doneCalculation = true;
+        totalIterations = 0;
+        int nodeCount = snapshot.nodeCount();
+        int[] labels = new int[nodeCount];
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            labels[node] = node;
+        }
+        Iteration iteration = new Iteration( labels );
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool( threads )
+            : null;
+        try
+        {
+            while ( totalIterations < maxIterations )
+            {
+                totalIterations++;
+                if ( iteration.run( executor ) == 0 )
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+        communities = new Components( snapshot, iteration.labels );
+    }
+
+    /**
+     * One iteration, split into ranges of nodes which can be computed in
+     * parallel. Each thread counts the votes for a node in arrays indexed
+     * by label, resetting only the entries it touched. Before a range is
+     * computed, {@code newLabels} holds the labels from the iteration before
+     * the previous one.
+     */
+    private class Iteration
+    {
+        private int[] labels;
+        private int[] newLabels;
+        private long iterationSeed;
+        private final ThreadLocal<double[]> votes = new ThreadLocal<double[]>()
+        {
+            @Override
+            protected double[] initialValue()
+            {
+                return new double[labels.length];
+            }
+        };
+        private final ThreadLocal<int[]> candidates = new ThreadLocal<int[]>()
+        {
+            @Override
+            protected int[] initialValue()
+            {
+                return new int[labels.length];
+            }
+        };
+
+        Iteration( int[] labels )
+        {
+            this.labels = labels;
+            this.newLabels = labels.clone();
+        }
+
+        /**
+         * @return the number of nodes which changed label.
+         */
+        int run( ExecutorService executor )
+        {
+            iterationSeed = mix( seed + totalIterations );
+            int changed = 0;
+            for ( int rangeChanged : new RangeTask<Integer>()
+            {
+                @Override
+                Integer run( int from, int to )
+                {
+                    return computeRange( from, to );
+                }
+            }.run( executor, threads, labels.length ) )
+            {
+                changed += rangeChanged;
+            }
+            int[] oldLabels = labels;
+            labels = newLabels;
+            newLabels = oldLabels;
+            return changed;
+        }
+
+        private int computeRange( int start, int end )
+        {
+            double[] votes = this.votes.get();
+            int[] candidates = this.candidates.get();
+            int changed = 0;
+            for ( int node = start; node < end; node++ )
+            {
+                int first = snapshot.firstRelationship( node );
+                int last = snapshot.endRelationship( node );
+                int current = labels[node];
+                boolean mayChange = newLabels[node] == current
+                    || ( mix( iterationSeed ^ ~node ) & 1 ) == 0;
+                if ( first == last || !mayChange )
+                {
+                    newLabels[node] = current;
+                    continue;
+                }
+                int candidateCount = 0;
+                for ( int relationship = first; relationship < last; relationship++ )
+                {
+                    int label = labels[snapshot.target( relationship )];
+                    if ( votes[label] == 0 )
+                    {
+                        candidates[candidateCount++] = label;
+                    }
+                    votes[label] += snapshot.weight( relationship );
+                }
+                int best = current;
+                double bestVotes = votes[current];
+                long bestOrder = Long.MAX_VALUE;
+                for ( int i = 0; i < candidateCount; i++ )
+                {
+                    int label = candidates[i];
+                    double labelVotes = votes[label];
+                    votes[label] = 0;
+                    if ( labelVotes < bestVotes || label == current )
+                    {
+                        continue;
+                    }
+                    long order = mix( iterationSeed ^ label );
+                    if ( labelVotes > bestVotes || ( best != current && order > bestOrder ) )
+                    {
+                        best = label;
+                        bestVotes = labelVotes;
+                        bestOrder = order;
+                    }
+                }
+                newLabels[node] = best;
+                if ( best != current )
+                {
+                    changed++;
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Scrambles the bits of a value, like the finalizer of MurmurHash3.
+     */
+    private static long mix( long value )
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Writes one value per node of a snapshot back to the graph as a node
+ * property, in batches of transactions.
+ */
+abstract class NodePropertyWriter
+{
+    /**
+     * @return the value to store for the node with index {@code node}.
+     */
+    abstract Object value( int node );
+
+    /**
+     * Stores the values, committing a transaction for every
+     * {@code batchSize} nodes. Nodes deleted after the snapshot was built
+     * are skipped.
+     */
+    void write( GraphDatabaseService graphDb, GraphSnapshot snapshot, String key, int batchSize )
+    {
+        if ( batchSize < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid batch size " + batchSize );
+        }
+        int nodeCount = snapshot.nodeCount();
+        int node = 0;
+        while ( node < nodeCount )
+        {
+            int end = Math.min( node + batchSize, nodeCount );
+            Transaction tx = graphDb.beginTx();
+            try
+            {
+                for ( ; node < end; node++ )
+                {
+                    Node graphNode;
+                    try
+                    {
+                        graphNode = graphDb.getNodeById( snapshot.nodeId( node ) );
+                    }
+                    catch ( NotFoundException e )
+                    {
+                        continue;
+                    }
+                    graphNode.setProperty( key, value( node ) );
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+    }
+}
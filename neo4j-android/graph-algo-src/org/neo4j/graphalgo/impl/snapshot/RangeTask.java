@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a task over the node indexes {@code 0..size-1} of a snapshot, split
+ * into one range per thread.
+ */
+abstract class RangeTask<T>
+{
+    /**
+     * Processes the nodes {@code [from,to)}.
+     */
+    abstract T run( int from, int to );
+
+    /**
+     * @param executor runs the ranges, or {@code null} to run everything in
+     * the calling thread.
+     * @return the results of the ranges, in order.
+     */
+    List<T> run( ExecutorService executor, int threads, int size )
+    {
+        List<T> results = new ArrayList<T>();
+        if ( executor == null || threads <= 1 )
+        {
+            results.add( run( 0, size ) );
+            return results;
+        }
+        List<Callable<T>> ranges = new ArrayList<Callable<T>>();
+        int rangeSize = Math.max( 1, ( size + threads - 1 ) / threads );
+        for ( int start = 0; start < size; start += rangeSize )
+        {
+            final int from = start;
+            final int to = Math.min( start + rangeSize, size );
+            ranges.add( new Callable<T>()
+            {
+                public T call()
+                {
+                    return run( from, to );
+                }
+            } );
+        }
+        try
+        {
+            for ( Future<T> range : executor.invokeAll( ranges ) )
+            {
+                results.add( range.get() );
+            }
+            return results;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while running on snapshot", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.neo4j.graphalgo.impl.centrality.EigenvectorCentrality;
+import org.neo4j.graphalgo.impl.centrality.EigenvectorCentralityPower;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Eigenvector centrality with the "power method", like
+ * {@link EigenvectorCentralityPower}, but on a {@link GraphSnapshot}. Each
+ * relationship in the snapshot passes the value of its node, multiplied by
+ * its weight, to its target node, so the direction the snapshot was built
+ * with decides the direction values flow in. The vectors are plain arrays
+ * indexed by node index.
+ * @complexity O(i(n + m)) when i iterations are done.
+ */
+public class SnapshotEigenvectorCentrality implements EigenvectorCentrality
+{
+    protected GraphSnapshot snapshot;
+    protected double precision = 0.001;
+    protected boolean doneCalculation = false;
+    protected double[] values;
+    protected int totalIterations = 0;
+    private int maxIterations = Integer.MAX_VALUE;
+
+    /**
+     * @param snapshot
+     *            The graph to run the calculation on.
+     * @param precision
+     *            Precision factor (ex. 0.01 for 1% error). Note that this is
+     *            not the error from the correct values, but the amount of
+     *            change tolerated in one iteration.
+     */
+    public SnapshotEigenvectorCentrality( GraphSnapshot snapshot, double precision )
+    {
+        super();
+        this.snapshot = snapshot;
+        this.precision = precision;
+    }
+
+    /**
+     * This can be used to retrieve the result for every node. Will return null
+     * if the node is not contained in the snapshot.
+     * @param node
+     * @return
+     */
+    public Double getCentrality( Node node )
+    {
+        calculate();
+        int index = snapshot.indexOf( node.getId() );
+        return index != -1 ? values[index] : null;
+    }
+
+    public void reset()
+    {
+        doneCalculation = false;
+    }
+
+    public void calculate()
+    {
+        // Don't do it more than once
+        if ( doneCalculation )
+        {
+            return;
+        }
+        doneCalculation = true;
+        totalIterations = 0;
+        // generate a random start vector
+        Random random = new Random( System.currentTimeMillis() );
+        values = new double[snapshot.nodeCount()];
+        for ( int node = 0; node < values.length; node++ )
+        {
+            values[node] = random.nextDouble();
+        }
+        normalize( values );
+        runIterations( maxIterations );
+    }
+
+    /**
+     * This runs a number of iterations in the computation and stops when enough
+     * precision has been reached, see
+     * {@link EigenvectorCentralityPower#runIterations(int)}.
+     * @param maxNrIterations
+     *            The maximum number of iterations to run.
+     * @return the number of iterations performed.
+     */
+    public int runIterations( int maxNrIterations )
+    {
+        if ( maxNrIterations <= 0 )
+        {
+            return 0;
+        }
+        int localIterations = 0;
+        double[] newValues = new double[values.length];
+        while ( true )
+        {
+            ++localIterations;
+            ++totalIterations;
+            // "matrix multiplication"
+            Arrays.fill( newValues, 0d );
+            for ( int node = 0; node < values.length; node++ )
+            {
+                double value = values[node];
+                for ( int relationship = snapshot.firstRelationship( node ), end = snapshot
+                    .endRelationship( node ); relationship < end; relationship++ )
+                {
+                    newValues[snapshot.target( relationship )] += value
+                        * snapshot.weight( relationship );
+                }
+            }
+            normalize( newValues );
+            boolean done = timeToStop( values, newValues );
+            double[] oldValues = values;
+            values = newValues;
+            newValues = oldValues;
+            if ( done || localIterations >= maxNrIterations )
+            {
+                break;
+            }
+        }
+        // If the first value is negative (possibly the whole vector), negate
+        // the whole vector
+        if ( values.length > 0 && values[0] < 0 )
+        {
+            for ( int node = 0; node < values.length; node++ )
+            {
+                values[node] = -values[node];
+            }
+        }
+        return localIterations;
+    }
+
+    /**
+     * Stop condition for the iteration.
+     * @return true if enough precision has been achieved.
+     */
+    private boolean timeToStop( double[] oldValues, double[] newValues )
+    {
+        for ( int node = 0; node < oldValues.length; node++ )
+        {
+            if ( oldValues[node] == 0.0 )
+            {
+                if ( Math.abs( newValues[node] ) > precision )
+                {
+                    return false;
+                }
+                continue;
+            }
+            double factor = Math.abs( newValues[node] / oldValues[node] );
+            if ( factor - precision > 1.0 || factor + precision < 1.0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Normalizes a vector.
+     * @param vector
+     */
+    protected void normalize( double[] vector )
+    {
+        double sum = 0;
+        for ( double d : vector )
+        {
+            sum += d * d;
+        }
+        sum = Math.sqrt( sum );
+        if ( sum > 0.0 )
+        {
+            for ( int i = 0; i < vector.length; i++ )
+            {
+                vector[i] /= sum;
+            }
+        }
+    }
+
+    /**
+     * @return the number of iterations made.
+     */
+    public int getTotalIterations()
+    {
+        return totalIterations;
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    /**
+     * Limit the maximum number of iterations to run. Per default,
+     * the maximum iterations are set to Integer.MAX_VALUE, which should
+     * be limited to 50-100 normally.
+     * @param maxIterations
+     *            the maxIterations to set
+     */
+    public void setMaxIterations( int maxIterations )
+    {
+        this.maxIterations = maxIterations;
+    }
+}
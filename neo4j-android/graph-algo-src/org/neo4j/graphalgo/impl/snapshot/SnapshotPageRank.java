@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.neo4j.graphalgo.impl.centrality.EigenvectorCentrality;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+/**
+ * PageRank on a {@link GraphSnapshot}. Every node passes
+ * {@code dampingFactor} of its rank on to the targets of its relationships,
+ * in proportion to their weights, and the rest is spread evenly over all
+ * nodes, as is the rank of nodes without relationships. Ranks sum up to one.
+ *
+ * Iterations are run until the sum of the changes of all ranks is below the
+ * tolerance, or the maximum number of iterations is reached. Each iteration
+ * pulls the ranks over the relationships of a reversed copy of the snapshot,
+ * so the nodes can be split over several threads without them writing to
+ * the same ranks.
+ * @complexity O(i(n + m)) when i iterations are done, divided by the number
+ *             of threads.
+ */
+public class SnapshotPageRank implements EigenvectorCentrality
+{
+    public static final double DEFAULT_DAMPING_FACTOR = 0.85;
+
+    protected GraphSnapshot snapshot;
+    protected double dampingFactor = DEFAULT_DAMPING_FACTOR;
+    protected double tolerance;
+    protected int threads = 1;
+    protected boolean doneCalculation = false;
+    protected double[] ranks;
+    protected int totalIterations = 0;
+    private int maxIterations = 100;
+
+    /**
+     * @param snapshot
+     *            The graph to run the calculation on, where relationships
+     *            point in the direction rank is passed on.
+     * @param tolerance
+     *            Stop when the ranks of all nodes together change less than
+     *            this in one iteration, ex. 1e-6.
+     */
+    public SnapshotPageRank( GraphSnapshot snapshot, double tolerance )
+    {
+        super();
+        this.snapshot = snapshot;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param dampingFactor
+     *            The part of its rank a node passes on over its
+     *            relationships, 0.85 per default.
+     */
+    public void setDampingFactor( double dampingFactor )
+    {
+        if ( dampingFactor < 0 || dampingFactor > 1 )
+        {
+            throw new IllegalArgumentException( "Invalid damping factor "
+                + dampingFactor );
+        }
+        this.dampingFactor = dampingFactor;
+    }
+
+    /**
+     * @param threads
+     *            The number of threads to run each iteration in, 1 per
+     *            default.
+     */
+    public void setThreads( int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads "
+                + threads );
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Limit the maximum number of iterations to run, 100 per default.
+     * @param maxIterations
+     *            the maxIterations to set
+     */
+    public void setMaxIterations( int maxIterations )
+    {
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    /**
+     * @return the number of iterations made.
+     */
+    public int getTotalIterations()
+    {
+        return totalIterations;
+    }
+
+    /**
+     * @return the rank of a node, or null if the node is not contained in
+     *         the snapshot.
+     */
+    public Double getCentrality( Node node )
+    {
+        calculate();
+        int index = snapshot.indexOf( node.getId() );
+        return index != -1 ? ranks[index] : null;
+    }
+
+    /**
+     * @return the ranks of all nodes, indexed like the snapshot.
+     */
+    public double[] getRanks()
+    {
+        calculate();
+        return ranks;
+    }
+
+    public void reset()
+    {
+        doneCalculation = false;
+    }
+
+    public void calculate()
+    {
+        // Don't do it more than once
+        if ( doneCalculation )
+        {
+            return;
+        }
+        doneCalculation = true;
+        totalIterations = 0;
+        int nodeCount = snapshot.nodeCount();
+        ranks = new double[nodeCount];
+        if ( nodeCount == 0 )
+        {
+            return;
+        }
+        Arrays.fill( ranks, 1.0 / nodeCount );
+        final double[] outWeights = new double[nodeCount];
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            for ( int relationship = snapshot.firstRelationship( node ), end = snapshot
+                .endRelationship( node ); relationship < end; relationship++ )
+            {
+                outWeights[node] += snapshot.weight( relationship );
+            }
+        }
+        Iteration iteration = new Iteration( snapshot.reversed(), outWeights );
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool( threads )
+            : null;
+        try
+        {
+            while ( totalIterations < maxIterations )
+            {
+                totalIterations++;
+                if ( iteration.run( executor ) < tolerance )
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * One iteration, split into ranges of nodes which can be computed in
+     * parallel.
+     */
+    private class Iteration
+    {
+        private final GraphSnapshot incoming;
+        private final double[] outWeights;
+        private final double[] inverseOutWeights;
+        private double[] newRanks;
+        private double base;
+
+        Iteration( GraphSnapshot incoming, double[] outWeights )
+        {
+            this.incoming = incoming;
+            this.outWeights = outWeights;
+            this.inverseOutWeights = new double[outWeights.length];
+            for ( int node = 0; node < outWeights.length; node++ )
+            {
+                inverseOutWeights[node] = outWeights[node] > 0 ? 1 / outWeights[node] : 0;
+            }
+            this.newRanks = new double[ranks.length];
+        }
+
+        /**
+         * @return the sum of the changes of all ranks.
+         */
+        double run( ExecutorService executor )
+        {
+            // The rank which isn't passed on over relationships is shared
+            // by all nodes
+            double kept = 0;
+            for ( int node = 0; node < ranks.length; node++ )
+            {
+                kept += outWeights[node] > 0 ? ( 1 - dampingFactor ) * ranks[node]
+                    : ranks[node];
+            }
+            base = kept / ranks.length;
+            double change = 0;
+            for ( double rangeChange : new RangeTask<Double>()
+            {
+                @Override
+                Double run( int from, int to )
+                {
+                    return computeRange( from, to );
+                }
+            }.run( executor, threads, ranks.length ) )
+            {
+                change += rangeChange;
+            }
+            double[] oldRanks = ranks;
+            ranks = newRanks;
+            newRanks = oldRanks;
+            return change;
+        }
+
+        private double computeRange( int start, int end )
+        {
+            double change = 0;
+            for ( int node = start; node < end; node++ )
+            {
+                double rank = 0;
+                for ( int relationship = incoming.firstRelationship( node ), last = incoming
+                    .endRelationship( node ); relationship < last; relationship++ )
+                {
+                    int source = incoming.target( relationship );
+                    rank += ranks[source] * incoming.weight( relationship )
+                        * inverseOutWeights[source];
+                }
+                rank = base + dampingFactor * rank;
+                change += Math.abs( rank - ranks[node] );
+                newRanks[node] = rank;
+            }
+            return change;
+        }
+    }
+
+    /**
+     * Stores the rank of every node in the snapshot as a property on the
+     * node, committing a transaction for every {@code batchSize} nodes.
+     * Nodes deleted after the snapshot was built are skipped.
+     * @param graphDb
+     *            The graph database the snapshot was built from.
+     * @param key
+     *            The property key to store the ranks under.
+     * @param batchSize
+     *            The number of nodes to update in each transaction.
+     */
+    public void writeTo( GraphDatabaseService graphDb, String key, int batchSize )
+    {
+        calculate();
+        new NodePropertyWriter()
+        {
+            @Override
+            Object value( int node )
+            {
+                return ranks[node];
+            }
+        }.write( graphDb, snapshot, key, batchSize );
+    }
+}
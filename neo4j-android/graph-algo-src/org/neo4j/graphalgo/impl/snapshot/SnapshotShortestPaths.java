@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.snapshot;
+
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.impl.centrality.Eccentricity;
+import org.neo4j.graphalgo.impl.centrality.NetworkDiameter;
+import org.neo4j.graphalgo.impl.centrality.NetworkRadius;
+import org.neo4j.graphalgo.impl.util.IntPriorityQueue;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Shortest path costs on a {@link GraphSnapshot}, from one node to all
+ * others, and the measures built on those: eccentricity, diameter and radius
+ * (see {@link Eccentricity}, {@link NetworkDiameter} and {@link NetworkRadius}).
+ * Uses breadth first search for snapshots without weights and Dijkstra
+ * otherwise. Nodes which can't be reached are ignored when
+ * computing eccentricities.
+ * @complexity O(n + m) per start node for BFS and O((n + m) log(n)) for
+ *             Dijkstra, so n times that for diameter and radius.
+ */
+public class SnapshotShortestPaths
+{
+    protected GraphSnapshot snapshot;
+    protected double[] eccentricities;
+
+    public SnapshotShortestPaths( GraphSnapshot snapshot )
+    {
+        super();
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @param start
+     *            the index of the start node.
+     * @return the cost of the cheapest path from {@code start} to each node,
+     *         {@link Double#POSITIVE_INFINITY} for those which can't be
+     *         reached.
+     */
+    public double[] costsFrom( int start )
+    {
+        double[] costs = new double[snapshot.nodeCount()];
+        Arrays.fill( costs, Double.POSITIVE_INFINITY );
+        costs[start] = 0;
+        if ( !snapshot.hasWeights() )
+        {
+            int[] queue = new int[costs.length];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            while ( head < tail )
+            {
+                int node = queue[head++];
+                double cost = costs[node] + 1;
+                for ( int relationship = snapshot.firstRelationship( node ), end = snapshot
+                    .endRelationship( node ); relationship < end; relationship++ )
+                {
+                    int target = snapshot.target( relationship );
+                    if ( costs[target] == Double.POSITIVE_INFINITY )
+                    {
+                        costs[target] = cost;
+                        queue[tail++] = target;
+                    }
+                }
+            }
+            return costs;
+        }
+        boolean[] done = new boolean[costs.length];
+        IntPriorityQueue open = new IntPriorityQueue();
+        open.offer( start, 0 );
+        while ( !open.isEmpty() )
+        {
+            int node = open.poll();
+            done[node] = true;
+            for ( int relationship = snapshot.firstRelationship( node ), end = snapshot
+                .endRelationship( node ); relationship < end; relationship++ )
+            {
+                int target = snapshot.target( relationship );
+                double cost = costs[node] + snapshot.weight( relationship );
+                if ( !done[target] && cost < costs[target] )
+                {
+                    costs[target] = cost;
+                    open.offer( target, cost );
+                }
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * @return the cost to the node farthest away from {@code node}, or null
+     *         if the node is not contained in the snapshot.
+     */
+    public Double getEccentricity( Node node )
+    {
+        int index = snapshot.indexOf( node.getId() );
+        if ( index == -1 )
+        {
+            return null;
+        }
+        return eccentricities != null ? eccentricities[index] : eccentricity( index );
+    }
+
+    private double eccentricity( int node )
+    {
+        double result = 0;
+        for ( double cost : costsFrom( node ) )
+        {
+            if ( cost != Double.POSITIVE_INFINITY && cost > result )
+            {
+                result = cost;
+            }
+        }
+        return result;
+    }
+
+    private void calculateEccentricities()
+    {
+        if ( eccentricities != null )
+        {
+            return;
+        }
+        double[] result = new double[snapshot.nodeCount()];
+        for ( int node = 0; node < result.length; node++ )
+        {
+            result[node] = eccentricity( node );
+        }
+        eccentricities = result;
+    }
+
+    /**
+     * @return the largest eccentricity of all nodes.
+     */
+    public double getDiameter()
+    {
+        calculateEccentricities();
+        double result = 0;
+        for ( double eccentricity : eccentricities )
+        {
+            result = Math.max( result, eccentricity );
+        }
+        return result;
+    }
+
+    /**
+     * @return the smallest eccentricity of all nodes.
+     */
+    public double getRadius()
+    {
+        calculateEccentricities();
+        double result = Double.POSITIVE_INFINITY;
+        for ( double eccentricity : eccentricities )
+        {
+            result = Math.min( result, eccentricity );
+        }
+        return eccentricities.length > 0 ? result : 0;
+    }
+}
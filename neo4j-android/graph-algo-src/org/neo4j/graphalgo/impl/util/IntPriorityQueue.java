@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of {@code int} elements ordered by a {@code double}
+ * priority, with support for lowering the priority of an element already in
+ * the heap (decrease-key). Elements are expected to be dense indexes, f.ex.
+ * those handed out by a {@link LongIntMap}, since positions are tracked in
+ * an array indexed by element.
+ */
+public final class IntPriorityQueue
+{
+    private int[] heap = new int[16];
+    private double[] priorities = new double[16];
+    private int[] positions = new int[16];
+    private int size;
+
+    public IntPriorityQueue()
+    {
+        Arrays.fill( positions, -1 );
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean contains( int element )
+    {
+        return element < positions.length && positions[element] != -1;
+    }
+
+    /**
+     * @return the priority of the element with the lowest priority, without
+     * removing it.
+     */
+    public double peekPriority()
+    {
+        return priorities[heap[0]];
+    }
+
+    /**
+     * Adds {@code element} with the given priority, or if it's already in
+     * the heap changes its priority if the new one is lower.
+     *
+     * @return {@code true} if the element was added or its priority lowered.
+     */
+    public boolean offer( int element, double priority )
+    {
+        if ( contains( element ) )
+        {
+            if ( priority >= priorities[element] )
+            {
+                return false;
+            }
+            priorities[element] = priority;
+            siftUp( positions[element] );
+            return true;
+        }
+        ensureCapacity( element );
+        priorities[element] = priority;
+        heap[size] = element;
+        positions[element] = size;
+        siftUp( size++ );
+        return true;
+    }
+
+    /**
+     * Removes and returns the element with the lowest priority.
+     */
+    public int poll()
+    {
+        int result = heap[0];
+        positions[result] = -1;
+        if ( --size > 0 )
+        {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown( 0 );
+        }
+        return result;
+    }
+
+    private void ensureCapacity( int element )
+    {
+        if ( size == heap.length )
+        {
+            heap = Arrays.copyOf( heap, heap.length << 1 );
+        }
+        if ( element >= positions.length )
+        {
+            int length = positions.length;
+            while ( length <= element )
+            {
+                length <<= 1;
+            }
+            int oldLength = positions.length;
+            positions = Arrays.copyOf( positions, length );
+            Arrays.fill( positions, oldLength, length, -1 );
+            priorities = Arrays.copyOf( priorities, length );
+        }
+    }
+
+    private void siftUp( int position )
+    {
+        int element = heap[position];
+        double priority = priorities[element];
+        while ( position > 0 )
+        {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if ( priorities[parent] <= priority )
+            {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+
+    private void siftDown( int position )
+    {
+        int element = heap[position];
+        double priority = priorities[element];
+        int half = size >>> 1;
+        while ( position < half )
+        {
+            int child = (position << 1) + 1;
+            int right = child + 1;
+            if ( right < size && priorities[heap[right]] < priorities[heap[child]] )
+            {
+                child = right;
+            }
+            if ( priority <= priorities[heap[child]] )
+            {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from {@code long} keys to {@code int} values,
+ * used by the graph algorithms to map node ids to dense array indexes
+ * without boxing every id into a {@link Long}.
+ */
+public final class LongIntMap
+{
+    public static final int NO_VALUE = -1;
+
+    private static final long FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int threshold;
+
+    public LongIntMap()
+    {
+        this( 16 );
+    }
+
+    public LongIntMap( int expectedSize )
+    {
+        int capacity = 16;
+        while ( capacity * 3 / 4 < expectedSize )
+        {
+            capacity <<= 1;
+        }
+        allocate( capacity );
+    }
+
+    private void allocate( int capacity )
+    {
+        keys = new long[capacity];
+        Arrays.fill( keys, FREE );
+        values = new int[capacity];
+        threshold = capacity * 3 / 4;
+    }
+
+    private static int hash( long key )
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param key a non-negative key, f.ex. a node id.
+     * @return the value for {@code key} or {@link #NO_VALUE} if there's none.
+     */
+    public int get( long key )
+    {
+        int mask = keys.length - 1;
+        for ( int i = hash( key ) & mask; ; i = (i + 1) & mask )
+        {
+            long candidate = keys[i];
+            if ( candidate == key )
+            {
+                return values[i];
+            }
+            if ( candidate == FREE )
+            {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * @param key a non-negative key, f.ex. a node id.
+     * @param value the value to associate with {@code key}.
+     * @return the previous value for {@code key} or {@link #NO_VALUE}.
+     */
+    public int put( long key, int value )
+    {
+        if ( key < 0 )
+        {
+            throw new IllegalArgumentException( "Negative key " + key );
+        }
+        int mask = keys.length - 1;
+        for ( int i = hash( key ) & mask; ; i = (i + 1) & mask )
+        {
+            long candidate = keys[i];
+            if ( candidate == key )
+            {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            if ( candidate == FREE )
+            {
+                keys[i] = key;
+                values[i] = value;
+                if ( ++size > threshold )
+                {
+                    rehash();
+                }
+                return NO_VALUE;
+            }
+        }
+    }
+
+    private void rehash()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate( oldKeys.length << 1 );
+        int mask = keys.length - 1;
+        for ( int i = 0; i < oldKeys.length; i++ )
+        {
+            if ( oldKeys[i] != FREE )
+            {
+                int slot = hash( oldKeys[i] ) & mask;
+                while ( keys[slot] != FREE )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+
+/**
+ * Access to the record stores behind a graph database, for algorithms which
+ * read them directly or size their data structures after them.
+ */
+public abstract class StoreAccess
+{
+    private StoreAccess()
+    {
+    }
+
+    /**
+     * @return the store of {@code graphDb}, or {@code null} if it isn't
+     * backed by the regular stores.
+     */
+    public static NeoStore neoStore( GraphDatabaseService graphDb )
+    {
+        if ( !(graphDb instanceof AbstractGraphDatabase) )
+        {
+            return null;
+        }
+        XaDataSource dataSource = ((AbstractGraphDatabase) graphDb).getConfig().getTxModule()
+                .getXaDataSourceManager().getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME );
+        return dataSource instanceof NeoStoreXaDataSource ?
+                ((NeoStoreXaDataSource) dataSource).getNeoStore() : null;
+    }
+
+    /**
+     * @return the highest node id which may be in use, or -1 if it isn't known.
+     */
+    public static long highestPossibleNodeIdInUse( GraphDatabaseService graphDb )
+    {
+        NeoStore neoStore = neoStore( graphDb );
+        return neoStore != null ? neoStore.getNodeStore().getHighestPossibleIdInUse() : -1;
+    }
+}
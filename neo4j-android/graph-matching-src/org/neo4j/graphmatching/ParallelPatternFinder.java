@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphmatching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.helpers.collection.ClosableIterable;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+/**
+ * Finds matches of a pattern from many start nodes, with several workers
+ * each taking the next start node and matching from it. The workers hand
+ * their matches over through a bounded queue, so they wait for the reader
+ * when it falls behind.
+ * <p>
+ * The workers are never interrupted, since interrupting a thread reading
+ * from the store closes its file channels. They instead look at a flag
+ * which is set when the result is closed, the wanted number of matches has
+ * been read or a worker failed.
+ */
+class ParallelPatternFinder extends PrefetchingIterator<PatternMatch>
+    implements ClosableIterable<PatternMatch>
+{
+    private static final int QUEUE_SIZE = 256;
+    private static final long OFFER_TIMEOUT_MILLIS = 50;
+    private static final Object WORKER_DONE = new Object();
+
+    private final PatternMatcher matcher;
+    private final PatternNode start;
+    private final Iterator<Node> startNodes;
+    private final Map<String, PatternNode> objectVariables;
+    private final Collection<PatternNode> optional;
+    private final int maxMatches;
+    private final BlockingQueue<Object> queue =
+        new ArrayBlockingQueue<Object>( QUEUE_SIZE );
+    private final List<Future<?>> workers = new ArrayList<Future<?>>();
+    private volatile boolean closed = false;
+    private int runningWorkers;
+    private int matches = 0;
+
+    ParallelPatternFinder( PatternMatcher matcher, PatternNode start,
+        Iterable<Node> startNodes, Map<String, PatternNode> objectVariables,
+        Collection<PatternNode> optional, ExecutorService executor,
+        int threads, int maxMatches )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Invalid number of threads "
+                + threads );
+        }
+        this.matcher = matcher;
+        this.start = start;
+        this.startNodes = startNodes.iterator();
+        this.objectVariables = objectVariables;
+        this.optional = optional;
+        this.maxMatches = maxMatches;
+        if ( maxMatches == 0 )
+        {
+            closed = true;
+            return;
+        }
+        runningWorkers = threads;
+        try
+        {
+            for ( int i = 0; i < threads; i++ )
+            {
+                workers.add( executor.submit( new Worker() ) );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            // E.g. rejected by the executor, stop the workers which were
+            // submitted. They aren't interrupted, see above.
+            close();
+            for ( Future<?> worker : workers )
+            {
+                worker.cancel( false );
+            }
+            throw e;
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        public void run()
+        {
+            try
+            {
+                for ( Node startNode = nextStartNode(); startNode != null;
+                    startNode = nextStartNode() )
+                {
+                    for ( PatternMatch match : matcher.match( start, startNode,
+                        objectVariables, optional ) )
+                    {
+                        if ( !offer( match ) )
+                        {
+                            return;
+                        }
+                    }
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                offer( e );
+            }
+            catch ( Error e )
+            {
+                offer( e );
+            }
+            finally
+            {
+                offer( WORKER_DONE );
+            }
+        }
+    }
+
+    private Node nextStartNode()
+    {
+        synchronized ( startNodes )
+        {
+            return !closed && startNodes.hasNext() ? startNodes.next() : null;
+        }
+    }
+
+    /**
+     * Waits for room in the queue for as long as the result is open.
+     *
+     * @return {@code false} if the result was closed.
+     */
+    private boolean offer( Object item )
+    {
+        try
+        {
+            while ( !closed )
+            {
+                if ( queue.offer( item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS ) )
+                {
+                    return true;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    protected PatternMatch fetchNextOrNull()
+    {
+        while ( !closed && runningWorkers > 0 )
+        {
+            Object item;
+            try
+            {
+                item = queue.take();
+            }
+            catch ( InterruptedException e )
+            {
+                close();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Interrupted while matching pattern", e );
+            }
+            if ( item == WORKER_DONE )
+            {
+                runningWorkers--;
+            }
+            else if ( item instanceof RuntimeException )
+            {
+                close();
+                throw (RuntimeException) item;
+            }
+            else if ( item instanceof Error )
+            {
+                close();
+                throw (Error) item;
+            }
+            else
+            {
+                if ( maxMatches > 0 && ++matches >= maxMatches )
+                {
+                    close();
+                }
+                return (PatternMatch) item;
+            }
+        }
+        return null;
+    }
+
+    public Iterator<PatternMatch> iterator()
+    {
+        return this;
+    }
+
+    /**
+     * Stops the workers. Matches they already found, but which weren't
+     * read, are thrown away.
+     */
+    public void close()
+    {
+        closed = true;
+        queue.clear();
+    }
+}
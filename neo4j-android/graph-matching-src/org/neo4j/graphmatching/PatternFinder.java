@@ -19,15 +19,17 @@
  */
 package org.neo4j.graphmatching;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.Stack;
 
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
@@ -35,18 +37,38 @@ import org.neo4j.graphdb.Relationship;
 /**
  * Performs the actual finding of matches given the pattern of how a match
  * looks like and a {@link Node} to start traversing from.
+ * <p>
+ * Before matching, the pattern relationships are put in the order they will
+ * be matched in. A relationship between two pattern nodes which are both
+ * already matched only has to be checked, and is matched as soon as
+ * possible, as are pattern nodes with an associated node. Otherwise the
+ * relationship expected to lead to the fewest matches is expanded next: the
+ * number of relationships of the start node is counted, for other nodes the
+ * average is estimated by {@link PatternStatistics}, and each property
+ * constraint on the pattern node or relationship at the other end is
+ * assumed to let a tenth through. Property constraints are checked as soon
+ * as a node or relationship is matched.
  */
 class PatternFinder implements Iterable<PatternMatch>, Iterator<PatternMatch>
 {
-    private Set<Relationship> visitedRels = new HashSet<Relationship>();
-    private PatternPosition currentPosition;
+    private static final int DEGREE_COUNT_LIMIT = 1000;
+    private static final double CONSTRAINT_SELECTIVITY = 0.1;
+
     private OptionalPatternFinder optionalFinder;
     private PatternNode startPatternNode;
     private Node startNode;
     private Collection<PatternNode> optionalNodes;
-    private boolean optional;
     private final PatternMatcher matcher;
 
+    private final List<PatternNode> patternNodes = new ArrayList<PatternNode>();
+    private Step[] steps;
+    private Node[] nodes;
+    private Relationship[] relationships;
+    private long[] relationshipIds;
+    private List<Iterator<Relationship>> candidates;
+    private boolean started = false;
+    private int depth;
+
     PatternFinder( PatternMatcher matcher, PatternNode start, Node startNode )
     {
         this( matcher, start, startNode, false );
@@ -58,8 +80,7 @@ class PatternFinder implements Iterable<PatternMatch>, Iterator<PatternMatch>
         this.matcher = matcher;
         this.startPatternNode = start;
         this.startNode = startNode;
-        currentPosition = new PatternPosition( startNode, start, optional );
-        this.optional = optional;
+        plan( optional );
     }
 
     PatternFinder( PatternMatcher matcher, PatternNode start, Node startNode,
@@ -80,243 +101,349 @@ class PatternFinder implements Iterable<PatternMatch>, Iterator<PatternMatch>
     }
 
     /**
-     * Represents a traversal state so that we can go back to it when we've
-     * descended the graph and comes back up to continue matching on a
-     * higher level.
+     * One pattern relationship in the order of matching. The pattern node
+     * {@code from} is matched before this step, {@code to} is matched by it
+     * unless it's {@code closing}.
      */
-    private static class CallPosition
+    private static class Step
     {
-        private PatternPosition patternPosition;
-        private Iterator<Relationship> relItr;
-        private Relationship lastRel;
-        private PatternRelationship currentPRel;
-        private boolean popUncompleted;
-
-        CallPosition( PatternPosition patternPosition, Relationship lastRel,
-            Iterator<Relationship> relItr, PatternRelationship currentPRel,
-            boolean popUncompleted )
+        private final PatternRelationship pRel;
+        private final int from;
+        private final int to;
+        private final boolean closing;
+
+        Step( PatternRelationship pRel, int from, int to, boolean closing )
         {
-            this.patternPosition = patternPosition;
-            this.relItr = relItr;
-            this.lastRel = lastRel;
-            this.currentPRel = currentPRel;
-            this.popUncompleted = popUncompleted;
+            this.pRel = pRel;
+            this.from = from;
+            this.to = to;
+            this.closing = closing;
         }
+    }
 
-        public void setLastVisitedRelationship( Relationship rel )
+    private void plan( boolean optional )
+    {
+        List<PatternRelationship> pRels = new ArrayList<PatternRelationship>();
+        Set<PatternRelationship> seen = new HashSet<PatternRelationship>();
+        Map<PatternNode, Integer> indexes = new HashMap<PatternNode, Integer>();
+        patternNodes.add( startPatternNode );
+        indexes.put( startPatternNode, 0 );
+        for ( int i = 0; i < patternNodes.size(); i++ )
         {
-            this.lastRel = rel;
+            PatternNode pNode = patternNodes.get( i );
+            for ( PatternRelationship pRel : pNode.getRelationships( optional ) )
+            {
+                if ( !seen.add( pRel ) )
+                {
+                    continue;
+                }
+                pRels.add( pRel );
+                PatternNode other = pRel.getOtherNode( pNode );
+                if ( !indexes.containsKey( other ) )
+                {
+                    indexes.put( other, patternNodes.size() );
+                    patternNodes.add( other );
+                }
+            }
         }
 
-        public Relationship getLastVisitedRelationship()
+        boolean[] matched = new boolean[patternNodes.size()];
+        for ( int i = 0; i < matched.length; i++ )
         {
-            return lastRel;
+            matched[i] = i == 0 || patternNodes.get( i ).getAssociation() != null;
         }
-
-        public boolean shouldPopUncompleted()
+        double[] counts = new double[pRels.size()];
+        PatternStatistics statistics = null;
+        steps = new Step[pRels.size()];
+        for ( int step = 0; step < steps.length; step++ )
         {
-            return popUncompleted;
+            int best = -1;
+            int bestFrom = -1;
+            double bestCost = Double.MAX_VALUE;
+            for ( int i = 0; i < pRels.size(); i++ )
+            {
+                PatternRelationship pRel = pRels.get( i );
+                if ( pRel == null )
+                {
+                    continue;
+                }
+                int first = indexes.get( pRel.getFirstNode() );
+                int second = indexes.get( pRel.getSecondNode() );
+                if ( !matched[first] && !matched[second] )
+                {
+                    continue;
+                }
+                int from = matched[first] ? first : second;
+                int to = from == first ? second : first;
+                double cost = 0;
+                if ( !matched[to] )
+                {
+                    PatternNode fromPNode = patternNodes.get( from );
+                    if ( from == 0 || fromPNode.getAssociation() != null )
+                    {
+                        if ( counts[i] == 0 )
+                        {
+                            counts[i] = 1 + countRelationships( from == 0 ?
+                                startNode : fromPNode.getAssociation(), pRel, fromPNode );
+                        }
+                        cost = counts[i];
+                    }
+                    else
+                    {
+                        if ( statistics == null )
+                        {
+                            statistics = PatternStatistics.forDatabase(
+                                startNode.getGraphDatabase() );
+                        }
+                        cost = 1 + statistics.degree( pRel.getType(),
+                            pRel.getDirectionFrom( fromPNode ) );
+                    }
+                    cost *= selectivity( pRel ) * selectivity( patternNodes.get( to ) );
+                    if ( pRel.getAssociation() != null )
+                    {
+                        cost = Math.min( cost, 1 );
+                    }
+                }
+                if ( cost < bestCost )
+                {
+                    best = i;
+                    bestFrom = from;
+                    bestCost = cost;
+                }
+            }
+            PatternRelationship pRel = pRels.get( best );
+            int bestTo = indexes.get( pRel.getOtherNode( patternNodes.get( bestFrom ) ) );
+            steps[step] = new Step( pRel, bestFrom, bestTo, matched[bestTo] );
+            matched[bestTo] = true;
+            pRels.set( best, null );
         }
 
-        public PatternPosition getPatternPosition()
+        nodes = new Node[patternNodes.size()];
+        relationships = new Relationship[steps.length];
+        relationshipIds = new long[steps.length];
+        candidates = new ArrayList<Iterator<Relationship>>( steps.length );
+        for ( int i = 0; i < steps.length; i++ )
         {
-            return patternPosition;
+            candidates.add( null );
         }
+    }
 
-        public PatternRelationship getPatternRelationship()
+    private double selectivity(
+        AbstractPatternObject<? extends PropertyContainer> patternObject )
+    {
+        double selectivity = 1;
+        for ( Map.Entry<String, Collection<ValueMatcher>> matchers :
+                patternObject.getPropertyConstraints() )
         {
-            return currentPRel;
+            for ( int i = 0; i < matchers.getValue().size(); i++ )
+            {
+                selectivity *= CONSTRAINT_SELECTIVITY;
+            }
         }
+        return selectivity;
+    }
 
-        public Iterator<Relationship> getRelationshipIterator()
+    private int countRelationships( Node node, PatternRelationship pRel,
+        PatternNode pNode )
+    {
+        int count = 0;
+        Iterator<Relationship> relItr = getRelationshipIterator( pNode, node, pRel );
+        while ( count < DEGREE_COUNT_LIMIT && relItr.hasNext() )
         {
-            return relItr;
+            relItr.next();
+            count++;
         }
+        return count;
     }
 
-    private Stack<CallPosition> callStack = new Stack<CallPosition>();
-    private Stack<PatternPosition> uncompletedPositions =
-        new Stack<PatternPosition>();
-    private Stack<PatternElement> foundElements = new Stack<PatternElement>();
+    /**
+     * Matches the pattern nodes which are known from the start, i.e. the
+     * start node and the nodes with an association.
+     */
+    private boolean matchKnownNodes()
+    {
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            PatternNode pNode = patternNodes.get( i );
+            nodes[i] = i == 0 ? startNode : pNode.getAssociation();
+            if ( nodes[i] != null && !checkProperties( pNode, nodes[i] ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
 
     private PatternMatch findNextMatch()
     {
-        if ( callStack.isEmpty() && currentPosition != null )
+        if ( !started )
         {
-            // Try to find a first indication of a match, i.e. find some part
-            // of the pattern in the graph.
-            if ( traverse( currentPosition, true ) )
+            started = true;
+            if ( !matchKnownNodes() )
             {
-                // found first match, return it
-                currentPosition = null;
-                HashMap<PatternNode, PatternElement> filteredElements =
-                    new HashMap<PatternNode, PatternElement>();
-                HashMap<PatternRelationship, Relationship> relElements =
-                    new HashMap<PatternRelationship, Relationship>();
-                for ( PatternElement element : foundElements )
-                {
-                    filteredElements.put( element.getPatternNode(), element );
-                    relElements.put( element.getFromPatternRelationship(),
-                        element.getFromRelationship() );
-                }
-                PatternMatch patternMatch = new PatternMatch( filteredElements,
-                    relElements );
-                foundElements.pop();
-                return patternMatch;
+                depth = -1;
+                return null;
+            }
+            if ( steps.length == 0 )
+            {
+                depth = -1;
+                return newMatch();
             }
-            currentPosition = null;
+            depth = 0;
+            candidates.set( 0, candidatesFor( steps[0] ) );
         }
-        else if ( !callStack.isEmpty() )
+        while ( depth >= 0 )
         {
-            // Traverse deeper into the sub graph and see if there's more of
-            // the pattern which matches the graph.
-            boolean matchFound = false;
-            do
+            if ( !matchNext( depth ) )
             {
-                CallPosition callStackInformation = callStack.peek();
-                matchFound = traverse( callStackInformation );
+                depth--;
+                continue;
             }
-            while ( !callStack.isEmpty() && !matchFound );
-            if ( matchFound )
+            if ( depth == steps.length - 1 )
             {
-                // found another match, returning it
-                HashMap<PatternNode, PatternElement> filteredElements =
-                    new HashMap<PatternNode, PatternElement>();
-                HashMap<PatternRelationship, Relationship> relElements =
-                    new HashMap<PatternRelationship, Relationship>();
-                for ( PatternElement element : foundElements )
-                {
-                    filteredElements.put( element.getPatternNode(), element );
-                    relElements.put( element.getFromPatternRelationship(),
-                        element.getFromRelationship() );
-                }
-                PatternMatch patternMatch = new PatternMatch( filteredElements,
-                    relElements );
-                foundElements.pop();
-                return patternMatch;
+                return newMatch();
             }
+            depth++;
+            candidates.set( depth, candidatesFor( steps[depth] ) );
         }
         return null;
     }
 
-    private boolean traverse( CallPosition callPos )
+    /**
+     * Matches the relationship (and node) of the step at {@code depth} to
+     * its next candidate.
+     */
+    private boolean matchNext( int depth )
     {
-        // make everything like it was before we returned previous match
-        PatternPosition currentPos = callPos.getPatternPosition();
-        PatternRelationship pRel = callPos.getPatternRelationship();
-        pRel.mark();
-        visitedRels.remove( callPos.getLastVisitedRelationship() );
-        Node currentNode = currentPos.getCurrentNode();
-        Iterator<Relationship> relItr = callPos.getRelationshipIterator();
+        Step step = steps[depth];
+        Node from = nodes[step.from];
+        Iterator<Relationship> relItr = candidates.get( depth );
         while ( relItr.hasNext() )
         {
             Relationship rel = relItr.next();
-            if ( visitedRels.contains( rel ) )
-            {
-                continue;
-            }
-            if ( !checkProperties( pRel, rel ) )
+            if ( isMatched( rel.getId(), depth ) || !checkProperties( step.pRel, rel ) )
             {
                 continue;
             }
-            Node otherNode = rel.getOtherNode( currentNode );
-            PatternNode otherPosition = pRel.getOtherNode( currentPos
-                .getPatternNode() );
-            pRel.mark();
-            visitedRels.add( rel );
-            if ( traverse( new PatternPosition( otherNode, otherPosition, pRel,
-                rel, optional ), true ) )
+            if ( !step.closing )
             {
-                callPos.setLastVisitedRelationship( rel );
-                return true;
+                Node otherNode = rel.getOtherNode( from );
+                if ( !checkProperties( patternNodes.get( step.to ), otherNode ) )
+                {
+                    continue;
+                }
+                nodes[step.to] = otherNode;
             }
-            visitedRels.remove( rel );
-            pRel.unMark();
+            relationships[depth] = rel;
+            relationshipIds[depth] = rel.getId();
+            return true;
         }
-        pRel.unMark();
-        if ( callPos.shouldPopUncompleted() )
+        candidates.set( depth, null );
+        relationships[depth] = null;
+        if ( !step.closing )
         {
-            uncompletedPositions.pop();
+            nodes[step.to] = null;
         }
-        callStack.pop();
-        foundElements.pop();
         return false;
     }
 
-    private boolean traverse( PatternPosition currentPos, boolean pushElement )
+    /**
+     * A relationship can only match one pattern relationship, so it
+     * mustn't be matched by any of the steps before {@code depth}.
+     */
+    private boolean isMatched( long relationshipId, int depth )
     {
-        PatternNode pNode = currentPos.getPatternNode();
-        Node currentNode = currentPos.getCurrentNode();
-
-        if ( !checkProperties( pNode, currentNode ) )
+        for ( int i = 0; i < depth; i++ )
         {
-            return false;
+            if ( relationshipIds[i] == relationshipId )
+            {
+                return true;
+            }
         }
+        return false;
+    }
 
-        if ( pushElement )
+    private Iterator<Relationship> candidatesFor( Step step )
+    {
+        PatternNode fromPNode = patternNodes.get( step.from );
+        Node from = nodes[step.from];
+        if ( !step.closing )
         {
-            foundElements.push( new PatternElement(
-                pNode, currentPos.fromPatternRel(),
-                currentNode, currentPos.fromRelationship() ) );
+            return getRelationshipIterator( fromPNode, from, step.pRel );
         }
-        if ( currentPos.hasNext() )
+        return connectingRelationships( from, fromPNode, nodes[step.to],
+            patternNodes.get( step.to ), step.pRel ).iterator();
+    }
+
+    /**
+     * Finds the relationships between two matched nodes by going through the
+     * relationships of both at the same pace. The side running out first
+     * has seen all of them, so this costs twice the smaller number of
+     * relationships rather than the number of relationships of a possible
+     * super node.
+     */
+    private List<Relationship> connectingRelationships( Node from,
+        PatternNode fromPNode, Node to, PatternNode toPNode,
+        PatternRelationship pRel )
+    {
+        List<Relationship> fromMatches = new ArrayList<Relationship>();
+        List<Relationship> toMatches = new ArrayList<Relationship>();
+        Iterator<Relationship> fromItr = getRelationshipIterator( fromPNode, from, pRel );
+        Iterator<Relationship> toItr = from.equals( to ) ? null :
+            getRelationshipIterator( toPNode, to, pRel );
+        while ( true )
         {
-            boolean popUncompleted = false;
-            PatternRelationship pRel = currentPos.next();
-            if ( currentPos.hasNext() )
+            if ( !fromItr.hasNext() )
             {
-                uncompletedPositions.push( currentPos );
-                popUncompleted = true;
+                return fromMatches;
             }
-            assert !pRel.isMarked();
-            Iterator<Relationship> relItr = getRelationshipIterator( currentPos
-                .getPatternNode(), currentNode, pRel );
-            pRel.mark();
-            while ( relItr.hasNext() )
+            Relationship rel = fromItr.next();
+            if ( rel.getOtherNode( from ).equals( to ) )
             {
-                Relationship rel = relItr.next();
-                if ( visitedRels.contains( rel ) )
-                {
-                    continue;
-                }
-                if ( !checkProperties( pRel, rel ) )
-                {
-                    continue;
-                }
-                Node otherNode = rel.getOtherNode( currentNode );
-                PatternNode otherPosition = pRel.getOtherNode( currentPos
-                    .getPatternNode() );
-                visitedRels.add( rel );
-
-                CallPosition callPos = new CallPosition( currentPos, rel,
-                    relItr, pRel, popUncompleted );
-                callStack.push( callPos );
-                if ( traverse( new PatternPosition( otherNode, otherPosition,
-                    pRel, rel, optional ), true ) )
-                {
-                    return true;
-                }
-                callStack.pop();
-                visitedRels.remove( rel );
+                fromMatches.add( rel );
             }
-            pRel.unMark();
-            if ( popUncompleted )
+            if ( toItr == null )
             {
-                uncompletedPositions.pop();
+                continue;
             }
-            foundElements.pop();
-            return false;
+            if ( !toItr.hasNext() )
+            {
+                return toMatches;
+            }
+            rel = toItr.next();
+            if ( rel.getOtherNode( to ).equals( from ) )
+            {
+                toMatches.add( rel );
+            }
+        }
+    }
+
+    private PatternMatch newMatch()
+    {
+        HashMap<PatternNode, PatternElement> filteredElements =
+            new HashMap<PatternNode, PatternElement>();
+        HashMap<PatternRelationship, Relationship> relElements =
+            new HashMap<PatternRelationship, Relationship>();
+        filteredElements.put( startPatternNode, new PatternElement(
+            startPatternNode, null, startNode, null ) );
+        for ( int i = 0; i < steps.length; i++ )
+        {
+            Step step = steps[i];
+            relElements.put( step.pRel, relationships[i] );
+            addElement( filteredElements, step.to, step.pRel, relationships[i] );
+            addElement( filteredElements, step.from, step.pRel, relationships[i] );
         }
-        boolean matchFound = true;
-        if ( !uncompletedPositions.isEmpty() )
+        return new PatternMatch( filteredElements, relElements );
+    }
+
+    private void addElement( Map<PatternNode, PatternElement> elements,
+        int index, PatternRelationship pRel, Relationship rel )
+    {
+        PatternNode pNode = patternNodes.get( index );
+        if ( !elements.containsKey( pNode ) )
         {
-            PatternPosition digPos = uncompletedPositions.pop();
-            digPos.reset();
-            matchFound = traverse( digPos, false );
-            uncompletedPositions.push( digPos );
-            return matchFound;
+            elements.put( pNode, new PatternElement( pNode, pRel, nodes[index], rel ) );
         }
-        return true;
     }
 
     private Iterator<Relationship> getRelationshipIterator(
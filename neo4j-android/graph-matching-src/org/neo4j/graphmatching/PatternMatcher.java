@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphmatching.filter.AbstractFilterExpression;
@@ -32,6 +33,7 @@ import org.neo4j.graphmatching.filter.FilterBinaryNode;
 import org.neo4j.graphmatching.filter.FilterExpression;
 import org.neo4j.graphmatching.filter.FilterValueGetter;
 import org.neo4j.helpers.Predicate;
+import org.neo4j.helpers.collection.ClosableIterable;
 import org.neo4j.helpers.collection.FilteringIterable;
 
 /**
@@ -189,6 +191,63 @@ public class PatternMatcher
 		    Arrays.asList( optional ) );
 	}
 
+    /**
+     * Find occurrences of the pattern defined by the given {@link PatternNode}
+     * where the given {@link PatternNode} starts matching at any of the given
+     * {@link Node}s, matching from several of them at the same time.
+     *
+     * @param start the {@link PatternNode} to start matching at.
+     * @param startNodes the {@link Node}s to start matching at, f.ex. the
+     *            hits of an index query.
+     * @param executor the {@link ExecutorService} to match on.
+     * @param threads the number of start nodes to match from at the same
+     *            time.
+     * @param maxMatches the number of matches to stop after, or -1 to find
+     *            all of them.
+     * @return all matching instances of the pattern, in no particular order.
+     * @see #match(PatternNode, Iterable, Map, Collection, ExecutorService,
+     *      int, int)
+     */
+    public ClosableIterable<PatternMatch> match( PatternNode start,
+        Iterable<Node> startNodes, ExecutorService executor, int threads,
+        int maxMatches )
+    {
+        return match( start, startNodes, null, null, executor, threads,
+            maxMatches );
+    }
+
+    /**
+     * Find occurrences of the pattern defined by the given {@link PatternNode}
+     * where the given {@link PatternNode} starts matching at any of the given
+     * {@link Node}s. {@code threads} tasks are submitted to {@code executor},
+     * each of which repeatedly takes the next start node and matches from it.
+     * The start nodes are only iterated by one thread at a time.
+     * <p>
+     * The matches are handed over through a bounded queue as they are found,
+     * so the tasks wait while the result isn't read. Close the result to
+     * stop them if it isn't read to the end.
+     *
+     * @param start the {@link PatternNode} to start matching at.
+     * @param startNodes the {@link Node}s to start matching at, f.ex. the
+     *            hits of an index query.
+     * @param objectVariables mapping from names to {@link PatternNode}s.
+     * @param optional nodes that form sub-patterns connected to this pattern.
+     * @param executor the {@link ExecutorService} to match on.
+     * @param threads the number of start nodes to match from at the same
+     *            time.
+     * @param maxMatches the number of matches to stop after, or -1 to find
+     *            all of them.
+     * @return all matching instances of the pattern, in no particular order.
+     */
+    public ClosableIterable<PatternMatch> match( PatternNode start,
+        Iterable<Node> startNodes, Map<String, PatternNode> objectVariables,
+        Collection<PatternNode> optional, ExecutorService executor,
+        int threads, int maxMatches )
+    {
+        return new ParallelPatternFinder( this, start, startNodes,
+            objectVariables, optional, executor, threads, maxMatches );
+    }
+
 	private static class SimpleRegexValueGetter implements FilterValueGetter
 	{
 	    private PatternMatch match;
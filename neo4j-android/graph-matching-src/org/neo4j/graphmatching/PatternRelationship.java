@@ -35,8 +35,6 @@ public class PatternRelationship extends AbstractPatternObject<Relationship>
 	private final PatternNode firstNode;
 	private final PatternNode secondNode;
 
-	private boolean isMarked = false;
-
     PatternRelationship( PatternNode firstNode,
         PatternNode secondNode, boolean optional, boolean directed )
     {
@@ -120,21 +118,6 @@ public class PatternRelationship extends AbstractPatternObject<Relationship>
 		return optional;
 	}
 
-	void mark()
-	{
-		isMarked = true;
-	}
-
-	void unMark()
-	{
-		isMarked = false;
-	}
-
-	boolean isMarked()
-	{
-		return isMarked;
-	}
-
     /**
      * Get the {@link RelationshipType} a relationship must have in order to
      * match this pattern relationship. Will return <code>null</code> if a
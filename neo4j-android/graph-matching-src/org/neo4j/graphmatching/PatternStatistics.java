@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphmatching;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.core.RelationshipTypeHolder;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+
+/**
+ * Estimates of how many relationships of a type a node has on average,
+ * which the {@link PatternFinder} uses to decide in which order to match
+ * the parts of a pattern. The relationship type frequencies are sampled
+ * from the relationship store and kept per graph database until the number
+ * of relationships has changed by more than a tenth.
+ */
+class PatternStatistics
+{
+    private static final int SAMPLE_SIZE = 1000;
+    private static final double DEFAULT_DEGREE = 10;
+    private static final Map<GraphDatabaseService, PatternStatistics> statistics =
+        new WeakHashMap<GraphDatabaseService, PatternStatistics>();
+
+    private final long highRelationshipId;
+    private final double averageDegree;
+    private final Map<String, Double> typeDegrees;
+
+    private PatternStatistics( long highRelationshipId, double averageDegree,
+        Map<String, Double> typeDegrees )
+    {
+        this.highRelationshipId = highRelationshipId;
+        this.averageDegree = averageDegree;
+        this.typeDegrees = typeDegrees;
+    }
+
+    static synchronized PatternStatistics forDatabase( GraphDatabaseService graphDb )
+    {
+        PatternStatistics current = statistics.get( graphDb );
+        NeoStore neoStore = neoStore( graphDb );
+        if ( neoStore == null )
+        {
+            if ( current == null )
+            {
+                current = new PatternStatistics( 0, DEFAULT_DEGREE, null );
+                statistics.put( graphDb, current );
+            }
+            return current;
+        }
+        long highId = neoStore.getRelationshipStore().getHighId();
+        if ( current == null || Math.abs( highId - current.highRelationshipId ) >
+            current.highRelationshipId / 10 )
+        {
+            current = sample( graphDb, neoStore, highId );
+            statistics.put( graphDb, current );
+        }
+        return current;
+    }
+
+    private static NeoStore neoStore( GraphDatabaseService graphDb )
+    {
+        if ( !(graphDb instanceof AbstractGraphDatabase) )
+        {
+            return null;
+        }
+        XaDataSource dataSource = ((AbstractGraphDatabase) graphDb).getConfig()
+            .getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME );
+        return dataSource instanceof NeoStoreXaDataSource ?
+            ((NeoStoreXaDataSource) dataSource).getNeoStore() : null;
+    }
+
+    private static PatternStatistics sample( GraphDatabaseService graphDb,
+        NeoStore neoStore, long highId )
+    {
+        RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+        double nodes = Math.max( 1, neoStore.getNodeStore().getNumberOfIdsInUse() );
+        double relationships = relationshipStore.getNumberOfIdsInUse();
+        Map<Integer, Integer> typeCounts = new HashMap<Integer, Integer>();
+        int sampled = 0;
+        long step = Math.max( 1, highId / SAMPLE_SIZE );
+        for ( long id = 0; id < highId; id += step )
+        {
+            RelationshipRecord record = relationshipStore.getLightRel( id );
+            if ( record == null || !record.inUse() )
+            {
+                continue;
+            }
+            Integer count = typeCounts.get( record.getType() );
+            typeCounts.put( record.getType(), count == null ? 1 : count + 1 );
+            sampled++;
+        }
+        Map<String, Double> typeDegrees = new HashMap<String, Double>();
+        RelationshipTypeHolder typeHolder = ((AbstractGraphDatabase) graphDb)
+            .getConfig().getRelationshipTypeHolder();
+        for ( RelationshipType type : typeHolder.getRelationshipTypes() )
+        {
+            Integer count = typeCounts.get( typeHolder.getIdFor( type.name() ) );
+            // Types which weren't sampled are rare, but not necessarily absent
+            double fraction = ( ( count == null ? 0 : count ) + 0.5 ) / ( sampled + 0.5 );
+            typeDegrees.put( type.name(), fraction * relationships / nodes );
+        }
+        return new PatternStatistics( highId, relationships / nodes, typeDegrees );
+    }
+
+    /**
+     * @param type the type of the relationships, or {@code null} for any.
+     * @return the average number of relationships of {@code type} a node has
+     * in {@code direction}.
+     */
+    double degree( RelationshipType type, Direction direction )
+    {
+        double degree = averageDegree;
+        if ( type != null && typeDegrees != null )
+        {
+            Double typeDegree = typeDegrees.get( type.name() );
+            degree = typeDegree != null ? typeDegree : 0;
+        }
+        return direction == Direction.BOTH ? degree * 2 : degree;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.index;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The ids of the entities matching an index lookup, as primitive longs. This
+ * is the id-only counterpart of {@link IndexHits}, returned from
+ * {@link ReadableIndex#getIds(String, Object)} and
+ * {@link ReadableIndex#queryIds(String, Object)}. Neither the ids nor the
+ * entities are boxed or loaded, which makes it suitable for iterating
+ * through large results.
+ * 
+ * The ids are returned as they are found in the index, so they may refer to
+ * entities which have been deleted from the graph, but not from the index.
+ * The same rules as for {@link IndexHits} apply when it comes to closing it:
+ * 
+ * <pre>
+ * IndexIdHits hits = index.getIds( "key", "value" );
+ * try
+ * {
+ *     while ( hits.hasNext() )
+ *     {
+ *         long id = hits.next();
+ *         // do something with the id
+ *     }
+ * }
+ * finally
+ * {
+ *     hits.close();
+ * }
+ * </pre>
+ */
+public interface IndexIdHits
+{
+    /**
+     * @return whether or not there are more ids in this result.
+     */
+    boolean hasNext();
+
+    /**
+     * @return the next id in this result.
+     * @throws NoSuchElementException if there are no more ids.
+     */
+    long next();
+
+    /**
+     * Returns the size of this result, with the same accuracy as
+     * {@link IndexHits#size()}.
+     * 
+     * @return the near-accurate size of this result.
+     */
+    int size();
+
+    /**
+     * Closes the underlying search result, see {@link IndexHits#close()}.
+     */
+    void close();
+
+    /**
+     * @return the score of the id most recently returned from {@link #next()},
+     * see {@link IndexHits#currentScore()}.
+     */
+    float currentScore();
+}
@@ -77,6 +77,39 @@ public interface ReadableIndex<T extends PropertyContainer>
      */
     IndexHits<T> query( Object queryOrQueryObject );
 
+    /**
+     * Returns the ids of the exact matches from this index, given the
+     * key/value pair. Matches are the same as for {@link #get(String, Object)},
+     * but only the ids of the entities are returned, without loading them.
+     *
+     * @param key the key in the key/value pair to match.
+     * @param value the value in the key/value pair to match.
+     * @return the ids of the matching entities wrapped in an
+     * {@link IndexIdHits} object.
+     */
+    IndexIdHits getIds( String key, Object value );
+
+    /**
+     * Returns the ids of the matches from this index, the same way as
+     * {@link #query(String, Object)} but without loading the entities.
+     *
+     * @param key the key in this query.
+     * @param queryOrQueryObject the query for the {@code key} to match.
+     * @return the ids of the matching entities wrapped in an
+     * {@link IndexIdHits} object.
+     */
+    IndexIdHits queryIds( String key, Object queryOrQueryObject );
+
+    /**
+     * Returns the ids of the matches from this index, the same way as
+     * {@link #query(Object)} but without loading the entities.
+     *
+     * @param queryOrQueryObject the query to match.
+     * @return the ids of the matching entities wrapped in an
+     * {@link IndexIdHits} object.
+     */
+    IndexIdHits queryIds( Object queryOrQueryObject );
+
     /**
      * A ReadableIndex is possible to support mutating operations as well. This
      * method returns true iff such operations are supported by the
@@ -21,28 +21,55 @@ package org.neo4j.kernel;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
-
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.NotInTransactionException;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.index.AutoIndexer;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexIdHits;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.kernel.impl.util.ArrayMap;
 
 /**
  * Default implementation of the AutoIndexer, binding to the beforeCommit hook
  * as a TransactionEventHandler
  *
+ * Property changes are collected per transaction and entity and written to
+ * the index once, before the transaction commits, so that setting a property
+ * several times or setting and then removing it doesn't reach the index at
+ * all. Reading from the auto index writes the changes collected so far
+ * first, so that they are visible within the transaction.
+ *
  * @param <T> The database primitive type auto indexed
  */
 abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
         PropertyTracker<T>, AutoIndexer<T>
 {
+    private static final Logger log =
+        Logger.getLogger( AbstractAutoIndexerImpl.class.getName() );
+
     private final Set<String> propertyKeysToInclude = new HashSet<String>();
 
     private final EmbeddedGraphDbImpl gdb;
 
+    private final ArrayMap<Transaction, PendingChanges> pendingChanges =
+            new ArrayMap<Transaction, PendingChanges>( 5, true, true );
+
     private volatile boolean enabled;
 
     public AbstractAutoIndexerImpl( EmbeddedGraphDbImpl gdb )
@@ -58,35 +85,99 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
     public void propertyAdded( T primitive, String propertyName,
             Object propertyValue )
     {
-        if ( propertyKeysToInclude.contains( propertyName ) )
+        boolean include = propertyKeysToInclude.contains( propertyName );
+        PendingChange change = getPendingChange( primitive, propertyName, include );
+        if ( change != null )
         {
-            getIndexInternal().add( primitive, propertyName, propertyValue );
+            change.added = include ? propertyValue : null;
         }
     }
 
     public void propertyChanged( T primitive, String propertyName,
             Object oldValue, Object newValue )
     {
-        if ( oldValue != null )
+        PendingChange change = getPendingChange( primitive, propertyName, true );
+        change.removeIfFirst( oldValue );
+        change.added = propertyKeysToInclude.contains( propertyName ) ? newValue : null;
+    }
+
+    public void propertyRemoved( T primitive, String propertyName,
+            Object propertyValue )
+    {
+        PendingChange change = getPendingChange( primitive, propertyName, true );
+        change.removeIfFirst( propertyValue );
+        change.added = null;
+    }
+
+    private PendingChange getPendingChange( T primitive, String propertyName,
+            boolean create )
+    {
+        Transaction tx = getCurrentTransaction();
+        if ( tx == null )
         {
-            getIndexInternal().remove( primitive, propertyName, oldValue );
+            throw new NotInTransactionException();
         }
-        if ( propertyKeysToInclude.contains( propertyName ) )
+        PendingChanges changes = pendingChanges.get( tx );
+        if ( changes == null )
         {
-            getIndexInternal().add( primitive, propertyName, newValue );
+            if ( !create )
+            {
+                return null;
+            }
+            changes = new PendingChanges( tx );
+            try
+            {
+                tx.registerSynchronization( changes );
+            }
+            catch ( RollbackException e )
+            {
+                throw new RuntimeException( "The transaction is marked for rollback only.", e );
+            }
+            catch ( SystemException e )
+            {
+                throw new RuntimeException( "TM encountered an unexpected error condition.", e );
+            }
+            pendingChanges.put( tx, changes );
         }
+        return changes.get( primitive, propertyName, create );
     }
 
-    public void propertyRemoved( T primitive, String propertyName,
-            Object propertyValue )
+    /**
+     * Writes the property changes collected in the current transaction, if
+     * any, to the auto index.
+     */
+    void applyPendingChanges()
+    {
+        Transaction tx = getCurrentTransaction();
+        PendingChanges changes = tx != null ? pendingChanges.get( tx ) : null;
+        if ( changes != null )
+        {
+            changes.apply();
+        }
+    }
+
+    private Transaction getCurrentTransaction()
+    {
+        try
+        {
+            return getTxManager().getTransaction();
+        }
+        catch ( SystemException e )
+        {
+            throw new NotInTransactionException(
+                    "Error fetching transaction for current thread", e );
+        }
+    }
+
+    private TransactionManager getTxManager()
     {
-        getIndexInternal().remove( primitive, propertyName, propertyValue );
+        return gdb.getConfig().getTxModule().getTxManager();
     }
 
     @Override
     public ReadableIndex<T> getAutoIndex()
     {
-        return new IndexWrapper<T>( getIndexInternal() );
+        return new IndexWrapper<T>( getIndexInternal(), this );
     }
 
     public void setEnabled( boolean enabled )
@@ -185,20 +276,156 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
         return toReturn;
     }
 
+    /**
+     * The property changes of one transaction, kept until they are written to
+     * the index before it commits or until it's read from.
+     */
+    private class PendingChanges implements Synchronization
+    {
+        private final Transaction tx;
+        private final Map<T, Map<String, PendingChange>> changes =
+                new LinkedHashMap<T, Map<String, PendingChange>>();
+
+        PendingChanges( Transaction tx )
+        {
+            this.tx = tx;
+        }
+
+        PendingChange get( T primitive, String propertyName, boolean create )
+        {
+            Map<String, PendingChange> properties = changes.get( primitive );
+            if ( properties == null )
+            {
+                if ( !create )
+                {
+                    return null;
+                }
+                properties = new LinkedHashMap<String, PendingChange>();
+                changes.put( primitive, properties );
+            }
+            PendingChange change = properties.get( propertyName );
+            if ( change == null && create )
+            {
+                change = new PendingChange();
+                properties.put( propertyName, change );
+            }
+            return change;
+        }
+
+        void apply()
+        {
+            if ( changes.isEmpty() )
+            {
+                return;
+            }
+            Index<T> index = getIndexInternal();
+            for ( Map.Entry<T, Map<String, PendingChange>> entity : changes.entrySet() )
+            {
+                try
+                {
+                    for ( Map.Entry<String, PendingChange> property : entity.getValue().entrySet() )
+                    {
+                        property.getValue().apply( index, entity.getKey(), property.getKey() );
+                    }
+                }
+                catch ( NotFoundException e )
+                {
+                    // The entity was deleted in this transaction, lookups
+                    // will skip any entry left behind for it
+                }
+            }
+            changes.clear();
+        }
+
+        public void beforeCompletion()
+        {
+            try
+            {
+                if ( getTxManager().getStatus() != Status.STATUS_ACTIVE )
+                {
+                    return;
+                }
+                apply();
+                // Changes made after this, e.g. by a beforeCommit handler,
+                // go to a fresh instance registered as a new synchronization,
+                // which the transaction also runs before it completes
+                pendingChanges.remove( tx );
+            }
+            catch ( Throwable t )
+            {
+                try
+                {
+                    getTxManager().setRollbackOnly();
+                }
+                catch ( Exception e )
+                {
+                    log.log( Level.WARNING,
+                        "Unable to mark transaction for rollback", e );
+                }
+                throw new RuntimeException( t );
+            }
+        }
+
+        public void afterCompletion( int status )
+        {
+            if ( pendingChanges.get( tx ) == this )
+            {
+                pendingChanges.remove( tx );
+            }
+        }
+    }
+
+    /**
+     * The net change of one property of one entity: the value it had in the
+     * index before the transaction, if it had to be removed, and the value
+     * to index instead, if any.
+     */
+    private static class PendingChange
+    {
+        private boolean remove;
+        private Object removed;
+        private Object added;
+
+        void removeIfFirst( Object value )
+        {
+            if ( !remove && added == null && value != null )
+            {
+                remove = true;
+                removed = value;
+            }
+        }
+
+        <T extends PropertyContainer> void apply( Index<T> index, T primitive, String key )
+        {
+            boolean unchanged = remove && added != null && removed.equals( added );
+            if ( remove && !unchanged )
+            {
+                index.remove( primitive, key, removed );
+            }
+            if ( added != null && !unchanged )
+            {
+                index.add( primitive, key, added );
+            }
+        }
+    }
+
     /**
      * Simple implementation of the AutoIndex interface, as a wrapper around a
-     * normal Index that exposes the read-only operations.
+     * normal Index that exposes the read-only operations. Pending changes of
+     * the current transaction are written to the index before reading it.
      *
      * @param <K> The type of database primitive this index holds
      */
-    private static class IndexWrapper<K extends PropertyContainer> implements
+    static class IndexWrapper<K extends PropertyContainer> implements
             ReadableIndex<K>
     {
         private final Index<K> delegate;
+        private final AbstractAutoIndexerImpl<K> indexer;
 
-        IndexWrapper( Index<K> delegate )
+        IndexWrapper( Index<K> delegate, AbstractAutoIndexerImpl<K> indexer )
         {
             this.delegate = delegate;
+            this.indexer = indexer;
         }
 
         @Override
@@ -216,21 +443,45 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
         @Override
         public IndexHits<K> get( String key, Object value )
         {
+            indexer.applyPendingChanges();
             return delegate.get( key, value );
         }
 
         @Override
         public IndexHits<K> query( String key, Object queryOrQueryObject )
         {
+            indexer.applyPendingChanges();
             return delegate.query( key, queryOrQueryObject );
         }
 
         @Override
         public IndexHits<K> query( Object queryOrQueryObject )
         {
+            indexer.applyPendingChanges();
             return delegate.query( queryOrQueryObject );
         }
 
+        @Override
+        public IndexIdHits getIds( String key, Object value )
+        {
+            indexer.applyPendingChanges();
+            return delegate.getIds( key, value );
+        }
+
+        @Override
+        public IndexIdHits queryIds( String key, Object queryOrQueryObject )
+        {
+            indexer.applyPendingChanges();
+            return delegate.queryIds( key, queryOrQueryObject );
+        }
+
+        @Override
+        public IndexIdHits queryIds( Object queryOrQueryObject )
+        {
+            indexer.applyPendingChanges();
+            return delegate.queryIds( queryOrQueryObject );
+        }
+
         @Override
         public boolean isWriteable()
         {
@@ -286,6 +537,24 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
             return delegate.query( queryOrQueryObject );
         }
 
+        @Override
+        public IndexIdHits getIds( String key, Object value )
+        {
+            return delegate.getIds( key, value );
+        }
+
+        @Override
+        public IndexIdHits queryIds( String key, Object queryOrQueryObject )
+        {
+            return delegate.queryIds( key, queryOrQueryObject );
+        }
+
+        @Override
+        public IndexIdHits queryIds( Object queryOrQueryObject )
+        {
+            return delegate.queryIds( queryOrQueryObject );
+        }
+
         @Override
         public void add( T entity, String key, Object value )
         {
@@ -152,6 +152,22 @@ public class Config
     @Documented
     public static final String ALLOW_STORE_UPGRADE = "allow_store_upgrade";
     public static final String STRING_BLOCK_SIZE = "string_block_size";
+    /**
+     * Strings whose UTF-8 encoding is at least this many bytes are stored
+     * compressed in the string store, if that makes them smaller. Stores
+     * containing compressed strings can't be read by versions without
+     * support for it. Disabled by default.
+     */
+    @Documented
+    public static final String STRING_COMPRESSION_THRESHOLD = "string_compression_threshold";
+    /**
+     * The amount of memory (e.g. "8M") outside of the java heap to use for
+     * caching string and array property values kept in the dynamic stores.
+     * When enabled such values aren't held on to in the node and relationship
+     * caches. Disabled by default.
+     */
+    @Documented
+    public static final String DYNAMIC_VALUE_CACHE_SIZE = "dynamic_value_cache_size";
     public static final String ARRAY_BLOCK_SIZE = "array_block_size";
     /**
      * A list of property names (comma separated) that will be indexed by
@@ -186,6 +202,41 @@ public class Config
     @Documented
     public static final String RELATIONSHIP_AUTO_INDEXING = "relationship_auto_indexing";
 
+    /**
+     * Milliseconds to wait after a commit to a lucene index before its
+     * searcher is reopened in the background. When set, queries never
+     * reopen searchers themselves and may not see changes committed during
+     * the last interval. By default searchers are reopened by the first
+     * query after a commit.
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_REFRESH_INTERVAL = "lucene_searcher_refresh_interval";
+
+    /**
+     * The amount of memory (e.g. "4M") shared by the caches of exact lucene
+     * index lookups, for the keys caching has been enabled for. Defaults to
+     * 4M.
+     */
+    @Documented
+    public static final String LUCENE_CACHE_SIZE = "lucene_cache_size";
+
+    /**
+     * How many segments of about the same size a lucene index may have
+     * before they are merged into one. Lower values mean fewer segments to
+     * search but more merging while writing. Defaults to lucene's 10.
+     */
+    @Documented
+    public static final String LUCENE_MERGE_FACTOR = "lucene_merge_factor";
+
+    /**
+     * Milliseconds without commits to lucene indexes after which the
+     * indexes written to since the last time are merged down to one segment
+     * in the background. Not set by default, meaning that indexes are only
+     * compacted on request.
+     */
+    @Documented
+    public static final String LUCENE_MAINTENANCE_IDLE_TIME = "lucene_maintenance_idle_time";
+
     static final String LOAD_EXTENSIONS = "load_kernel_extensions";
 
     private final AdaptiveCacheManager cacheManager;
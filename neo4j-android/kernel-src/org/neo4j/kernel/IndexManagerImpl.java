@@ -270,7 +270,8 @@ class IndexManagerImpl implements IndexManager
                 customConfiguration );
         if (NodeAutoIndexerImpl.NODE_AUTO_INDEX.equals(indexName))
         {
-            toReturn = new AbstractAutoIndexerImpl.ReadOnlyIndexToIndexAdapter<Node>( toReturn );
+            toReturn = new AbstractAutoIndexerImpl.ReadOnlyIndexToIndexAdapter<Node>(
+                    nodeAutoIndexer.getAutoIndex() );
         }
         return toReturn;
     }
@@ -316,7 +317,7 @@ class IndexManagerImpl implements IndexManager
         if ( RelationshipAutoIndexerImpl.RELATIONSHIP_AUTO_INDEX.equals( indexName ) )
         {
             toReturn = new RelationshipAutoIndexerImpl.RelationshipReadOnlyIndexToIndexAdapter(
-                    toReturn );
+                    relAutoIndexer.getAutoIndex() );
         }
         return toReturn;
     }
@@ -64,7 +64,7 @@ class RelationshipAutoIndexerImpl extends AbstractAutoIndexerImpl<Relationship>
     @Override
     public ReadableRelationshipIndex getAutoIndex()
     {
-        return getIndexInternal();
+        return new RelationshipIndexWrapper( getIndexInternal(), this );
     }
 
     @Override
@@ -83,6 +83,48 @@ class RelationshipAutoIndexerImpl extends AbstractAutoIndexerImpl<Relationship>
         }
     }
 
+    private static class RelationshipIndexWrapper extends IndexWrapper<Relationship>
+            implements ReadableRelationshipIndex
+    {
+        private final RelationshipIndex delegate;
+        private final RelationshipAutoIndexerImpl indexer;
+
+        RelationshipIndexWrapper( RelationshipIndex delegate,
+                RelationshipAutoIndexerImpl indexer )
+        {
+            super( delegate, indexer );
+            this.delegate = delegate;
+            this.indexer = indexer;
+        }
+
+        @Override
+        public IndexHits<Relationship> get( String key, Object valueOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            indexer.applyPendingChanges();
+            return delegate.get( key, valueOrNull, startNodeOrNull, endNodeOrNull );
+        }
+
+        @Override
+        public IndexHits<Relationship> query( String key,
+                Object queryOrQueryObjectOrNull, Node startNodeOrNull,
+                Node endNodeOrNull )
+        {
+            indexer.applyPendingChanges();
+            return delegate.query( key, queryOrQueryObjectOrNull,
+                    startNodeOrNull, endNodeOrNull );
+        }
+
+        @Override
+        public IndexHits<Relationship> query( Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            indexer.applyPendingChanges();
+            return delegate.query( queryOrQueryObjectOrNull, startNodeOrNull,
+                    endNodeOrNull );
+        }
+    }
+
     static class RelationshipReadOnlyIndexToIndexAdapter extends
             ReadOnlyIndexToIndexAdapter<Relationship> implements
             RelationshipIndex
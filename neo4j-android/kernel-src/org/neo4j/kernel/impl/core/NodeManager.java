@@ -48,6 +48,7 @@ import org.neo4j.kernel.impl.cache.NoCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.StrongReferenceCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
+import org.neo4j.kernel.impl.nioneo.store.DynamicValueCache;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexData;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
@@ -90,6 +91,7 @@ public class NodeManager
     private int minRelCacheSize = 0;
     private int maxNodeCacheSize = 1500;
     private int maxRelCacheSize = 3500;
+    private boolean keepLoadedPropertyValues = true;
 
     private static final int LOCK_STRIPE_COUNT = 32;
     private final ReentrantLock loadLocks[] =
@@ -225,6 +227,9 @@ public class NodeManager
                     + value );
             }
         }
+        // with the off heap value cache the cached primitives shouldn't
+        // hold on to large string/array values
+        keepLoadedPropertyValues = DynamicValueCache.configuredSize( params ) <= 0;
     }
 
     public void start( Map<Object,Object> params )
@@ -602,6 +607,16 @@ public class NodeManager
         return persistenceManager.loadPropertyValue( property );
     }
 
+    /**
+     * @return whether string/array values loaded lazily should be kept in
+     * their {@link PropertyData}, or be loaded (from the dynamic value
+     * cache) again every time.
+     */
+    boolean keepLoadedPropertyValues()
+    {
+        return keepLoadedPropertyValues;
+    }
+
     long getRelationshipChainPosition( NodeImpl node )
     {
         return persistenceManager.getRelationshipChainPosition( node.getId() );
@@ -807,7 +822,7 @@ public class NodeManager
         return propertyIndexManager.getIndexFor( keyId );
     }
 
-    Iterable<PropertyIndex> index( String key )
+    PropertyIndex[] index( String key )
     {
         return propertyIndexManager.index( key );
     }
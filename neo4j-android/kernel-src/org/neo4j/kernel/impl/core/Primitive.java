@@ -20,6 +20,8 @@
 package org.neo4j.kernel.impl.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import org.neo4j.graphdb.NotFoundException;
@@ -33,6 +35,17 @@ abstract class Primitive
     // Saves an extra trip down to the store layer.
     private static final PropertyData[] NO_PROPERTIES = new PropertyData[0];
 
+    // Ordered by property key id, see getPropertyForIndex
+    private static final Comparator<PropertyData> KEY_ID_ORDER = new Comparator<PropertyData>()
+    {
+        public int compare( PropertyData o1, PropertyData o2 )
+        {
+            int k1 = o1.getIndex();
+            int k2 = o2.getIndex();
+            return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+        }
+    };
+
     private volatile PropertyData[] properties;
 
     protected abstract PropertyData changeProperty( NodeManager nodeManager, PropertyData property, Object value );
@@ -545,7 +558,10 @@ abstract class Primitive
              * strings/arrays
              */
             value = nodeManager.loadPropertyValue( property );
-            property.setNewValue( value );
+            if ( nodeManager.keepLoadedPropertyValues() )
+            {
+                property.setNewValue( value );
+            }
         }
         return value;
     }
@@ -560,7 +576,7 @@ abstract class Primitive
             return;
         }
 
-        PropertyData[] newArray = properties;
+        PropertyData[] oldArray = properties;
 
         /*
          * add map will definitely be added in the properties array - all properties
@@ -575,73 +591,99 @@ abstract class Primitive
             extraLength += cowPropertyAddMap.size();
         }
 
-        if ( extraLength > 0 )
-        {
-            newArray = new PropertyData[properties.length + extraLength];
-            System.arraycopy( properties, 0, newArray, 0, properties.length );
-        }
+        PropertyData[] newArray = new PropertyData[oldArray.length + extraLength];
+        System.arraycopy( oldArray, 0, newArray, 0, oldArray.length );
 
-        int newArraySize = properties.length;
+        // existing entries keep their key id order, removed ones are nulled out
+        // in place so that binary search over the old part stays valid
         if ( cowPropertyRemoveMap != null )
         {
             for ( Integer keyIndex : cowPropertyRemoveMap.keySet() )
             {
-                for ( int i = 0; i < newArraySize; i++ )
+                int slot = indexOf( oldArray, keyIndex );
+                if ( slot >= 0 )
                 {
-                    PropertyData existingProperty = newArray[i];
-                    if ( existingProperty.getIndex() == keyIndex )
-                    {
-                        int swapWith = --newArraySize;
-                        newArray[i] = newArray[swapWith];
-                        newArray[swapWith] = null;
-                        break;
-                    }
+                    newArray[slot] = null;
                 }
             }
         }
 
+        int appended = oldArray.length;
+        boolean needsSort = false;
         if ( cowPropertyAddMap != null )
         {
             for ( PropertyData addedProperty : cowPropertyAddMap.values() )
             {
-                for ( int i = 0; i < newArray.length; i++ )
+                int slot = indexOf( oldArray, addedProperty.getIndex() );
+                if ( slot >= 0 )
                 {
-                    PropertyData existingProperty = newArray[i];
-                    if ( existingProperty == null || addedProperty.getIndex() == existingProperty.getIndex() )
-                    {
-                        newArray[i] = addedProperty;
-                        if ( existingProperty == null )
-                        {
-                            newArraySize++;
-                        }
-                        break;
-                    }
+                    newArray[slot] = addedProperty;
+                }
+                else
+                {
+                    newArray[appended++] = addedProperty;
+                    needsSort = true;
                 }
             }
         }
 
+        int newArraySize = 0;
+        for ( int i = 0; i < appended; i++ )
+        {
+            if ( newArray[i] != null )
+            {
+                newArray[newArraySize++] = newArray[i];
+            }
+        }
+
         if ( newArraySize < newArray.length )
         {
             PropertyData[] compactedNewArray = new PropertyData[newArraySize];
             System.arraycopy( newArray, 0, compactedNewArray, 0, newArraySize );
-            properties = compactedNewArray;
+            newArray = compactedNewArray;
         }
-        else
+        if ( needsSort )
         {
-            properties = newArray;
+            Arrays.sort( newArray, KEY_ID_ORDER );
         }
+        properties = newArray;
     }
 
-    private PropertyData getPropertyForIndex( int keyId )
+    /**
+     * Binary search for {@code keyId} in {@code array}, which must be ordered
+     * by key id.
+     *
+     * @return the position of the property with the given key id or -1.
+     */
+    private static int indexOf( PropertyData[] array, int keyId )
     {
-        for ( PropertyData property : properties )
+        int low = 0;
+        int high = array.length - 1;
+        while ( low <= high )
         {
-            if ( property.getIndex() == keyId )
+            int mid = (low + high) >>> 1;
+            int midKeyId = array[mid].getIndex();
+            if ( midKeyId < keyId )
+            {
+                low = mid + 1;
+            }
+            else if ( midKeyId > keyId )
             {
-                return property;
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
             }
         }
-        return null;
+        return -1;
+    }
+
+    private PropertyData getPropertyForIndex( int keyId )
+    {
+        PropertyData[] array = properties;
+        int slot = indexOf( array, keyId );
+        return slot >= 0 ? array[slot] : null;
     }
 
     private boolean ensureFullProperties( NodeManager nodeManager )
@@ -668,6 +710,7 @@ abstract class Primitive
         {
             result[i++] = property;
         }
+        Arrays.sort( result, KEY_ID_ORDER );
         return result;
     }
 
@@ -19,12 +19,8 @@
  */
 package org.neo4j.kernel.impl.core;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
@@ -39,8 +35,10 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 
 public class PropertyIndexManager
 {
-    private ArrayMap<String,List<PropertyIndex>> indexMap = 
-        new ArrayMap<String,List<PropertyIndex>>( 5, true, false );
+    private static final PropertyIndex[] NO_INDEXES = new PropertyIndex[0];
+
+    private ArrayMap<String,PropertyIndex[]> indexMap = 
+        new ArrayMap<String,PropertyIndex[]>( 5, true, false );
     private ArrayMap<Integer,PropertyIndex> idToIndexMap = 
         new ArrayMap<Integer,PropertyIndex>( 9, true, false );
 
@@ -63,34 +61,39 @@ public class PropertyIndexManager
 
     void clear()
     {
-        indexMap = new ArrayMap<String,List<PropertyIndex>>( 5, true, false );
+        indexMap = new ArrayMap<String,PropertyIndex[]>( 5, true, false );
         idToIndexMap = new ArrayMap<Integer,PropertyIndex>( 9, true, false );
         txCommitHooks.clear();
     }
 
-    public Iterable<PropertyIndex> index( String key )
+    /**
+     * Returns the property indexes known for {@code key}. The returned array
+     * is shared and must not be modified. No allocation takes place unless
+     * the key was created in the current transaction.
+     */
+    public PropertyIndex[] index( String key )
     {
-        List<PropertyIndex> list = indexMap.get( key );
-        TxCommitHook hook = txCommitHooks.get( getTransaction() );
-        if ( hook != null )
+        PropertyIndex[] indexes = indexMap.get( key );
+        if ( txCommitHooks.size() > 0 )
         {
-            PropertyIndex index = hook.getIndex( key );
-            if ( index != null )
+            TxCommitHook hook = txCommitHooks.get( getTransaction() );
+            if ( hook != null )
             {
-                List<PropertyIndex> added = new ArrayList<PropertyIndex>();
-                if ( list != null )
+                PropertyIndex index = hook.getIndex( key );
+                if ( index != null )
                 {
-                    added.addAll( list );
+                    if ( indexes == null )
+                    {
+                        return new PropertyIndex[] { index };
+                    }
+                    PropertyIndex[] added = new PropertyIndex[indexes.length + 1];
+                    System.arraycopy( indexes, 0, added, 0, indexes.length );
+                    added[indexes.length] = index;
+                    return added;
                 }
-                added.add( index );
-                return added;
             }
         }
-        if ( list == null )
-        {
-            list = Collections.emptyList();
-        }
-        return list;
+        return indexes != null ? indexes : NO_INDEXES;
     }
 
     void setHasAll( boolean status )
@@ -149,16 +152,23 @@ public class PropertyIndexManager
         return index;
     }
 
-    // need synch here so we don't create multiple lists
+    // need synch here so we don't lose concurrently added indexes, readers
+    // always see a complete (copy on write) array
     private synchronized void addPropertyIndex( PropertyIndex index )
     {
-        List<PropertyIndex> list = indexMap.get( index.getKey() );
-        if ( list == null )
+        PropertyIndex[] indexes = indexMap.get( index.getKey() );
+        PropertyIndex[] newIndexes;
+        if ( indexes == null )
+        {
+            newIndexes = new PropertyIndex[] { index };
+        }
+        else
         {
-            list = new CopyOnWriteArrayList<PropertyIndex>();
-            indexMap.put( index.getKey(), list );
+            newIndexes = new PropertyIndex[indexes.length + 1];
+            System.arraycopy( indexes, 0, newIndexes, 0, indexes.length );
+            newIndexes[indexes.length] = index;
         }
-        list.add( index );
+        indexMap.put( index.getKey(), newIndexes );
         idToIndexMap.put( index.getKeyId(), index );
     }
 
@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.nioneo.store;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -280,6 +281,13 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
         }
     }
 
+    /**
+     * Allocates the records needed to store {@code src}, the first one in
+     * {@code startBlock}. All blocks following the first one are taken as a
+     * single range of consecutive ids, so if {@code startBlock} was the
+     * highest id in use the whole chain is contiguous and can be read back
+     * in bulk by {@link #readFullChain(long)}.
+     */
     protected Collection<DynamicRecord> allocateRecords( long startBlock,
         byte src[] )
     {
@@ -289,6 +297,8 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
         long nextBlock = startBlock;
         int srcOffset = 0;
         int dataSize = getBlockSize() - BLOCK_HEADER_SIZE;
+        int blocksLeft = src.length > dataSize ? (src.length - 1) / dataSize : 0;
+        long rangeBlock = blocksLeft > 1 ? nextIdRange( blocksLeft ) : -1;
         do
         {
             DynamicRecord record = new DynamicRecord( nextBlock );
@@ -299,7 +309,7 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
                 byte data[] = new byte[dataSize];
                 System.arraycopy( src, srcOffset, data, 0, dataSize );
                 record.setData( data );
-                nextBlock = nextBlockId();
+                nextBlock = rangeBlock != -1 ? rangeBlock++ : nextBlockId();
                 record.setNextBlock( nextBlock );
                 srcOffset += dataSize;
             }
@@ -368,9 +378,13 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
     }
 
     private DynamicRecord getRecord( long blockId, PersistenceWindow window, boolean loadData )
+    {
+        return getRecord( blockId, window.getOffsettedBuffer( blockId ), loadData );
+    }
+
+    private DynamicRecord getRecord( long blockId, Buffer buffer, boolean loadData )
     {
         DynamicRecord record = new DynamicRecord( blockId );
-        Buffer buffer = window.getOffsettedBuffer( blockId );
 
         /*
          *
@@ -436,6 +450,103 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
         return recordList;
     }
 
+    // number of blocks in the first bulk read of a chain, doubled for every
+    // following read as long as the chain stays contiguous
+    private static final int MIN_READ_AHEAD_BLOCKS = 4;
+    private static final int MAX_READ_AHEAD_BLOCKS = 1024;
+
+    /**
+     * Reads the data of the whole record chain starting at
+     * {@code startBlockId}. Parts of the chain that lie in consecutive blocks
+     * are read with a single read from the file, or under a single window
+     * acquire if they are held by a window, instead of acquiring a window
+     * for every block.
+     *
+     * @param startBlockId the first block of the chain
+     * @return the data of all blocks in the chain
+     */
+    public byte[] readFullChain( long startBlockId )
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( getBlockSize() );
+        long blockId = startBlockId;
+        int readAhead = MIN_READ_AHEAD_BLOCKS;
+        ByteBuffer bulk = null;
+        while ( blockId != Record.NO_NEXT_BLOCK.intValue() )
+        {
+            int count = (int) Math.min( readAhead, getHighId() - blockId );
+            if ( count > 1 )
+            {
+                if ( bulk == null || bulk.capacity() < count * getBlockSize() )
+                {
+                    bulk = ByteBuffer.allocate( readAhead * getBlockSize() );
+                }
+                bulk.clear();
+                if ( readRecords( blockId, count, bulk ) )
+                {
+                    blockId = readChainFrom( bulk, blockId, count, out );
+                    readAhead = Math.min( readAhead * 2, MAX_READ_AHEAD_BLOCKS );
+                    continue;
+                }
+            }
+            blockId = readChainFromWindow( blockId, out );
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads records of a chain from {@code bulk}, which holds {@code count}
+     * records starting with {@code blockId}, for as long as the chain is
+     * contiguous.
+     *
+     * @return the next block of the chain to read
+     */
+    private long readChainFrom( ByteBuffer bulk, long blockId, int count,
+            ByteArrayOutputStream out )
+    {
+        Buffer buffer = new Buffer( null, bulk );
+        for ( int i = 0; i < count; i++ )
+        {
+            buffer.setOffset( i * getBlockSize() );
+            DynamicRecord record = getRecord( blockId + i, buffer, true );
+            out.write( record.getData(), 0, record.getLength() );
+            long nextBlock = record.getNextBlock();
+            if ( nextBlock != blockId + i + 1 )
+            {
+                return nextBlock;
+            }
+        }
+        return blockId + count;
+    }
+
+    /**
+     * Reads records of a chain, starting at {@code blockId}, for as long as
+     * they are held by the same window.
+     *
+     * @return the next block of the chain to read
+     */
+    private long readChainFromWindow( long blockId, ByteArrayOutputStream out )
+    {
+        PersistenceWindow window = acquireWindow( blockId, OperationType.READ );
+        try
+        {
+            long windowEnd = window.position() + window.size();
+            long nextBlock = blockId;
+            do
+            {
+                DynamicRecord record = getRecord( nextBlock, window, true );
+                out.write( record.getData(), 0, record.getLength() );
+                nextBlock = record.getNextBlock();
+            }
+            while ( nextBlock != Record.NO_NEXT_BLOCK.intValue()
+                    && nextBlock >= window.position() && nextBlock < windowEnd );
+            return nextBlock;
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
     private long findHighIdBackwards() throws IOException
     {
         FileChannel fileChannel = getFileChannel();
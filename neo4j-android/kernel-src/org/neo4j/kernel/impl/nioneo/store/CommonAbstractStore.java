@@ -377,6 +377,18 @@ public abstract class CommonAbstractStore
         this.windowPool = pool;
     }
 
+    /**
+     * Reads {@code count} consecutive records starting at {@code position}
+     * into {@code buffer} with one read, if none of them is held by a
+     * {@link PersistenceWindow}.
+     *
+     * @return whether the records were read
+     */
+    protected boolean readRecords( long position, int count, ByteBuffer buffer )
+    {
+        return windowPool.readRecords( position, count, buffer );
+    }
+
     /**
      * Returns the next id for this store's {@link IdGenerator}.
      *
@@ -387,6 +399,18 @@ public abstract class CommonAbstractStore
         return idGenerator.nextId();
     }
 
+    /**
+     * Returns the first of {@code size} consecutive ids for this store's
+     * {@link IdGenerator}.
+     *
+     * @param size the number of ids to allocate
+     * @return the first id of the range
+     */
+    protected long nextIdRange( int size )
+    {
+        return idGenerator.nextIdRange( size );
+    }
+
     /**
      * Frees an id for this store's {@link IdGenerator}.
      *
@@ -455,36 +479,50 @@ public abstract class CommonAbstractStore
             String mem = (String) config.get( realName + ".mapped_memory" );
             if ( mem != null )
             {
-                long multiplier = 1;
-                if ( mem.endsWith( "M" ) )
-                {
-                    multiplier = 1024 * 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "k" ) )
-                {
-                    multiplier = 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "G" ) )
-                {
-                    multiplier = 1024*1024*1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                try
-                {
-                    return Integer.parseInt( mem ) * multiplier;
-                }
-                catch ( NumberFormatException e )
-                {
-                    logger.info( "Unable to parse mapped memory[" + mem
-                        + "] string for " + storageFileName );
-                }
+                return parseMemorySize( mem, storageFileName );
             }
         }
         return 0;
     }
 
+    /**
+     * Parses a memory size such as "512k", "20M" or "1G" into bytes. A value
+     * without unit is taken as bytes.
+     *
+     * @param mem the size to parse
+     * @param what what the size is for, used when logging a parse failure
+     * @return the number of bytes or 0 if {@code mem} couldn't be parsed
+     */
+    public static long parseMemorySize( String mem, String what )
+    {
+        long multiplier = 1;
+        if ( mem.endsWith( "M" ) )
+        {
+            multiplier = 1024 * 1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        else if ( mem.endsWith( "k" ) )
+        {
+            multiplier = 1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        else if ( mem.endsWith( "G" ) )
+        {
+            multiplier = 1024*1024*1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        try
+        {
+            return Integer.parseInt( mem ) * multiplier;
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.info( "Unable to parse memory size[" + mem
+                + "] string for " + what );
+        }
+        return 0;
+    }
+
     /**
      * If store is not ok a call to this method will rebuild the {@link
      * IdGenerator} used by this store and if successful mark it as
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block compression of UTF-8 encoded strings too long to be inlined in a
+ * property block, see {@link PropertyType#COMPRESSED_STRING}. The format is
+ * the uncompressed length as a 4 byte int followed by the deflated bytes.
+ */
+public class CompressedString
+{
+    private static final int HEADER_SIZE = 4;
+
+    private CompressedString()
+    {
+    }
+
+    /**
+     * @param utf8 the encoded string to compress
+     * @return the compressed form of {@code utf8} or {@code null} if that
+     * wouldn't be smaller than {@code utf8} itself.
+     */
+    public static byte[] compress( byte[] utf8 )
+    {
+        Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+        try
+        {
+            deflater.setInput( utf8 );
+            deflater.finish();
+            byte[] target = new byte[utf8.length];
+            int length = HEADER_SIZE;
+            while ( !deflater.finished() )
+            {
+                if ( length == target.length )
+                {
+                    return null;
+                }
+                length += deflater.deflate( target, length, target.length - length );
+            }
+            target[0] = (byte) ( utf8.length >>> 24 );
+            target[1] = (byte) ( utf8.length >>> 16 );
+            target[2] = (byte) ( utf8.length >>> 8 );
+            target[3] = (byte) utf8.length;
+            byte[] result = new byte[length];
+            System.arraycopy( target, 0, result, 0, length );
+            return result;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param compressed bytes produced by {@link #compress(byte[])}
+     * @return the UTF-8 encoded string
+     */
+    public static byte[] decompress( byte[] compressed )
+    {
+        int length = ( ( compressed[0] & 0xFF ) << 24 )
+            | ( ( compressed[1] & 0xFF ) << 16 )
+            | ( ( compressed[2] & 0xFF ) << 8 )
+            | ( compressed[3] & 0xFF );
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput( compressed, HEADER_SIZE,
+                compressed.length - HEADER_SIZE );
+            byte[] result = new byte[length];
+            int offset = 0;
+            while ( offset < length )
+            {
+                int inflated = inflater.inflate( result, offset, length - offset );
+                if ( inflated == 0 && ( inflater.finished() || inflater.needsInput() ) )
+                {
+                    throw new InvalidRecordException( "Compressed string ended after "
+                        + offset + " of " + length + " bytes" );
+                }
+                offset += inflated;
+            }
+            return result;
+        }
+        catch ( DataFormatException e )
+        {
+            throw new InvalidRecordException( "Corrupt compressed string", e );
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
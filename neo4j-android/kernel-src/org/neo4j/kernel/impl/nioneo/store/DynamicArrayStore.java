@@ -75,11 +75,7 @@ public class DynamicArrayStore extends AbstractDynamicStore
         bits.put( (byte)type.intValue() );
         bits.put( (byte)bitsUsedInLastByte );
         bits.put( (byte)requiredBits );
-        int length = arrayLength;
-        for ( int i = 0; i < length; i++ )
-        {
-            type.put( Array.get( array, i ), bits, requiredBits );
-        }
+        type.putAll( array, bits, requiredBits );
         return allocateRecords( startBlock, bits.asBytes() );
     }
 
@@ -152,10 +148,7 @@ public class DynamicArrayStore extends AbstractDynamicStore
             if ( requiredBits == 0 ) return type.createArray( 0 );
             int length = ((bArray.length-3)*8-(8-bitsUsedInLastByte))/requiredBits;
             Object result = type.createArray( length );
-            for ( int i = 0; i < length; i++ )
-            {
-                type.get( result, i, bits, requiredBits );
-            }
+            type.getAll( result, bits, requiredBits );
             return result;
         }
     }
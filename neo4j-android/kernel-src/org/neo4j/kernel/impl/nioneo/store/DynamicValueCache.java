@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.neo4j.kernel.Config;
+
+/**
+ * Keeps the raw payload of string and array dynamic record chains outside of
+ * the java heap, in direct {@link ByteBuffer}s. Values are stored in their
+ * encoded form and decoded by the caller on every read, so a cached value
+ * only costs heap while it is actually in use.
+ * <p>
+ * Entries are keyed on the first block of the chain and are evicted in least
+ * recently used order once the configured number of bytes is exceeded. A
+ * chain is never modified once written, so the only invalidation needed is
+ * when one of its blocks is deleted (and its id may be reused). A reader
+ * which missed takes a {@link #stamp(PropertyType, long)} before reading the
+ * chain and only caches what it read if the chain hasn't been invalidated
+ * since, so that it can't put back a chain a commit just deleted.
+ */
+public class DynamicValueCache
+{
+    private final long maxBytes;
+    private final Map<Long,ByteBuffer> entries =
+        new LinkedHashMap<Long,ByteBuffer>( 64, 0.75f, true );
+    private long bytesHeld;
+    // Invalidation counters, for the first blocks hashing to each slot
+    private final long[] stamps = new long[256];
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public DynamicValueCache( long maxBytes )
+    {
+        if ( maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( "Illegal size " + maxBytes );
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the size configured with {@link Config#DYNAMIC_VALUE_CACHE_SIZE}
+     * in bytes, or 0 if the cache isn't enabled.
+     */
+    public static long configuredSize( Map<?,?> config )
+    {
+        if ( config == null )
+        {
+            return 0;
+        }
+        String size = (String) config.get( Config.DYNAMIC_VALUE_CACHE_SIZE );
+        if ( size == null )
+        {
+            return 0;
+        }
+        return CommonAbstractStore.parseMemorySize( size,
+            Config.DYNAMIC_VALUE_CACHE_SIZE );
+    }
+
+    private static Long key( PropertyType type, long firstBlockId )
+    {
+        // strings and arrays live in different stores, i.e. separate id spaces
+        return Long.valueOf( ( firstBlockId << 1 )
+            | ( type == PropertyType.ARRAY ? 1 : 0 ) );
+    }
+
+    /**
+     * @return a copy of the cached payload for the chain starting at
+     * {@code firstBlockId} or {@code null} if it isn't cached.
+     */
+    public synchronized byte[] get( PropertyType type, long firstBlockId )
+    {
+        ByteBuffer buffer = entries.get( key( type, firstBlockId ) );
+        if ( buffer == null )
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        byte[] data = new byte[buffer.capacity()];
+        buffer.position( 0 );
+        buffer.get( data );
+        return data;
+    }
+
+    /**
+     * @return the stamp to pass to {@link #put(PropertyType, long, byte[], long)}
+     * for the chain starting at {@code firstBlockId}, taken before reading it.
+     */
+    public synchronized long stamp( PropertyType type, long firstBlockId )
+    {
+        return stamps[slot( key( type, firstBlockId ) )];
+    }
+
+    private int slot( Long key )
+    {
+        long value = key.longValue();
+        return (int) ( value ^ ( value >>> 8 ) ^ ( value >>> 16 ) ) & ( stamps.length - 1 );
+    }
+
+    /**
+     * Caches {@code data} as the chain starting at {@code firstBlockId},
+     * unless it has been invalidated after {@code stamp} was taken.
+     */
+    public synchronized void put( PropertyType type, long firstBlockId, byte[] data, long stamp )
+    {
+        if ( data.length > maxBytes )
+        {
+            return;
+        }
+        Long key = key( type, firstBlockId );
+        if ( stamps[slot( key )] != stamp )
+        {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect( data.length );
+        buffer.put( data );
+        ByteBuffer previous = entries.put( key, buffer );
+        if ( previous != null )
+        {
+            bytesHeld -= previous.capacity();
+        }
+        bytesHeld += data.length;
+        Iterator<ByteBuffer> eldest = entries.values().iterator();
+        while ( bytesHeld > maxBytes && eldest.hasNext() )
+        {
+            bytesHeld -= eldest.next().capacity();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes the chain starting at {@code blockId}, if any. Called for every
+     * deleted dynamic record, most of which aren't the first one of a chain.
+     */
+    public synchronized void invalidate( PropertyType type, long blockId )
+    {
+        Long key = key( type, blockId );
+        stamps[slot( key )]++;
+        ByteBuffer buffer = entries.remove( key );
+        if ( buffer != null )
+        {
+            bytesHeld -= buffer.capacity();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        bytesHeld = 0;
+        for ( int i = 0; i < stamps.length; i++ )
+        {
+            stamps[i]++;
+        }
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public synchronized long getBytesHeld()
+    {
+        return bytesHeld;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    public synchronized float getHitRatio()
+    {
+        long total = hitCount + missCount;
+        return total == 0 ? 0f : (float) hitCount / total;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "DynamicValueCache[entries=" + entries.size() + ", bytes="
+            + bytesHeld + "/" + maxBytes + ", hits=" + hitCount + ", misses="
+            + missCount + ", evictions=" + evictionCount + "]";
+    }
+}
@@ -23,6 +23,7 @@ public interface IdGenerator
 {
     long nextId();
     IdRange nextIdBatch( int size );
+    long nextIdRange( int size );
     void setHighId( long id );
     long getHighId();
     void freeId( long id );
@@ -234,6 +234,37 @@ public class IdGeneratorImpl implements IdGenerator
         return new IdRange( defragIds, start, sizeLeftForRange );
     }
 
+    /**
+     * Returns the first of {@code size} consecutive ids. Unlike
+     * {@link #nextIdBatch(int)} the ids available for reuse are left alone,
+     * the range is always taken from the high id so that it doesn't have
+     * any gaps.
+     *
+     * @param size the number of consecutive ids to grab
+     * @return the first id in the range
+     * @throws UnderlyingStorageException if the capacity is exceeded
+     */
+    public synchronized long nextIdRange( int size )
+    {
+        assertStillOpen();
+        long start = nextFreeId.get();
+        long skipped = start;
+        if ( start <= INTEGER_MINUS_ONE && start + size > INTEGER_MINUS_ONE )
+        {
+            // The range can't contain the integer -1, start after it
+            start = INTEGER_MINUS_ONE + 1;
+        }
+        long newHighId = start + size;
+        assertIdWithinCapacity( newHighId - 1 );
+        nextFreeId.set( newHighId );
+        // ids skipped over because of the above are made available for reuse
+        for ( long id = skipped; id < start; id++ )
+        {
+            freeId( id );
+        }
+        return start;
+    }
+
     /**
      * Sets the next free "high" id. This method should be called when an id
      * generator has been rebuilt. {@code id} must not be higher than {@code max}.
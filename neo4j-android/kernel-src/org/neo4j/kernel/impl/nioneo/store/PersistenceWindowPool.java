@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -186,6 +187,65 @@ public class PersistenceWindowPool
         return window;
     }
 
+    /**
+     * Reads {@code count} consecutive records/blocks starting at
+     * {@code position} straight from the file with a single read. This is
+     * only done if none of the records is encapsulated by a window, since a
+     * window may hold changes that haven't been written out yet.
+     *
+     * @param position the first record to read
+     * @param count the number of records to read
+     * @param buffer receives the records, must have room for all of them
+     * @return {@code true} if the records were read, {@code false} if some
+     * of them are in a window and have to be acquired the regular way
+     */
+    public boolean readRecords( long position, int count, ByteBuffer buffer )
+    {
+        synchronized ( this )
+        {
+            for ( long i = position; i < position + count; i++ )
+            {
+                if ( activeRowWindows.containsKey( (int) i ) )
+                {
+                    return false;
+                }
+            }
+            if ( brickSize > 0 )
+            {
+                int firstBrick = (int) (position * blockSize / brickSize);
+                int lastBrick = (int) ((position + count - 1) * blockSize / brickSize);
+                for ( int i = firstBrick; i <= lastBrick && i < brickArray.length; i++ )
+                {
+                    if ( brickArray[i].getWindow() != null )
+                    {
+                        return false;
+                    }
+                }
+            }
+            miss++;
+        }
+        try
+        {
+            long filePosition = position * blockSize;
+            buffer.limit( buffer.position() + count * blockSize );
+            while ( buffer.hasRemaining() )
+            {
+                int read = fileChannel.read( buffer, filePosition );
+                if ( read < 0 )
+                {
+                    return false;
+                }
+                filePosition += read;
+            }
+            return true;
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to read "
+                + count + " records at " + position + " from " + storeName, e );
+        }
+    }
+
     void dumpStatistics()
     {
         log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
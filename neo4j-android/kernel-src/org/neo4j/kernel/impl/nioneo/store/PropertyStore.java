@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 import static org.neo4j.kernel.Config.ARRAY_BLOCK_SIZE;
 import static org.neo4j.kernel.Config.STRING_BLOCK_SIZE;
+import static org.neo4j.kernel.Config.STRING_COMPRESSION_THRESHOLD;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -30,6 +31,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.neo4j.helpers.UTF8;
@@ -56,6 +58,12 @@ public class PropertyStore extends AbstractStore implements Store
     private DynamicStringStore stringPropertyStore;
     private PropertyIndexStore propertyIndexStore;
     private DynamicArrayStore arrayPropertyStore;
+    private DynamicValueCache dynamicValueCache;
+    private int stringCompressionThreshold;
+
+    private final AtomicLong compressedStrings = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
 
     public PropertyStore( String fileName, Map<?,?> config )
     {
@@ -71,6 +79,12 @@ public class PropertyStore extends AbstractStore implements Store
             + ".index", getConfig() );
         arrayPropertyStore = new DynamicArrayStore( getStorageFileName()
             + ".arrays", getConfig(), IdType.ARRAY_BLOCK );
+        stringCompressionThreshold = getStringCompressionThreshold( getConfig() );
+        long valueCacheSize = DynamicValueCache.configuredSize( getConfig() );
+        if ( valueCacheSize > 0 )
+        {
+            dynamicValueCache = new DynamicValueCache( valueCacheSize );
+        }
     }
 
     @Override
@@ -94,6 +108,10 @@ public class PropertyStore extends AbstractStore implements Store
     @Override
     protected void closeStorage()
     {
+        if ( stringPropertyStore != null && compressedStrings.get() > 0 )
+        {
+            logger.fine( getStringCompressionReport() );
+        }
         if ( stringPropertyStore != null )
         {
             stringPropertyStore.close();
@@ -109,6 +127,11 @@ public class PropertyStore extends AbstractStore implements Store
             arrayPropertyStore.close();
             arrayPropertyStore = null;
         }
+        if ( dynamicValueCache != null )
+        {
+            logger.fine( dynamicValueCache.toString() );
+            dynamicValueCache.clear();
+        }
     }
 
     @Override
@@ -304,12 +327,14 @@ public class PropertyStore extends AbstractStore implements Store
         for (int i = 0; i < records.size(); i++)
         {
             DynamicRecord valueRecord = records.get( i );
-            if ( valueRecord.getType() == PropertyType.STRING.intValue() )
+            if ( isStringRecord( valueRecord ) )
             {
+                invalidateCachedValue( PropertyType.STRING, valueRecord );
                 stringPropertyStore.updateRecord( valueRecord );
             }
             else if ( valueRecord.getType() == PropertyType.ARRAY.intValue() )
             {
+                invalidateCachedValue( PropertyType.ARRAY, valueRecord );
                 arrayPropertyStore.updateRecord( valueRecord );
             }
             else
@@ -320,6 +345,35 @@ public class PropertyStore extends AbstractStore implements Store
         }
     }
 
+    /**
+     * Compressed strings live in the string store as well. Their records are
+     * typed as strings, but records deleted by earlier versions could carry
+     * the type of the property block.
+     */
+    public static boolean isStringRecord( DynamicRecord record )
+    {
+        return record.getType() == PropertyType.STRING.intValue()
+            || record.getType() == PropertyType.COMPRESSED_STRING.intValue();
+    }
+
+    private void invalidateCachedValue( PropertyType type, DynamicRecord record )
+    {
+        // A created record may reuse the id of a chain deleted earlier
+        if ( dynamicValueCache != null && ( !record.inUse() || record.isCreated() ) )
+        {
+            dynamicValueCache.invalidate( type, record.getId() );
+        }
+    }
+
+    /**
+     * @return the cache for dynamic string and array values or {@code null}
+     * if it isn't enabled, see {@link org.neo4j.kernel.Config#DYNAMIC_VALUE_CACHE_SIZE}.
+     */
+    public DynamicValueCache getDynamicValueCache()
+    {
+        return dynamicValueCache;
+    }
+
     public PropertyRecord getLightRecord( long id )
     {
         PersistenceWindow window = acquireWindow( id, OperationType.READ );
@@ -334,9 +388,15 @@ public class PropertyStore extends AbstractStore implements Store
         }
     }
 
+    private static boolean isDynamicString( PropertyBlock block )
+    {
+        PropertyType type = block.getType();
+        return type == PropertyType.STRING || type == PropertyType.COMPRESSED_STRING;
+    }
+
     public void makeHeavy( PropertyBlock record )
     {
-        if ( record.getType() == PropertyType.STRING )
+        if ( isDynamicString( record ) )
         {
             Collection<DynamicRecord> stringRecords = stringPropertyStore.getLightRecords( record.getSingleValueLong() );
             for ( DynamicRecord stringRecord : stringRecords )
@@ -371,7 +431,7 @@ public class PropertyStore extends AbstractStore implements Store
         for ( PropertyBlock block : record.getPropertyBlocks() )
         {
             // assert block.inUse();
-            if ( block.getType() == PropertyType.STRING )
+            if ( isDynamicString( block ) )
             {
                 Collection<DynamicRecord> stringRecords = stringPropertyStore.getLightRecords( block.getSingleValueLong() );
                 for ( DynamicRecord stringRecord : stringRecords )
@@ -515,10 +575,24 @@ public class PropertyStore extends AbstractStore implements Store
             if ( LongerShortString.encode( keyId, string, block,
                     PropertyType.getPayloadSize() ) ) return;
 
-            // Fall back to dynamic string store
-            long stringBlockId = nextStringBlockId();
-            setSingleBlockValue( block, keyId, PropertyType.STRING, stringBlockId );
+            // Fall back to dynamic string store, compressed if worth it
             byte[] encodedString = encodeString( string );
+            PropertyType type = PropertyType.STRING;
+            if ( stringCompressionThreshold > 0
+                 && encodedString.length >= stringCompressionThreshold )
+            {
+                byte[] compressed = CompressedString.compress( encodedString );
+                if ( compressed != null )
+                {
+                    compressedStrings.incrementAndGet();
+                    bytesBeforeCompression.addAndGet( encodedString.length );
+                    bytesAfterCompression.addAndGet( compressed.length );
+                    encodedString = compressed;
+                    type = PropertyType.COMPRESSED_STRING;
+                }
+            }
+            long stringBlockId = nextStringBlockId();
+            setSingleBlockValue( block, keyId, type, stringBlockId );
             Collection<DynamicRecord> valueRecords = allocateStringRecords( stringBlockId, encodedString );
             for ( DynamicRecord valueRecord : valueRecords )
             {
@@ -579,7 +653,48 @@ public class PropertyStore extends AbstractStore implements Store
 
     public Object getStringFor( PropertyBlock propertyBlock )
     {
-        return getStringFor( stringPropertyStore, propertyBlock );
+        return getStringFor( readDynamicValue( PropertyType.STRING,
+            propertyBlock, stringPropertyStore ) );
+    }
+
+    public Object getCompressedStringFor( PropertyBlock propertyBlock )
+    {
+        // cached in compressed form, the string store is where the chain lives
+        return getStringFor( CompressedString.decompress( readDynamicValue(
+            PropertyType.STRING, propertyBlock, stringPropertyStore ) ) );
+    }
+
+    /**
+     * Reads the payload of the dynamic record chain of {@code propertyBlock},
+     * going through the dynamic value cache if enabled. The chain of a light
+     * block is read straight from the store, without making the block heavy.
+     * Chains created in a not yet committed transaction are never cached.
+     */
+    private byte[] readDynamicValue( PropertyType type,
+            PropertyBlock propertyBlock, AbstractDynamicStore store )
+    {
+        long startRecord = propertyBlock.getSingleValueLong();
+        boolean cacheable = dynamicValueCache != null
+            && ( propertyBlock.isLight()
+                 || !propertyBlock.getValueRecords().get( 0 ).isCreated() );
+        long stamp = 0;
+        if ( cacheable )
+        {
+            byte[] cached = dynamicValueCache.get( type, startRecord );
+            if ( cached != null )
+            {
+                return cached;
+            }
+            stamp = dynamicValueCache.stamp( type, startRecord );
+        }
+        byte[] source = propertyBlock.isLight() ?
+            store.readFullChain( startRecord ) :
+            readFullByteArray( startRecord, propertyBlock.getValueRecords(), store );
+        if ( cacheable )
+        {
+            dynamicValueCache.put( type, startRecord, source, stamp );
+        }
+        return source;
     }
 
     public static Object getStringFor( AbstractDynamicStore store, PropertyBlock propertyBlock )
@@ -600,8 +715,8 @@ public class PropertyStore extends AbstractStore implements Store
 
     public Object getArrayFor( PropertyBlock propertyBlock )
     {
-        assert !propertyBlock.isLight();
-        return getArrayFor( propertyBlock.getSingleValueLong(), propertyBlock.getValueRecords(), arrayPropertyStore );
+        return arrayPropertyStore.getRightArray( readDynamicValue(
+            PropertyType.ARRAY, propertyBlock, arrayPropertyStore ) );
     }
 
     public static Object getArrayFor( long startRecord, Iterable<DynamicRecord> records,
@@ -665,6 +780,67 @@ public class PropertyStore extends AbstractStore implements Store
         return list;
     }
 
+    private static int getStringCompressionThreshold( Map<?,?> config )
+    {
+        String threshold = config != null ?
+            (String) config.get( STRING_COMPRESSION_THRESHOLD ) : null;
+        if ( threshold == null )
+        {
+            return 0;
+        }
+        try
+        {
+            return Integer.parseInt( threshold );
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.info( "Unable to parse " + STRING_COMPRESSION_THRESHOLD
+                + "[" + threshold + "]" );
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of strings stored compressed since this store was
+     * opened.
+     */
+    public long getCompressedStringCount()
+    {
+        return compressedStrings.get();
+    }
+
+    /**
+     * @return the UTF-8 encoded size of the strings stored compressed since
+     * this store was opened.
+     */
+    public long getBytesBeforeCompression()
+    {
+        return bytesBeforeCompression.get();
+    }
+
+    /**
+     * @return the compressed size of the strings stored compressed since this
+     * store was opened.
+     */
+    public long getBytesAfterCompression()
+    {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * @return a description of the string store size and what string
+     * compression has saved since this store was opened.
+     */
+    public String getStringCompressionReport()
+    {
+        long before = bytesBeforeCompression.get();
+        long after = bytesAfterCompression.get();
+        return getStorageFileName() + ".strings: " + stringPropertyStore.getHighId()
+            + " blocks of " + getStringBlockSize() + " bytes, "
+            + compressedStrings.get() + " strings compressed from " + before
+            + " to " + after + " bytes";
+    }
+
     public int getStringBlockSize()
     {
         return stringPropertyStore.getBlockSize();
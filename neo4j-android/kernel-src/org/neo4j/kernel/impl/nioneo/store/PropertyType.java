@@ -275,6 +275,23 @@ public enum PropertyType
         {
             return ShortArray.calculateNumberOfBlocksUsed( firstBlock );
         }
+    },
+    COMPRESSED_STRING( 13 )
+    {
+        @Override
+        public Object getValue( PropertyBlock block, PropertyStore store )
+        {
+            if ( store == null ) return null;
+            return store.getCompressedStringFor( block );
+        }
+
+        @Override
+        public PropertyData newPropertyData( PropertyBlock block,
+                long propertyId, Object extractedValue )
+        {
+            return PropertyDatas.forStringOrArray( block.getKeyIndexId(),
+                    propertyId, extractedValue );
+        }
     };
 
     private final int type;
@@ -344,6 +361,8 @@ public enum PropertyType
             return SHORT_STRING;
         case 12:
             return SHORT_ARRAY;
+        case 13:
+            return COMPRESSED_STRING;
         default: if (nullOnIllegal) return null;
             throw new InvalidRecordException( "Unknown property type for type "
                                               + type );
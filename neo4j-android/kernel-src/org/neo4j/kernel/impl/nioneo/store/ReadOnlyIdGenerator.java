@@ -41,6 +41,11 @@ public class ReadOnlyIdGenerator implements IdGenerator
     {
         throw new ReadOnlyDbException();
     }
+
+    public long nextIdRange( int size )
+    {
+        throw new ReadOnlyDbException();
+    }
     
     public void setHighId( long id )
     {
@@ -47,9 +47,34 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
         {
-            Array.setBoolean( array, position, bits.getByte( requiredBits ) != 0 );
+            if ( !( array instanceof boolean[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            boolean[] values = (boolean[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i] ? 1 : 0, requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
+        {
+            boolean[] values = (boolean[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = bits.getByte( requiredBits ) != 0;
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
+        {
+            return 1;
         }
     },
     BYTE( PropertyType.BYTE, 8, Byte.class )
@@ -83,9 +108,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof byte[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            byte[] values = (byte[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i], requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
+        {
+            byte[] values = (byte[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = bits.getByte( requiredBits );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
         {
-            Array.setByte( array, position, bits.getByte( requiredBits ) );
+            byte[] values = (byte[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= values[i];
+            }
+            return result;
         }
     },
     SHORT( PropertyType.SHORT, 16, Short.class )
@@ -119,9 +175,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof short[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            short[] values = (short[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i], requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
+        {
+            short[] values = (short[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = bits.getShort( requiredBits );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
         {
-            Array.setShort( array, position, bits.getShort( requiredBits ) );
+            short[] values = (short[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= values[i];
+            }
+            return result;
         }
     },
     CHAR( PropertyType.CHAR, 16, Character.class )
@@ -155,9 +242,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof char[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            char[] values = (char[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i], requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
         {
-            Array.setChar( array, position, (char)bits.getShort( requiredBits ) );
+            char[] values = (char[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = (char)bits.getShort( requiredBits );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
+        {
+            char[] values = (char[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= values[i];
+            }
+            return result;
         }
     },
     INT( PropertyType.INT, 32, Integer.class )
@@ -191,9 +309,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
         {
-            Array.setInt( array, position, bits.getInt( requiredBits ) );
+            if ( !( array instanceof int[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            int[] values = (int[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i], requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
+        {
+            int[] values = (int[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = bits.getInt( requiredBits );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
+        {
+            int[] values = (int[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= values[i];
+            }
+            return result;
         }
     },
     LONG( PropertyType.LONG, 64, Long.class )
@@ -227,9 +376,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof long[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            long[] values = (long[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( values[i], requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
+        {
+            long[] values = (long[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = bits.getLong( requiredBits );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
         {
-            Array.setLong( array, position, bits.getLong( requiredBits ) );
+            long[] values = (long[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= values[i];
+            }
+            return result;
         }
     },
     FLOAT( PropertyType.FLOAT, 32, Float.class )
@@ -263,10 +443,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof float[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            float[] values = (float[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( Float.floatToIntBits( values[i] ), requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
         {
-            int value = bits.getInt( requiredBits );
-            Array.setFloat( array, position, Float.intBitsToFloat( value ) );
+            float[] values = (float[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = Float.intBitsToFloat( bits.getInt( requiredBits ) );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
+        {
+            float[] values = (float[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= Float.floatToIntBits( values[i] );
+            }
+            return result;
         }
     },
     DOUBLE( PropertyType.DOUBLE, 64, Double.class )
@@ -300,10 +510,40 @@ public enum ShortArray
         }
 
         @Override
-        void get( Object array, int position, Bits bits, int requiredBits )
+        void putAll( Object array, Bits bits, int requiredBits )
+        {
+            if ( !( array instanceof double[] ) )
+            {
+                super.putAll( array, bits, requiredBits );
+                return;
+            }
+            double[] values = (double[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                bits.put( Double.doubleToLongBits( values[i] ), requiredBits );
+            }
+        }
+
+        @Override
+        void getAll( Object array, Bits bits, int requiredBits )
         {
-            long value = bits.getLong( requiredBits );
-            Array.setDouble( array, position, Double.longBitsToDouble( value ) );
+            double[] values = (double[]) array;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                values[i] = Double.longBitsToDouble( bits.getLong( requiredBits ) );
+            }
+        }
+
+        @Override
+        long combinedBits( Object array )
+        {
+            double[] values = (double[]) array;
+            long result = 0;
+            for ( int i = 0; i < values.length; i++ )
+            {
+                result |= Double.doubleToLongBits( values[i] );
+            }
+            return result;
         }
     };
 
@@ -328,7 +568,31 @@ public enum ShortArray
 
     abstract void put( Object value, Bits bits, int requiredBits );
 
-    abstract void get( Object array, int position, Bits bits, int requiredBits );
+    /**
+     * Writes all values of {@code array} to {@code bits}. Subclasses write
+     * primitive arrays directly, without boxing each element, and leave
+     * arrays of the boxed type to this implementation.
+     */
+    void putAll( Object array, Bits bits, int requiredBits )
+    {
+        int arrayLength = Array.getLength( array );
+        for ( int i = 0; i < arrayLength; i++ )
+        {
+            put( Array.get( array, i ), bits, requiredBits );
+        }
+    }
+
+    /**
+     * Reads values from {@code bits} into every slot of {@code array}, which
+     * must have been created by {@link #createArray(int)}.
+     */
+    abstract void getAll( Object array, Bits bits, int requiredBits );
+
+    /**
+     * @return all values of the primitive {@code array} or:ed together, as
+     * they would be written by {@link #put(Object, Bits, int)}.
+     */
+    abstract long combinedBits( Object array );
 
     abstract Object createArray( int ofLength );
 
@@ -373,10 +637,7 @@ public enum ShortArray
         result.put( arrayLength, 6 );
         result.put( requiredBits, 6 );
 
-        for ( int i = 0; i < arrayLength; i++ )
-        {
-            type.put( Array.get( array, i ), result, requiredBits );
-        }
+        type.putAll( array, result, requiredBits );
         target.setValueBlocks( result.getLongs() );
         return true;
     }
@@ -402,10 +663,7 @@ public enum ShortArray
         }
         ShortArray type = typeOf( (byte)typeId );
         Object array = type.createArray( arrayLength );
-        for ( int i = 0; i < arrayLength; i++ )
-        {
-            type.get( array, i, bits, requiredBits );
-        }
+        type.getAll( array, bits, requiredBits );
         return array;
     }
 
@@ -423,6 +681,13 @@ public enum ShortArray
         {
             return 0;
         }
+        if ( array.getClass().getComponentType().isPrimitive() )
+        {
+            // The highest bit set in any value is the highest bit set in all
+            // of them or:ed together, no need to look at each value separately
+            long combined = combinedBits( array ) & Bits.rightOverflowMask( maxBits );
+            return Math.max( 1, 64 - Long.numberOfLeadingZeros( combined ) );
+        }
         int highest = 1;
         for ( int i = 0; i < arrayLength; i++ )
         {
@@ -251,7 +251,11 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 //            neoStore.getPropertyStore().getIndexStore() );
 //    }
 
-    NeoStore getNeoStore()
+    /**
+     * @return the underlying store, f.ex. for reading records in bulk. It
+     * only reflects committed transactions.
+     */
+    public NeoStore getNeoStore()
     {
         return neoStore;
     }
@@ -247,13 +247,10 @@ class ReadTransaction implements NeoStoreTransaction
     @Override
     public Object loadPropertyValue( PropertyData property )
     {
-        PropertyRecord propertyRecord = getPropertyStore().getRecord(
+        // dynamic records are read (or served from the value cache) on demand
+        PropertyRecord propertyRecord = getPropertyStore().getLightRecord(
                 property.getId() );
         PropertyBlock propertyBlock = propertyRecord.getPropertyBlock( property.getIndex() );
-        if ( propertyBlock.isLight() )
-        {
-            getPropertyStore().makeHeavy( propertyBlock );
-        }
         return propertyBlock.getType().getValue( propertyBlock,
                 getPropertyStore() );
     }
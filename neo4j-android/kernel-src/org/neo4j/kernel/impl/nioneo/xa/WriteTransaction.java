@@ -320,7 +320,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                         {
                             if ( dynamicRecord.isCreated() )
                             {
-                                if ( dynamicRecord.getType() == PropertyType.STRING.intValue() )
+                                if ( PropertyStore.isStringRecord( dynamicRecord ) )
                                 {
                                     getPropertyStore().freeStringBlockId(
                                             dynamicRecord.getId() );
@@ -951,7 +951,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         for ( DynamicRecord valueRecord : block.getValueRecords() )
         {
             assert valueRecord.inUse();
-            valueRecord.setInUse( false, block.getType().intValue() );
+            valueRecord.setInUse( false, valueRecord.getType() );
             propRecord.addDeletedRecord( valueRecord );
         }
         if ( propRecord.size() > 0 )
@@ -1034,7 +1034,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         PropertyRecord propertyRecord = propertyRecords.get( propertyData.getId() );
         if ( propertyRecord == null )
         {
-            propertyRecord = getPropertyStore().getRecord( propertyData.getId() );
+            propertyRecord = getPropertyStore().getLightRecord( propertyData.getId() );
         }
         PropertyBlock block = propertyRecord.getPropertyBlock( propertyData.getIndex() );
         if ( block == null )
@@ -1044,10 +1044,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                                              + "] is not present in property["
                                              + propertyData.getId() + "]" );
         }
-        if ( block.isLight() )
-        {
-            getPropertyStore().makeHeavy( block );
-        }
+        // light blocks are made heavy by the store unless the value is cached
         return block.getType().getValue( block, getPropertyStore() );
     }
 
@@ -1091,7 +1088,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         for ( DynamicRecord valueRecord : block.getValueRecords() )
         {
             assert valueRecord.inUse();
-            valueRecord.setInUse( false, block.getType().intValue() );
+            valueRecord.setInUse( false, valueRecord.getType() );
             propRecord.addDeletedRecord( valueRecord );
         }
         // propRecord.removeBlock( propertyData.getIndex() );
@@ -1231,7 +1228,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         for ( DynamicRecord record : block.getValueRecords() )
         {
             assert record.inUse();
-            record.setInUse( false, block.getType().intValue() );
+            record.setInUse( false, record.getType() );
             propertyRecord.addDeletedRecord( record );
         }
         getPropertyStore().encodeValue( block, propertyData.getIndex(),
@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import org.neo4j.kernel.impl.nioneo.store.Buffer;
@@ -74,10 +76,15 @@ public class Bits
     public static Bits bitsFromBytes( byte[] bytes )
     {
         Bits bits = bits( bytes.length );
-        for ( byte value : bytes )
+        // Byte n is at bits 8n..8n+7, i.e. the longs are little endian
+        int fullLongs = bytes.length >> 3;
+        ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asLongBuffer()
+                .get( bits.longs, 0, fullLongs );
+        for ( int i = fullLongs << 3; i < bytes.length; i++ )
         {
-            bits.put( value );
+            bits.longs[fullLongs] |= ( bytes[i] & 0xFFL ) << ( ( i & 7 ) << 3 );
         }
+        bits.writePosition = bytes.length << 3;
         return bits;
     }
     
@@ -127,21 +134,15 @@ public class Bits
     
     public byte[] asBytes()
     {
-        int readPositionBefore = readPosition;
-        readPosition = 0;
-        try
-        {
-            byte[] result = new byte[numberOfBytes];
-            for ( int i = 0; i < result.length; i++ )
-            {
-                result[i] = getByte();
-            }
-            return result;
-        }
-        finally
+        byte[] result = new byte[numberOfBytes];
+        int fullLongs = numberOfBytes >> 3;
+        ByteBuffer.wrap( result ).order( ByteOrder.LITTLE_ENDIAN ).asLongBuffer()
+                .put( longs, 0, fullLongs );
+        for ( int i = fullLongs << 3; i < numberOfBytes; i++ )
         {
-            readPosition = readPositionBefore;
+            result[i] = (byte) ( longs[fullLongs] >>> ( ( i & 7 ) << 3 ) );
         }
+        return result;
     }
     
     /**
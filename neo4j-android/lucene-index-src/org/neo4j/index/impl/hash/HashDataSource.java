@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.helpers.collection.ClosableIterable;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.index.IndexCommand;
+import org.neo4j.kernel.impl.index.IndexDefineCommand;
+import org.neo4j.kernel.impl.index.IndexProviderStore;
+import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommandFactory;
+import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
+import org.neo4j.kernel.impl.transaction.xaframework.XaContainer;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
+
+/**
+ * An {@link XaDataSource} for the {@link HashIndexImplementation}. Each
+ * index is a {@link PostingsTable} which is written to disk when the
+ * logical log is rotated and at shutdown, the way the Lucene data source
+ * commits its index writers.
+ * This class is public because the XA framework requires it.
+ */
+public class HashDataSource extends LogBackedXaDataSource
+{
+    public static final String DEFAULT_NAME = "hash-index";
+    public static final byte[] DEFAULT_BRANCH_ID = UTF8.encode( "162375" );
+
+    private final XaContainer xaContainer;
+    private final File baseDirectory;
+    final IndexStore indexStore;
+    private final IndexProviderStore providerStore;
+    private final Map<String, PostingsTable> tables = new ConcurrentHashMap<String, PostingsTable>();
+    final Map<String, HashIndex<? extends PropertyContainer>> indexes =
+            new HashMap<String, HashIndex<? extends PropertyContainer>>();
+    private boolean closed;
+
+    /**
+     * Constructs this data source.
+     *
+     * @param params XA parameters.
+     * @throws InstantiationException if the data source couldn't be
+     * instantiated
+     */
+    public HashDataSource( Map<Object,Object> params )
+        throws InstantiationException
+    {
+        super( params );
+        String storeDir = (String) params.get( "store_dir" );
+        File indexDirectory = new File( storeDir, "index" );
+        if ( !indexDirectory.exists() && !indexDirectory.mkdirs() )
+        {
+            throw new RuntimeException( "Unable to create directory path[" +
+                    indexDirectory.getAbsolutePath() + "] for Neo4j store." );
+        }
+        this.baseDirectory = new File( indexDirectory, "hash" );
+        this.indexStore = (IndexStore) params.get( IndexStore.class );
+        this.providerStore = new IndexProviderStore( new File( indexDirectory, "hash-store.db" ) );
+        boolean isReadOnly = false;
+        if ( params.containsKey( "read_only" ) )
+        {
+            Object readOnly = params.get( "read_only" );
+            if ( readOnly instanceof Boolean )
+            {
+                isReadOnly = (Boolean) readOnly;
+            }
+            else
+            {
+                isReadOnly = Boolean.parseBoolean( (String) readOnly );
+            }
+        }
+
+        XaCommandFactory cf = new HashCommandFactory();
+        XaTransactionFactory tf = new HashTransactionFactory();
+        xaContainer = XaContainer.create( this, new File( indexDirectory, "hash.log" ).getPath(),
+                cf, tf, params );
+
+        if ( !isReadOnly )
+        {
+            try
+            {
+                xaContainer.openLogicalLog();
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to open hash index log in " +
+                        indexDirectory, e );
+            }
+
+            setKeepLogicalLogsIfSpecified( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME );
+            setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
+        }
+    }
+
+    static String tableName( byte entityType, String indexName )
+    {
+        return (entityType == IndexCommand.RELATIONSHIP ? "relationship" : "node") +
+                File.separator + indexName;
+    }
+
+    /**
+     * @return the committed ids for {@code key} and {@code value} in the
+     * index {@code tableName}.
+     */
+    long[] get( String tableName, String key, String value )
+    {
+        return table( tableName ).get( key, value );
+    }
+
+    Map<String, long[]> values( String tableName, String key )
+    {
+        return table( tableName ).values( key );
+    }
+
+    PostingsTable table( String tableName )
+    {
+        PostingsTable table = tables.get( tableName );
+        if ( table == null )
+        {
+            synchronized ( tables )
+            {
+                table = tables.get( tableName );
+                if ( table == null )
+                {
+                    try
+                    {
+                        table = PostingsTable.open( new File( baseDirectory, tableName + ".db" ) );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( "Unable to open hash index " + tableName, e );
+                    }
+                    tables.put( tableName, table );
+                }
+            }
+        }
+        return table;
+    }
+
+    void deleteIndex( byte entityType, String indexName, boolean recovery )
+    {
+        String tableName = tableName( entityType, indexName );
+        table( tableName ).delete();
+        tables.remove( tableName );
+        Class<? extends PropertyContainer> cls = IndexDefineCommand.entityType( entityType );
+        if ( !recovery || indexStore.has( cls, indexName ) )
+        {
+            indexStore.remove( cls, indexName );
+        }
+        synchronized ( indexes )
+        {
+            HashIndex<? extends PropertyContainer> index = indexes.remove( tableName );
+            if ( index != null )
+            {
+                index.markAsDeleted();
+            }
+        }
+    }
+
+    private synchronized void flushTables()
+    {
+        for ( Map.Entry<String, PostingsTable> table : tables.entrySet() )
+        {
+            try
+            {
+                table.getValue().flush();
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to write hash index " + table.getKey(), e );
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized ( this )
+        {
+            if ( closed )
+            {
+                return;
+            }
+            closed = true;
+        }
+        if ( xaContainer != null )
+        {
+            xaContainer.close();
+        }
+        flushTables();
+        providerStore.close();
+    }
+
+    @Override
+    public XaConnection getXaConnection()
+    {
+        return new HashXaConnection( baseDirectory, xaContainer.getResourceManager(), getBranchId() );
+    }
+
+    private class HashCommandFactory extends XaCommandFactory
+    {
+        @Override
+        public XaCommand readCommand( ReadableByteChannel channel,
+            ByteBuffer buffer ) throws IOException
+        {
+            return IndexCommand.readCommand( channel, buffer );
+        }
+    }
+
+    private class HashTransactionFactory extends XaTransactionFactory
+    {
+        @Override
+        public XaTransaction create( int identifier )
+        {
+            return new HashTransaction( identifier, this.getLogicalLog(), HashDataSource.this );
+        }
+
+        @Override
+        public void flushAll()
+        {
+            flushTables();
+        }
+
+        @Override
+        public long getCurrentVersion()
+        {
+            return providerStore.getVersion();
+        }
+
+        @Override
+        public long getAndSetNewVersion()
+        {
+            return providerStore.incrementVersion();
+        }
+
+        @Override
+        public long getLastCommittedTx()
+        {
+            return providerStore.getLastCommittedTx();
+        }
+    }
+
+    @Override
+    public long getCreationTime()
+    {
+        return providerStore.getCreationTime();
+    }
+
+    @Override
+    public long getRandomIdentifier()
+    {
+        return providerStore.getRandomNumber();
+    }
+
+    @Override
+    public long getCurrentLogVersion()
+    {
+        return providerStore.getVersion();
+    }
+
+    @Override
+    public long getLastCommittedTxId()
+    {
+        return providerStore.getLastCommittedTx();
+    }
+
+    @Override
+    public void setLastCommittedTxId( long txId )
+    {
+        providerStore.setLastCommittedTx( txId );
+    }
+
+    @Override
+    public XaContainer getXaContainer()
+    {
+        return this.xaContainer;
+    }
+
+    @Override
+    public ClosableIterable<File> listStoreFiles( boolean includeLogicalLogs ) throws IOException
+    {   // Never include logical logs since they are of little importance
+        flushTables();
+        final Collection<File> files = new ArrayList<File>();
+        for ( String entityType : new String[] { "node", "relationship" } )
+        {
+            File[] tableFiles = new File( baseDirectory, entityType ).listFiles();
+            for ( File file : tableFiles != null ? tableFiles : new File[0] )
+            {
+                if ( file.getName().endsWith( ".db" ) )
+                {
+                    files.add( file );
+                }
+            }
+        }
+        files.add( providerStore.getFile() );
+        return new ClosableIterable<File>()
+        {
+            public Iterator<File> iterator()
+            {
+                return files.iterator();
+            }
+
+            public void close()
+            {
+            }
+        };
+    }
+}
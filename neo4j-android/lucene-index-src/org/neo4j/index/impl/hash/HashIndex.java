@@ -0,0 +1,500 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.search.Query;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexIdHits;
+import org.neo4j.index.impl.lucene.AbstractIndexHits;
+import org.neo4j.index.impl.lucene.IdToEntityIterator;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.impl.core.ReadOnlyDbException;
+import org.neo4j.kernel.impl.index.IndexCommand;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+/**
+ * An {@link Index} which only supports exact lookups, answered from a
+ * {@link PostingsTable} instead of a Lucene index. Values are matched by
+ * their string representation.
+ */
+abstract class HashIndex<T extends PropertyContainer> implements Index<T>
+{
+    // Characters which make a string a query rather than a value
+    private static final String QUERY_SYNTAX = "\"*?~^()[]{}\\:";
+
+    final HashIndexImplementation service;
+    final String name;
+    final byte entityType;
+    final String tableName;
+    private volatile boolean deleted;
+
+    HashIndex( HashIndexImplementation service, String name, byte entityType )
+    {
+        this.service = service;
+        this.name = name;
+        this.entityType = entityType;
+        this.tableName = HashDataSource.tableName( entityType, name );
+    }
+
+    HashXaConnection getConnection()
+    {
+        assertNotDeleted();
+        if ( service.broker() == null )
+        {
+            throw new ReadOnlyDbException();
+        }
+        return service.broker().acquireResourceConnection();
+    }
+
+    private void assertNotDeleted()
+    {
+        if ( deleted )
+        {
+            throw new IllegalStateException( "This index (" + tableName + ") has been deleted" );
+        }
+    }
+
+    HashXaConnection getReadOnlyConnection()
+    {
+        assertNotDeleted();
+        return service.broker() == null ? null :
+                service.broker().acquireReadOnlyResourceConnection();
+    }
+
+    void markAsDeleted()
+    {
+        this.deleted = true;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void add( T entity, String key, Object value )
+    {
+        assertKeyNotNull( key );
+        HashXaConnection connection = getConnection();
+        for ( Object oneValue : IoPrimitiveUtils.asArray( value ) )
+        {
+            connection.add( this, getEntityId( entity ), key, valueString( oneValue ) );
+        }
+    }
+
+    public void remove( T entity, String key, Object value )
+    {
+        assertKeyNotNull( key );
+        HashXaConnection connection = getConnection();
+        for ( Object oneValue : IoPrimitiveUtils.asArray( value ) )
+        {
+            connection.remove( this, getEntityId( entity ), key, valueString( oneValue ) );
+        }
+    }
+
+    public void remove( T entity, String key )
+    {
+        assertKeyNotNull( key );
+        HashXaConnection connection = getConnection();
+        connection.remove( this, getEntityId( entity ), key );
+    }
+
+    public void remove( T entity )
+    {
+        getConnection().remove( this, getEntityId( entity ) );
+    }
+
+    public void delete()
+    {
+        getConnection().deleteIndex( this );
+    }
+
+    private static void assertKeyNotNull( String key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Key can't be null" );
+        }
+    }
+
+    private static String valueString( Object value )
+    {
+        if ( value instanceof ValueContext )
+        {
+            value = ((ValueContext) value).getValue();
+        }
+        return value.toString();
+    }
+
+    public IndexHits<T> get( String key, Object value )
+    {
+        return hits( ids( key, valueString( value ) ) );
+    }
+
+    IndexHits<T> hits( long[] ids )
+    {
+        return new EntityHits( new IdHits( ids ) );
+    }
+
+    public IndexIdHits getIds( String key, Object value )
+    {
+        return new IdHits( ids( key, valueString( value ) ) );
+    }
+
+    /**
+     * @return the ids for {@code key} and {@code value}, including the
+     * changes made in the current transaction, if any.
+     */
+    long[] ids( String key, String value )
+    {
+        HashXaConnection con = getReadOnlyConnection();
+        long[] committed = service.dataSource().get( tableName, key, value );
+        if ( con == null )
+        {
+            return committed;
+        }
+        return toArray( con.getHashTx().ids( this, key, value, committed ) );
+    }
+
+    /**
+     * @return the ids for {@code key} and any value, including the changes
+     * made in the current transaction, if any.
+     */
+    long[] ids( String key )
+    {
+        HashXaConnection con = getReadOnlyConnection();
+        HashTransaction tx = con != null ? con.getHashTx() : null;
+        Map<String, long[]> committed = service.dataSource().values( tableName, key );
+        Collection<String> values = new LinkedHashSet<String>( committed.keySet() );
+        if ( tx != null )
+        {
+            values.addAll( tx.addedValues( this, key ) );
+        }
+        Collection<Long> result = new LinkedHashSet<Long>();
+        for ( String value : values )
+        {
+            long[] ids = committed.get( value );
+            ids = ids != null ? ids : PostingsTable.NO_IDS;
+            if ( tx != null )
+            {
+                result.addAll( tx.ids( this, key, value, ids ) );
+            }
+            else
+            {
+                for ( long id : ids )
+                {
+                    result.add( id );
+                }
+            }
+        }
+        return toArray( result );
+    }
+
+    private static long[] toArray( Collection<Long> ids )
+    {
+        long[] result = new long[ids.size()];
+        int i = 0;
+        for ( Long id : ids )
+        {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Hash indexes only support exact lookups, so {@code queryOrQueryObject}
+     * has to be a value, looked up like {@link #get(String, Object)}. A
+     * string can be quoted, otherwise it can't have whitespace or query
+     * syntax in it.
+     *
+     * @throws IllegalArgumentException if it's any other kind of query.
+     */
+    public IndexHits<T> query( String key, Object queryOrQueryObject )
+    {
+        return hits( exactIds( key, queryOrQueryObject ) );
+    }
+
+    /**
+     * {@code queryOrQueryObject} has to be a {@code key:value} string, see
+     * {@link #query(String, Object)}.
+     */
+    public IndexHits<T> query( Object queryOrQueryObject )
+    {
+        return query( null, queryOrQueryObject );
+    }
+
+    public IndexIdHits queryIds( String key, Object queryOrQueryObject )
+    {
+        return new IdHits( exactIds( key, queryOrQueryObject ) );
+    }
+
+    public IndexIdHits queryIds( Object queryOrQueryObject )
+    {
+        return queryIds( null, queryOrQueryObject );
+    }
+
+    /**
+     * @return the ids matching {@code queryOrQueryObject}, an exact lookup
+     * of a value of {@code keyOrNull}, or of a {@code key:value} string.
+     */
+    long[] exactIds( String keyOrNull, Object queryOrQueryObject )
+    {
+        String key = keyOrNull;
+        Object value = queryOrQueryObject;
+        if ( key == null )
+        {
+            int separator = value instanceof String ? ((String) value).indexOf( ':' ) : -1;
+            if ( separator <= 0 )
+            {
+                throw notExact( queryOrQueryObject );
+            }
+            key = ((String) value).substring( 0, separator );
+            value = ((String) value).substring( separator + 1 );
+        }
+        if ( value == null || value instanceof QueryContext || value instanceof Query )
+        {
+            throw notExact( queryOrQueryObject );
+        }
+        if ( !( value instanceof String ) )
+        {
+            return ids( key, valueString( value ) );
+        }
+        String string = (String) value;
+        if ( string.length() > 1 && string.startsWith( "\"" ) && string.endsWith( "\"" ) )
+        {
+            return ids( key, string.substring( 1, string.length() - 1 ) );
+        }
+        for ( int i = 0; i < string.length(); i++ )
+        {
+            char c = string.charAt( i );
+            if ( Character.isWhitespace( c ) || QUERY_SYNTAX.indexOf( c ) != -1 )
+            {
+                throw notExact( queryOrQueryObject );
+            }
+        }
+        return ids( key, string );
+    }
+
+    private static IllegalArgumentException notExact( Object query )
+    {
+        return new IllegalArgumentException( "Hash indexes only support exact lookups, not '" + query + "'" );
+    }
+
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    protected abstract T getById( long id );
+
+    protected abstract long getEntityId( T entity );
+
+    private class EntityHits extends IdToEntityIterator<T>
+    {
+        EntityHits( IdHits ids )
+        {
+            super( new BoxedIdHits( ids ) );
+        }
+
+        @Override
+        protected T underlyingObjectToObject( Long id )
+        {
+            return getById( id );
+        }
+    }
+
+    private static class BoxedIdHits extends AbstractIndexHits<Long>
+    {
+        private final IdHits ids;
+
+        BoxedIdHits( IdHits ids )
+        {
+            this.ids = ids;
+        }
+
+        @Override
+        protected Long fetchNextOrNull()
+        {
+            return ids.hasNext() ? ids.next() : null;
+        }
+
+        public int size()
+        {
+            return ids.size();
+        }
+
+        public float currentScore()
+        {
+            return ids.currentScore();
+        }
+    }
+
+    static class IdHits implements IndexIdHits
+    {
+        private final long[] ids;
+        private int position;
+
+        IdHits( long[] ids )
+        {
+            this.ids = ids;
+        }
+
+        public boolean hasNext()
+        {
+            return position < ids.length;
+        }
+
+        public long next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            return ids[position++];
+        }
+
+        public int size()
+        {
+            return ids.length;
+        }
+
+        public void close()
+        {
+            position = ids.length;
+        }
+
+        public float currentScore()
+        {
+            return 0;
+        }
+    }
+
+    static class NodeIndex extends HashIndex<Node>
+    {
+        NodeIndex( HashIndexImplementation service, String name )
+        {
+            super( service, name, IndexCommand.NODE );
+        }
+
+        @Override
+        protected Node getById( long id )
+        {
+            return service.graphDb().getNodeById( id );
+        }
+
+        @Override
+        protected long getEntityId( Node entity )
+        {
+            return entity.getId();
+        }
+
+        public Class<Node> getEntityType()
+        {
+            return Node.class;
+        }
+    }
+
+    static class RelationshipIndex extends HashIndex<Relationship>
+            implements org.neo4j.graphdb.index.RelationshipIndex
+    {
+        RelationshipIndex( HashIndexImplementation service, String name )
+        {
+            super( service, name, IndexCommand.RELATIONSHIP );
+        }
+
+        @Override
+        protected Relationship getById( long id )
+        {
+            return service.graphDb().getRelationshipById( id );
+        }
+
+        @Override
+        protected long getEntityId( Relationship entity )
+        {
+            return entity.getId();
+        }
+
+        public IndexHits<Relationship> get( String key, Object valueOrNull, Node startNodeOrNull,
+                Node endNodeOrNull )
+        {
+            assertKeyNotNull( key );
+            return filter( valueOrNull != null ? ids( key, valueString( valueOrNull ) ) : ids( key ),
+                    startNodeOrNull, endNodeOrNull );
+        }
+
+        private IndexHits<Relationship> filter( long[] ids, Node startNodeOrNull, Node endNodeOrNull )
+        {
+            if ( startNodeOrNull != null || endNodeOrNull != null )
+            {
+                List<Long> matching = new ArrayList<Long>();
+                for ( long id : ids )
+                {
+                    Relationship relationship = getById( id );
+                    if ( ( startNodeOrNull == null || relationship.getStartNode().equals( startNodeOrNull ) ) &&
+                            ( endNodeOrNull == null || relationship.getEndNode().equals( endNodeOrNull ) ) )
+                    {
+                        matching.add( id );
+                    }
+                }
+                ids = toArray( matching );
+            }
+            return hits( ids );
+        }
+
+        /**
+         * Looks up {@code queryOrQueryObjectOrNull} like
+         * {@link HashIndex#query(String, Object)}, or any value of
+         * {@code key} if it's {@code null}, see
+         * {@link #get(String, Object, Node, Node)}.
+         */
+        public IndexHits<Relationship> query( String key, Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            if ( key != null && queryOrQueryObjectOrNull == null )
+            {
+                return get( key, null, startNodeOrNull, endNodeOrNull );
+            }
+            return filter( exactIds( key, queryOrQueryObjectOrNull ),
+                    startNodeOrNull, endNodeOrNull );
+        }
+
+        public IndexHits<Relationship> query( Object queryOrQueryObjectOrNull,
+                Node startNodeOrNull, Node endNodeOrNull )
+        {
+            return query( null, queryOrQueryObjectOrNull, startNodeOrNull, endNodeOrNull );
+        }
+
+        public Class<Relationship> getEntityType()
+        {
+            return Relationship.class;
+        }
+    }
+}
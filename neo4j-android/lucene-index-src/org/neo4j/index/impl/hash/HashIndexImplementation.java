@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexImplementation;
+import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.index.IndexCommand;
+import org.neo4j.kernel.impl.index.IndexConnectionBroker;
+import org.neo4j.kernel.impl.index.ReadOnlyIndexConnectionBroker;
+import org.neo4j.kernel.impl.transaction.TxModule;
+
+/**
+ * An {@link IndexImplementation} for exact lookups only, where each index
+ * is a hash table from key and value to the ids of the entities. Use it
+ * instead of a Lucene "exact" index for indexes which are never queried.
+ */
+public class HashIndexImplementation extends IndexImplementation
+{
+    public static final String SERVICE_NAME = "hash";
+
+    public static final Map<String, String> EXACT_CONFIG =
+            Collections.unmodifiableMap( MapUtil.stringMap( IndexManager.PROVIDER, SERVICE_NAME ) );
+
+    private final IndexConnectionBroker<HashXaConnection> broker;
+    private final HashDataSource dataSource;
+    private final GraphDatabaseService graphDb;
+
+    public HashIndexImplementation( GraphDatabaseService db, Config config )
+    {
+        this.graphDb = db;
+        TxModule txModule = config.getTxModule();
+        boolean isReadOnly = config.isReadOnly();
+        Map<Object, Object> params = new HashMap<Object, Object>( config.getParams() );
+        params.put( "read_only", isReadOnly );
+        dataSource = (HashDataSource) txModule.registerDataSource( HashDataSource.DEFAULT_NAME,
+                HashDataSource.class.getName(), HashDataSource.DEFAULT_BRANCH_ID, params, true );
+        broker = isReadOnly ? new ReadOnlyIndexConnectionBroker<HashXaConnection>( txModule.getTxManager() )
+                : new HashConnectionBroker( txModule.getTxManager(), dataSource );
+    }
+
+    IndexConnectionBroker<HashXaConnection> broker()
+    {
+        return this.broker;
+    }
+
+    HashDataSource dataSource()
+    {
+        return this.dataSource;
+    }
+
+    GraphDatabaseService graphDb()
+    {
+        return this.graphDb;
+    }
+
+    @Override
+    public Index<Node> nodeIndex( String indexName, Map<String, String> config )
+    {
+        String tableName = HashDataSource.tableName( IndexCommand.NODE, indexName );
+        synchronized ( dataSource.indexes )
+        {
+            HashIndex<?> index = dataSource.indexes.get( tableName );
+            if ( index == null )
+            {
+                index = new HashIndex.NodeIndex( this, indexName );
+                dataSource.indexes.put( tableName, index );
+            }
+            return (HashIndex.NodeIndex) index;
+        }
+    }
+
+    @Override
+    public RelationshipIndex relationshipIndex( String indexName, Map<String, String> config )
+    {
+        String tableName = HashDataSource.tableName( IndexCommand.RELATIONSHIP, indexName );
+        synchronized ( dataSource.indexes )
+        {
+            HashIndex<?> index = dataSource.indexes.get( tableName );
+            if ( index == null )
+            {
+                index = new HashIndex.RelationshipIndex( this, indexName );
+                dataSource.indexes.put( tableName, index );
+            }
+            return (HashIndex.RelationshipIndex) index;
+        }
+    }
+
+    @Override
+    public Map<String, String> fillInDefaults( Map<String, String> source )
+    {
+        return source != null ? new HashMap<String, String>( source ) : new HashMap<String, String>();
+    }
+
+    @Override
+    public boolean configMatches( Map<String, String> storedConfig, Map<String, String> config )
+    {
+        return true;
+    }
+
+    @Override
+    public String getDataSourceName()
+    {
+        return HashDataSource.DEFAULT_NAME;
+    }
+}
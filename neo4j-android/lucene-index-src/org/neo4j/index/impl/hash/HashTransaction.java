@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.kernel.impl.index.IndexCommand;
+import org.neo4j.kernel.impl.index.IndexCommand.AddCommand;
+import org.neo4j.kernel.impl.index.IndexCommand.CreateCommand;
+import org.neo4j.kernel.impl.index.IndexCommand.DeleteCommand;
+import org.neo4j.kernel.impl.index.IndexCommand.RemoveCommand;
+import org.neo4j.kernel.impl.index.IndexDefineCommand;
+import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
+import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
+
+/**
+ * Keeps the changes a transaction makes to hash indexes, both as state
+ * which lookups within the transaction see and as {@link IndexCommand}s
+ * which are written to the logical log and applied at commit.
+ */
+class HashTransaction extends XaTransaction
+{
+    private final HashDataSource dataSource;
+    private IndexDefineCommand definitions = new IndexDefineCommand();
+    private final List<IndexCommand> commands = new ArrayList<IndexCommand>();
+    private final Map<String, TxState> states = new HashMap<String, TxState>();
+
+    HashTransaction( int identifier, XaLogicalLog xaLog, HashDataSource dataSource )
+    {
+        super( identifier, xaLog );
+        this.dataSource = dataSource;
+    }
+
+    private TxState state( HashIndex<?> index )
+    {
+        TxState state = states.get( index.tableName );
+        if ( state == null )
+        {
+            state = new TxState();
+            states.put( index.tableName, state );
+        }
+        return state;
+    }
+
+    void add( HashIndex<?> index, long entityId, String key, String value )
+    {
+        TxState state = state( index );
+        idsOf( state.added, key, value, true ).add( entityId );
+        Set<Long> removed = idsOf( state.removed, key, value, false );
+        if ( removed != null )
+        {
+            removed.remove( entityId );
+        }
+        commands.add( definitions.add( index.getName(), index.getEntityType(), entityId, key, value ) );
+    }
+
+    void remove( HashIndex<?> index, long entityId, String key, String value )
+    {
+        TxState state = state( index );
+        idsOf( state.removed, key, value, true ).add( entityId );
+        Set<Long> added = idsOf( state.added, key, value, false );
+        if ( added != null )
+        {
+            added.remove( entityId );
+        }
+        commands.add( definitions.remove( index.getName(), index.getEntityType(), entityId, key, value ) );
+    }
+
+    void remove( HashIndex<?> index, long entityId, String key )
+    {
+        TxState state = state( index );
+        Set<Long> removed = state.removedFromKey.get( key );
+        if ( removed == null )
+        {
+            removed = new HashSet<Long>();
+            state.removedFromKey.put( key, removed );
+        }
+        removed.add( entityId );
+        removeAdded( state.added.get( key ), entityId );
+        commands.add( definitions.remove( index.getName(), index.getEntityType(), entityId, key, null ) );
+    }
+
+    void remove( HashIndex<?> index, long entityId )
+    {
+        TxState state = state( index );
+        state.removedEntities.add( entityId );
+        for ( Map<String, Set<Long>> values : state.added.values() )
+        {
+            removeAdded( values, entityId );
+        }
+        commands.add( definitions.remove( index.getName(), index.getEntityType(), entityId, null, null ) );
+    }
+
+    void delete( HashIndex<?> index )
+    {
+        TxState state = new TxState();
+        state.deleted = true;
+        states.put( index.tableName, state );
+        commands.add( definitions.delete( index.getName(), index.getEntityType() ) );
+    }
+
+    void createIndex( Class<? extends PropertyContainer> entityType, String name,
+            Map<String, String> config )
+    {
+        commands.add( definitions.create( name, entityType, config ) );
+    }
+
+    private static void removeAdded( Map<String, Set<Long>> values, long entityId )
+    {
+        if ( values != null )
+        {
+            for ( Set<Long> ids : values.values() )
+            {
+                ids.remove( entityId );
+            }
+        }
+    }
+
+    private static Set<Long> idsOf( Map<String, Map<String, Set<Long>>> keys, String key,
+            String value, boolean create )
+    {
+        Map<String, Set<Long>> values = keys.get( key );
+        if ( values == null )
+        {
+            if ( !create )
+            {
+                return null;
+            }
+            values = new HashMap<String, Set<Long>>();
+            keys.put( key, values );
+        }
+        Set<Long> ids = values.get( value );
+        if ( ids == null && create )
+        {
+            ids = new HashSet<Long>();
+            values.put( value, ids );
+        }
+        return ids;
+    }
+
+    /**
+     * @return {@code committed}, the committed ids for {@code key} and
+     * {@code value}, as seen from within this transaction.
+     */
+    Collection<Long> ids( HashIndex<?> index, String key, String value, long[] committed )
+    {
+        Collection<Long> result = new LinkedHashSet<Long>();
+        TxState state = states.get( index.tableName );
+        if ( state == null )
+        {
+            for ( long id : committed )
+            {
+                result.add( id );
+            }
+            return result;
+        }
+        if ( !state.deleted )
+        {
+            Set<Long> removed = idsOf( state.removed, key, value, false );
+            Set<Long> removedFromKey = state.removedFromKey.get( key );
+            for ( long id : committed )
+            {
+                Long boxedId = id;
+                if ( ( removed == null || !removed.contains( boxedId ) ) &&
+                        ( removedFromKey == null || !removedFromKey.contains( boxedId ) ) &&
+                        !state.removedEntities.contains( boxedId ) )
+                {
+                    result.add( boxedId );
+                }
+            }
+        }
+        Set<Long> added = idsOf( state.added, key, value, false );
+        if ( added != null )
+        {
+            result.addAll( added );
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of {@code key} added in this transaction.
+     */
+    Collection<String> addedValues( HashIndex<?> index, String key )
+    {
+        TxState state = states.get( index.tableName );
+        Map<String, Set<Long>> values = state != null ? state.added.get( key ) : null;
+        return values != null ? values.keySet() : new HashSet<String>();
+    }
+
+    @Override
+    protected void doAddCommand( XaCommand command )
+    { // we override inject command and manage our own in memory command list
+    }
+
+    @Override
+    protected void injectCommand( XaCommand command )
+    {
+        if ( command instanceof IndexDefineCommand )
+        {
+            definitions = (IndexDefineCommand) command;
+        }
+        else
+        {
+            commands.add( (IndexCommand) command );
+        }
+    }
+
+    @Override
+    protected void doPrepare()
+    {
+        addCommand( definitions );
+        for ( IndexCommand command : commands )
+        {
+            addCommand( command );
+        }
+    }
+
+    @Override
+    protected void doCommit()
+    {
+        synchronized ( dataSource )
+        {
+            for ( IndexCommand command : commands )
+            {
+                String indexName = definitions.getIndexName( command.getIndexNameId() );
+                byte entityType = command.getEntityType();
+                if ( command instanceof CreateCommand )
+                {
+                    dataSource.indexStore.setIfNecessary( IndexDefineCommand.entityType( entityType ),
+                            indexName, ((CreateCommand) command).getConfig() );
+                    continue;
+                }
+                if ( command instanceof DeleteCommand )
+                {
+                    dataSource.deleteIndex( entityType, indexName, isRecovered() );
+                    continue;
+                }
+
+                PostingsTable table = dataSource.table( HashDataSource.tableName( entityType, indexName ) );
+                String key = command.getKeyId() != 0 ? definitions.getKey( command.getKeyId() ) : null;
+                String value = command.getValue() != null ? command.getValue().toString() : null;
+                long entityId = command.getEntityId();
+                if ( command instanceof AddCommand )
+                {
+                    table.add( key, value, entityId );
+                }
+                else if ( command instanceof RemoveCommand )
+                {
+                    if ( value != null )
+                    {
+                        table.remove( key, value, entityId );
+                    }
+                    else if ( key != null )
+                    {
+                        table.remove( key, entityId );
+                    }
+                    else
+                    {
+                        table.remove( entityId );
+                    }
+                }
+            }
+            dataSource.setLastCommittedTxId( getCommitTxId() );
+        }
+        clear();
+    }
+
+    @Override
+    protected void doRollback()
+    {
+        clear();
+    }
+
+    private void clear()
+    {
+        commands.clear();
+        states.clear();
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return commands.isEmpty();
+    }
+
+    private static class TxState
+    {
+        private final Map<String, Map<String, Set<Long>>> added =
+                new HashMap<String, Map<String, Set<Long>>>();
+        private final Map<String, Map<String, Set<Long>>> removed =
+                new HashMap<String, Map<String, Set<Long>>>();
+        private final Map<String, Set<Long>> removedFromKey = new HashMap<String, Set<Long>>();
+        private final Set<Long> removedEntities = new HashSet<Long>();
+        private boolean deleted;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.util.Map;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.kernel.impl.index.IndexXaConnection;
+import org.neo4j.kernel.impl.transaction.xaframework.XaResourceHelpImpl;
+import org.neo4j.kernel.impl.transaction.xaframework.XaResourceManager;
+
+/**
+ * An XA connection used with {@link HashDataSource}.
+ */
+class HashXaConnection extends IndexXaConnection
+{
+    private final HashXaResource xaResource;
+    private HashTransaction hashTx;
+
+    HashXaConnection( Object identifier, XaResourceManager xaRm, byte[] branchId )
+    {
+        super( xaRm );
+        xaResource = new HashXaResource( identifier, xaRm, branchId );
+    }
+
+    @Override
+    public XAResource getXaResource()
+    {
+        return xaResource;
+    }
+
+    private static class HashXaResource extends XaResourceHelpImpl
+    {
+        private final Object identifier;
+
+        HashXaResource( Object identifier, XaResourceManager xaRm, byte[] branchId )
+        {
+            super( xaRm, branchId );
+            this.identifier = identifier;
+        }
+
+        @Override
+        public boolean isSameRM( XAResource xares )
+        {
+            if ( xares instanceof HashXaResource )
+            {
+                return identifier.equals( ((HashXaResource) xares).identifier );
+            }
+            return false;
+        }
+    }
+
+    HashTransaction getHashTx()
+    {
+        if ( hashTx == null )
+        {
+            try
+            {
+                hashTx = (HashTransaction) getTransaction();
+            }
+            catch ( XAException e )
+            {
+                throw new RuntimeException( "Unable to get hash index tx", e );
+            }
+        }
+        return hashTx;
+    }
+
+    void add( HashIndex<?> index, long entityId, String key, String value )
+    {
+        getHashTx().add( index, entityId, key, value );
+    }
+
+    void remove( HashIndex<?> index, long entityId, String key, String value )
+    {
+        getHashTx().remove( index, entityId, key, value );
+    }
+
+    void remove( HashIndex<?> index, long entityId, String key )
+    {
+        getHashTx().remove( index, entityId, key );
+    }
+
+    void remove( HashIndex<?> index, long entityId )
+    {
+        getHashTx().remove( index, entityId );
+    }
+
+    void deleteIndex( HashIndex<?> index )
+    {
+        getHashTx().delete( index );
+    }
+
+    @Override
+    public void createIndex( Class<? extends PropertyContainer> entityType,
+            String name, Map<String, String> config )
+    {
+        getHashTx().createIndex( entityType, name, config );
+    }
+}
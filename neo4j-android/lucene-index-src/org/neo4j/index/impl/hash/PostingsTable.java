@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.hash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.helpers.UTF8;
+
+/**
+ * The committed contents of a hash index: for each key and value the sorted
+ * ids of the entities having it. Lookups are two hash lookups and only lock
+ * the ids of one value, and only the first time they're read after a change,
+ * to publish a copy of them. Changes are applied by one committing
+ * transaction at a time and written to disk by {@link #flush()}, the logical
+ * log covers what's committed in between.
+ */
+class PostingsTable
+{
+    static final long[] NO_IDS = new long[0];
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final Map<String, Map<String, Postings>> keys =
+            new ConcurrentHashMap<String, Map<String, Postings>>();
+    // The postings each entity is in, only used by the committing thread
+    private final Map<Long, List<Postings>> entities = new HashMap<Long, List<Postings>>();
+    private volatile boolean dirty;
+
+    private PostingsTable( File file )
+    {
+        this.file = file;
+    }
+
+    static PostingsTable open( File file ) throws IOException
+    {
+        PostingsTable table = new PostingsTable( file );
+        if ( file.exists() )
+        {
+            table.read();
+        }
+        return table;
+    }
+
+    long[] get( String key, String value )
+    {
+        Map<String, Postings> values = keys.get( key );
+        Postings postings = values != null ? values.get( value ) : null;
+        return postings != null ? postings.ids() : NO_IDS;
+    }
+
+    /**
+     * @return all values of {@code key} and their ids.
+     */
+    Map<String, long[]> values( String key )
+    {
+        Map<String, Postings> values = keys.get( key );
+        if ( values == null )
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, long[]> result = new HashMap<String, long[]>();
+        for ( Postings postings : values.values() )
+        {
+            long[] ids = postings.ids();
+            if ( ids.length > 0 )
+            {
+                result.put( postings.value, ids );
+            }
+        }
+        return result;
+    }
+
+    synchronized void add( String key, String value, long id )
+    {
+        Map<String, Postings> values = keys.get( key );
+        if ( values == null )
+        {
+            values = new ConcurrentHashMap<String, Postings>();
+            keys.put( key, values );
+        }
+        Postings postings = values.get( value );
+        if ( postings == null )
+        {
+            postings = new Postings( key, value );
+            values.put( value, postings );
+        }
+        if ( postings.add( id ) )
+        {
+            postingsOf( id, true ).add( postings );
+            dirty = true;
+        }
+    }
+
+    synchronized void remove( String key, String value, long id )
+    {
+        List<Postings> ofEntity = postingsOf( id, false );
+        if ( ofEntity == null )
+        {
+            return;
+        }
+        for ( int i = 0; i < ofEntity.size(); i++ )
+        {
+            Postings postings = ofEntity.get( i );
+            if ( postings.key.equals( key ) && postings.value.equals( value ) )
+            {
+                remove( postings, id );
+                ofEntity.remove( i );
+                break;
+            }
+        }
+        if ( ofEntity.isEmpty() )
+        {
+            entities.remove( id );
+        }
+    }
+
+    /**
+     * Removes {@code id} from all values of {@code key}.
+     */
+    synchronized void remove( String key, long id )
+    {
+        List<Postings> ofEntity = postingsOf( id, false );
+        if ( ofEntity == null )
+        {
+            return;
+        }
+        for ( Iterator<Postings> iterator = ofEntity.iterator(); iterator.hasNext(); )
+        {
+            Postings postings = iterator.next();
+            if ( postings.key.equals( key ) )
+            {
+                remove( postings, id );
+                iterator.remove();
+            }
+        }
+        if ( ofEntity.isEmpty() )
+        {
+            entities.remove( id );
+        }
+    }
+
+    /**
+     * Removes {@code id} from all keys and values.
+     */
+    synchronized void remove( long id )
+    {
+        List<Postings> ofEntity = entities.remove( id );
+        if ( ofEntity != null )
+        {
+            for ( Postings postings : ofEntity )
+            {
+                remove( postings, id );
+            }
+        }
+    }
+
+    private List<Postings> postingsOf( long id, boolean create )
+    {
+        List<Postings> ofEntity = entities.get( id );
+        if ( ofEntity == null && create )
+        {
+            ofEntity = new ArrayList<Postings>( 2 );
+            entities.put( id, ofEntity );
+        }
+        return ofEntity;
+    }
+
+    private void remove( Postings postings, long id )
+    {
+        if ( !postings.remove( id ) )
+        {
+            return;
+        }
+        if ( postings.isEmpty() )
+        {
+            Map<String, Postings> values = keys.get( postings.key );
+            values.remove( postings.value );
+            if ( values.isEmpty() )
+            {
+                keys.remove( postings.key );
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Writes the table to a temporary file which then replaces the
+     * previous one, if anything has changed since the last flush.
+     */
+    synchronized void flush() throws IOException
+    {
+        if ( !dirty )
+        {
+            return;
+        }
+        dirty = false;
+        File parent = file.getParentFile();
+        if ( !parent.exists() && !parent.mkdirs() )
+        {
+            throw new IOException( "Unable to create directory " + parent );
+        }
+        File temporary = new File( file.getPath() + ".tmp" );
+        FileOutputStream fileOut = new FileOutputStream( temporary );
+        try
+        {
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fileOut ) );
+            out.writeInt( FORMAT_VERSION );
+            out.writeInt( keys.size() );
+            for ( Map.Entry<String, Map<String, Postings>> key : keys.entrySet() )
+            {
+                writeString( out, key.getKey() );
+                out.writeInt( key.getValue().size() );
+                for ( Postings postings : key.getValue().values() )
+                {
+                    writeString( out, postings.value );
+                    long[] ids = postings.ids();
+                    out.writeInt( ids.length );
+                    for ( long id : ids )
+                    {
+                        out.writeLong( id );
+                    }
+                }
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        finally
+        {
+            fileOut.close();
+        }
+        if ( !temporary.renameTo( file ) )
+        {
+            // Some platforms won't rename over an existing file
+            file.delete();
+            if ( !temporary.renameTo( file ) )
+            {
+                throw new IOException( "Unable to rename " + temporary + " to " + file );
+            }
+        }
+    }
+
+    private void read() throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            int version = in.readInt();
+            if ( version != FORMAT_VERSION )
+            {
+                throw new IOException( "Unknown format version " + version + " of " + file );
+            }
+            for ( int keyCount = in.readInt(); keyCount > 0; keyCount-- )
+            {
+                String key = readString( in );
+                Map<String, Postings> values = new ConcurrentHashMap<String, Postings>();
+                for ( int valueCount = in.readInt(); valueCount > 0; valueCount-- )
+                {
+                    Postings postings = new Postings( key, readString( in ) );
+                    long[] ids = new long[in.readInt()];
+                    for ( int i = 0; i < ids.length; i++ )
+                    {
+                        ids[i] = in.readLong();
+                        postingsOf( ids[i], true ).add( postings );
+                    }
+                    postings.set( ids );
+                    values.put( postings.value, postings );
+                }
+                keys.put( key, values );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    synchronized void delete()
+    {
+        keys.clear();
+        entities.clear();
+        dirty = false;
+        file.delete();
+    }
+
+    private static void writeString( DataOutputStream out, String string ) throws IOException
+    {
+        byte[] bytes = UTF8.encode( string );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString( DataInputStream in ) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+        return UTF8.decode( bytes );
+    }
+
+    /**
+     * The sorted ids of the entities having one value of one key, in a
+     * buffer which grows as ids are added. Readers get a copy, which is
+     * made once after each change.
+     */
+    private static class Postings
+    {
+        final String key;
+        final String value;
+        private long[] buffer = NO_IDS;
+        private int size;
+        private volatile long[] published = NO_IDS;
+
+        Postings( String key, String value )
+        {
+            this.key = key;
+            this.value = value;
+        }
+
+        long[] ids()
+        {
+            long[] ids = published;
+            if ( ids == null )
+            {
+                synchronized ( this )
+                {
+                    ids = published;
+                    if ( ids == null )
+                    {
+                        ids = Arrays.copyOf( buffer, size );
+                        published = ids;
+                    }
+                }
+            }
+            return ids;
+        }
+
+        synchronized void set( long[] ids )
+        {
+            buffer = ids;
+            size = ids.length;
+            published = null;
+        }
+
+        /**
+         * @return whether or not {@code id} wasn't there already.
+         */
+        synchronized boolean add( long id )
+        {
+            // Ids mostly come in increasing order, so check the end first
+            int index = size == 0 || buffer[size - 1] < id ? -size - 1 :
+                    Arrays.binarySearch( buffer, 0, size, id );
+            if ( index >= 0 )
+            {
+                return false;
+            }
+            index = -index - 1;
+            if ( size == buffer.length )
+            {
+                buffer = Arrays.copyOf( buffer, Math.max( 4, size << 1 ) );
+            }
+            System.arraycopy( buffer, index, buffer, index + 1, size - index );
+            buffer[index] = id;
+            size++;
+            published = null;
+            return true;
+        }
+
+        /**
+         * @return whether or not {@code id} was there.
+         */
+        synchronized boolean remove( long id )
+        {
+            int index = Arrays.binarySearch( buffer, 0, size, id );
+            if ( index < 0 )
+            {
+                return false;
+            }
+            System.arraycopy( buffer, index + 1, buffer, index, size - index - 1 );
+            size--;
+            published = null;
+            return true;
+        }
+
+        synchronized boolean isEmpty()
+        {
+            return size == 0;
+        }
+    }
+}
@@ -19,51 +19,354 @@
  */
 package org.neo4j.index.impl.lucene;
 
-import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
-import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 
+/**
+ * Caches the ids matching exact lookups, i.e. {@link LuceneIndex#get(String, Object)},
+ * for the keys which caching has been enabled for with
+ * {@link LuceneIndex#setCacheCapacity(String, int)}. The ids are kept as
+ * {@code long[]}s and all indexes share one budget of bytes, set with
+ * {@link Config#LUCENE_CACHE_SIZE}. When it's exceeded the least recently
+ * used values are evicted, from whichever index and key they belong to.
+ * Each key is additionally limited to the number of values it was enabled
+ * with.
+ */
 public class Cache
 {
-    private final Map<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>> caching = 
-            Collections.synchronizedMap( 
-                    new HashMap<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>>() );
-    
-    public void setCapacity( IndexIdentifier identifier, String key, int size )
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // Rough heap cost of an entry, apart from its ids and value
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final Map<IndexIdentifier, Map<String,KeyCache>> caching =
+            new HashMap<IndexIdentifier, Map<String,KeyCache>>();
+    private long bytesHeld;
+    private long clock;
+    private long evictionCount;
+
+    public Cache()
+    {
+        this( DEFAULT_MAX_BYTES );
+    }
+
+    public Cache( long maxBytes )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        if ( maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( "Illegal size " + maxBytes );
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the size configured with {@link Config#LUCENE_CACHE_SIZE} in
+     * bytes, or {@link #DEFAULT_MAX_BYTES} if not configured.
+     */
+    public static long configuredSize( Map<?,?> config )
+    {
+        Object size = config != null ? config.get( Config.LUCENE_CACHE_SIZE ) : null;
+        if ( size == null )
+        {
+            return DEFAULT_MAX_BYTES;
+        }
+        long bytes = CommonAbstractStore.parseMemorySize( size.toString(), Config.LUCENE_CACHE_SIZE );
+        return bytes > 0 ? bytes : DEFAULT_MAX_BYTES;
+    }
+
+    private static class CachedIds
+    {
+        final long[] ids;
+        final int bytes;
+        long lastUsed;
+
+        CachedIds( String value, long[] ids )
+        {
+            this.ids = ids;
+            this.bytes = ENTRY_OVERHEAD + value.length() * 2 + ids.length * 8;
+        }
+    }
+
+    private static class KeyCache
+    {
+        final IndexIdentifier identifier;
+        final String key;
+        int capacity;
+        final LinkedHashMap<String,CachedIds> values =
+                new LinkedHashMap<String,CachedIds>( 16, 0.75f, true );
+        long bytes;
+        long hitCount;
+        long missCount;
+
+        KeyCache( IndexIdentifier identifier, String key, int capacity )
+        {
+            this.identifier = identifier;
+            this.key = key;
+            this.capacity = capacity;
+        }
+
+        CachedIds eldest()
+        {
+            Iterator<CachedIds> iterator = values.values().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        float hitRatio()
+        {
+            long total = hitCount + missCount;
+            return total == 0 ? 0f : (float) hitCount / total;
+        }
+    }
+
+    public synchronized void setCapacity( IndexIdentifier identifier, String key, int size )
+    {
+        Map<String, KeyCache> map = caching.get( identifier );
         if ( map == null )
         {
-            map = new HashMap<String, LruCache<String,Collection<Long>>>();
+            map = new HashMap<String, KeyCache>();
             caching.put( identifier, map );
         }
-        map.put( key, new LruCache<String, Collection<Long>>( key, size, null ) );
+        KeyCache cache = map.get( key );
+        if ( cache == null )
+        {
+            map.put( key, new KeyCache( identifier, key, size ) );
+        }
+        else
+        {
+            cache.capacity = size;
+            while ( cache.values.size() > size )
+            {
+                evictEldest( cache );
+            }
+        }
+    }
+
+    public synchronized Integer getCapacity( IndexIdentifier identifier, String key )
+    {
+        KeyCache cache = keyCache( identifier, key );
+        return cache != null ? cache.capacity : null;
     }
-    
-    public LruCache<String, Collection<Long>> get( IndexIdentifier identifier, String key )
+
+    public synchronized boolean isEnabled( IndexIdentifier identifier, String key )
+    {
+        return keyCache( identifier, key ) != null;
+    }
+
+    private KeyCache keyCache( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, KeyCache> map = caching.get( identifier );
         return map != null ? map.get( key ) : null;
     }
-    
-    public void disable( IndexIdentifier identifier, String key )
+
+    /**
+     * @return the ids cached for {@code value} or {@code null} if they aren't
+     * cached, or caching isn't enabled for {@code key}.
+     */
+    public synchronized long[] get( IndexIdentifier identifier, String key, String value )
+    {
+        KeyCache cache = keyCache( identifier, key );
+        if ( cache == null )
+        {
+            return null;
+        }
+        CachedIds cached = cache.values.get( value );
+        if ( cached == null )
+        {
+            cache.missCount++;
+            return null;
+        }
+        cache.hitCount++;
+        cached.lastUsed = ++clock;
+        return cached.ids;
+    }
+
+    public synchronized void put( IndexIdentifier identifier, String key, String value, long[] ids )
+    {
+        KeyCache cache = keyCache( identifier, key );
+        if ( cache == null || cache.capacity <= 0 )
+        {
+            return;
+        }
+        CachedIds cached = new CachedIds( value, ids );
+        if ( cached.bytes > maxBytes )
+        {
+            return;
+        }
+        CachedIds previous = cache.values.remove( value );
+        if ( previous != null )
+        {
+            removed( cache, previous );
+        }
+        while ( cache.values.size() >= cache.capacity )
+        {
+            evictEldest( cache );
+        }
+        while ( bytesHeld + cached.bytes > maxBytes )
+        {
+            evictLeastRecentlyUsed();
+        }
+        cached.lastUsed = ++clock;
+        cache.values.put( value, cached );
+        cache.bytes += cached.bytes;
+        bytesHeld += cached.bytes;
+    }
+
+    private void evictEldest( KeyCache cache )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Iterator<CachedIds> iterator = cache.values.values().iterator();
+        CachedIds eldest = iterator.next();
+        iterator.remove();
+        removed( cache, eldest );
+        evictionCount++;
+    }
+
+    /**
+     * The least recently used value of each key is the eldest one in its
+     * access ordered map, so the overall least recently used one is found by
+     * looking at the eldest value of each key which caching is enabled for.
+     */
+    private void evictLeastRecentlyUsed()
+    {
+        KeyCache victim = null;
+        long oldest = Long.MAX_VALUE;
+        for ( Map<String, KeyCache> map : caching.values() )
+        {
+            for ( KeyCache cache : map.values() )
+            {
+                CachedIds eldest = cache.eldest();
+                if ( eldest != null && eldest.lastUsed < oldest )
+                {
+                    oldest = eldest.lastUsed;
+                    victim = cache;
+                }
+            }
+        }
+        evictEldest( victim );
+    }
+
+    private void removed( KeyCache cache, CachedIds cached )
+    {
+        cache.bytes -= cached.bytes;
+        bytesHeld -= cached.bytes;
+    }
+
+    /**
+     * Removes cached ids for {@code value}, or for all values of {@code key}
+     * if {@code value} is {@code null}, or for all keys of the index if
+     * {@code key} is {@code null}. Caching stays enabled.
+     */
+    public synchronized void invalidate( IndexIdentifier identifier, String key, Object value )
+    {
+        Map<String, KeyCache> map = caching.get( identifier );
+        if ( map == null )
+        {
+            return;
+        }
+        if ( key == null )
+        {
+            for ( KeyCache cache : map.values() )
+            {
+                clear( cache );
+            }
+            return;
+        }
+        KeyCache cache = map.get( key );
+        if ( cache == null )
+        {
+            return;
+        }
+        if ( value == null )
+        {
+            clear( cache );
+        }
+        else
+        {
+            CachedIds cached = cache.values.remove( value.toString() );
+            if ( cached != null )
+            {
+                removed( cache, cached );
+            }
+        }
+    }
+
+    private void clear( KeyCache cache )
+    {
+        bytesHeld -= cache.bytes;
+        cache.bytes = 0;
+        cache.values.clear();
+    }
+
+    public synchronized void disable( IndexIdentifier identifier, String key )
+    {
+        Map<String, KeyCache> map = caching.get( identifier );
         if ( map != null )
         {
-            map.remove( key );
+            KeyCache cache = map.remove( key );
+            if ( cache != null )
+            {
+                clear( cache );
+            }
         }
     }
-    
-    public void disable( IndexIdentifier identifier )
+
+    public synchronized void disable( IndexIdentifier identifier )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, KeyCache> map = caching.remove( identifier );
         if ( map != null )
         {
-            map.clear();
+            for ( KeyCache cache : map.values() )
+            {
+                clear( cache );
+            }
+        }
+    }
+
+    /**
+     * @return the ratio of lookups for {@code key} which were answered from
+     * the cache, or {@code null} if caching isn't enabled for it.
+     */
+    public synchronized Float getHitRatio( IndexIdentifier identifier, String key )
+    {
+        KeyCache cache = keyCache( identifier, key );
+        return cache != null ? cache.hitRatio() : null;
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public synchronized long getBytesHeld()
+    {
+        return bytesHeld;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder result = new StringBuilder( "Cache[" + bytesHeld + "/" + maxBytes +
+                " bytes, evictions=" + evictionCount );
+        for ( Map<String, KeyCache> map : caching.values() )
+        {
+            for ( KeyCache cache : map.values() )
+            {
+                result.append( ", " ).append( cache.identifier ).append( "/" ).append( cache.key )
+                        .append( ": values=" ).append( cache.values.size() )
+                        .append( ", bytes=" ).append( cache.bytes )
+                        .append( ", hit ratio=" ).append( cache.hitRatio() );
+            }
         }
+        return result.append( "]" ).toString();
     }
 }
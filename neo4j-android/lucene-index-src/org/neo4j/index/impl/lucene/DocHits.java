@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * Hits from a lucene search. They can either be iterated as
+ * {@link Document}s or, without loading any documents, as document numbers
+ * using {@link #nextDoc()}, but not both.
+ */
+abstract class DocHits extends AbstractIndexHits<Document>
+{
+    static final int NO_MORE_DOCS = -1;
+
+    /**
+     * @return the document number of the next hit, or {@link #NO_MORE_DOCS}
+     * if there are no more hits.
+     */
+    abstract int nextDoc();
+}
@@ -21,18 +21,18 @@ package org.neo4j.index.impl.lucene;
 
 import java.util.Collection;
 
-import org.apache.lucene.document.Document;
-import org.neo4j.graphdb.index.IndexHits;
-
 class DocToIdIterator extends AbstractIndexHits<Long>
 {
     private final Collection<Long> exclude;
     private IndexSearcherRef searcherOrNull;
-    private final IndexHits<Document> source;
+    private final DocHits source;
+    private final IdFieldCache ids;
     
-    DocToIdIterator( IndexHits<Document> source, Collection<Long> exclude, IndexSearcherRef searcherOrNull )
+    DocToIdIterator( DocHits source, IdFieldCache ids, Collection<Long> exclude,
+            IndexSearcherRef searcherOrNull )
     {
         this.source = source;
+        this.ids = ids;
         this.exclude = exclude;
         this.searcherOrNull = searcherOrNull;
         if ( source.size() == 0 )
@@ -47,13 +47,13 @@ class DocToIdIterator extends AbstractIndexHits<Long>
         Long result = null;
         while ( result == null )
         {
-            if ( !source.hasNext() )
+            int doc = source.nextDoc();
+            if ( doc == DocHits.NO_MORE_DOCS )
             {
                 endReached();
                 break;
             }
-            Document doc = source.next();
-            Long id = Long.valueOf( doc.get( LuceneIndex.KEY_DOC_ID ) );
+            Long id = ids.idOf( doc );
             if ( !exclude.contains( id ) )
             {
                 result = id;
@@ -64,6 +64,8 @@ class FullTxData extends TxData
     private IndexReader reader;
     private IndexSearcher searcher;
     private final Map<Long, Document> cachedDocuments = new HashMap<Long, Document>();
+    private final Set<Long> changedDocuments = new HashSet<Long>();
+    private final Set<Long> documentsInWriter = new HashSet<Long>();
     private Set<String> orphans;
 
     FullTxData( LuceneIndex index )
@@ -71,53 +73,40 @@ class FullTxData extends TxData
         super( index );
     }
 
+    /**
+     * Changes are only made to the cached documents here. They're written
+     * to the in-memory lucene index when it's about to be searched, see
+     * {@link #writeChangedDocuments()}, so that adding many entries in a
+     * transaction doesn't mean updating the lucene index for every one.
+     */
     @Override
     void add( TxDataHolder holder, Object entityId, String key, Object value )
     {
-        try
+        long id = entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
+        Document document = findDocument( id );
+        if ( document == null )
         {
-            ensureLuceneDataInstantiated();
-            long id = entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
-            Document document = findDocument( id );
-            boolean add = false;
-            if ( document == null )
-            {
-                document = index.getIdentifier().entityType.newDocument( entityId );
-                cachedDocuments.put( id, document );
-                add = true;
-            }
-            
-            if ( key == null && value == null )
-            {
-                // Set a special "always hit" flag
-                document.add( new Field( ORPHANS_KEY, ORPHANS_VALUE, Store.NO, Index.NOT_ANALYZED ) );
-                addOrphan( null );
-            }
-            else if ( value == null )
-            {
-                // Set a special "always hit" flag
-                document.add( new Field( ORPHANS_KEY, key, Store.NO, Index.NOT_ANALYZED ) );
-                addOrphan( key );
-            }
-            else
-            {
-                index.type.addToDocument( document, key, value );
-            }
-            
-            if ( add )
-            {
-                writer.addDocument( document );
-            }
-            else
-            {
-                writer.updateDocument( index.type.idTerm( id ), document );
-            }
-            invalidateSearcher();
+            document = index.getIdentifier().entityType.newDocument( entityId );
+            cachedDocuments.put( id, document );
         }
-        catch ( IOException e )
+
+        if ( key == null && value == null )
         {
-            throw new RuntimeException( e );
+            // Set a special "always hit" flag
+            document.add( new Field( ORPHANS_KEY, ORPHANS_VALUE, Store.NO, Index.NOT_ANALYZED ) );
+            addOrphan( null );
+        }
+        else if ( value == null )
+        {
+            // Set a special "always hit" flag
+            document.add( new Field( ORPHANS_KEY, key, Store.NO, Index.NOT_ANALYZED ) );
+            addOrphan( key );
         }
+        else
+        {
+            index.type.addToDocument( document, key, value );
+        }
+        changedDocuments.add( id );
     }
 
     private void addOrphan( String key )
@@ -154,29 +143,51 @@ class FullTxData extends TxData
     @Override
     void remove( TxDataHolder holder, Object entityId, String key, Object value )
     {
+        long id = entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
+        Document document = findDocument( id );
+        if ( document != null )
+        {
+            index.type.removeFromDocument( document, key, value );
+            changedDocuments.add( id );
+        }
+    }
+
+    private void writeChangedDocuments()
+    {
+        if ( changedDocuments.isEmpty() )
+        {
+            return;
+        }
+
+        ensureLuceneDataInstantiated();
         try
         {
-            ensureLuceneDataInstantiated();
-            long id = entityId instanceof Long ? (Long) entityId : ((RelationshipId)entityId).id;
-            Document document = findDocument( id );
-            if ( document != null )
+            for ( Long id : changedDocuments )
             {
-                index.type.removeFromDocument( document, key, value );
+                Document document = cachedDocuments.get( id );
                 if ( LuceneDataSource.documentIsEmpty( document ) )
                 {
-                    writer.deleteDocuments( index.type.idTerm( id ) );
+                    if ( documentsInWriter.remove( id ) )
+                    {
+                        writer.deleteDocuments( index.type.idTerm( id ) );
+                    }
+                }
+                else if ( documentsInWriter.add( id ) )
+                {
+                    writer.addDocument( document );
                 }
                 else
                 {
                     writer.updateDocument( index.type.idTerm( id ), document );
                 }
             }
-            invalidateSearcher();
         }
         catch ( IOException e )
         {
             throw new RuntimeException( e );
         }
+        changedDocuments.clear();
+        invalidateSearcher();
     }
 
     @Override
@@ -187,7 +198,7 @@ class FullTxData extends TxData
 
     private Collection<Long> internalQuery( Query query, QueryContext contextOrNull )
     {
-        if ( this.directory == null )
+        if ( this.directory == null && changedDocuments.isEmpty() )
         {
             return Collections.<Long>emptySet();
         }
@@ -338,7 +349,13 @@ class FullTxData extends TxData
 
     private IndexSearcher searcher( boolean allowRefreshSearcher )
     {
-        if ( this.searcher != null && (!modified || !allowRefreshSearcher) )
+        if ( this.searcher != null && !allowRefreshSearcher )
+        {
+            return this.searcher;
+        }
+        ensureLuceneDataInstantiated();
+        writeChangedDocuments();
+        if ( this.searcher != null && !modified )
         {
             return this.searcher;
         }
@@ -23,7 +23,7 @@ import java.io.IOException;
 
 import org.apache.lucene.document.Document;
 
-public class HitsIterator extends AbstractIndexHits<Document>
+public class HitsIterator extends DocHits
 {
     private final int size;
     private final Hits hits;
@@ -48,6 +48,20 @@ public class HitsIterator extends AbstractIndexHits<Document>
             throw new RuntimeException( e );
         }
     }
+
+    @Override
+    int nextDoc()
+    {
+        int i = index++;
+        try
+        {
+            return i < size() ? hits.id( i ) : NO_MORE_DOCS;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
     
     public float currentScore()
     {
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Looks up the entity ids of documents in a search result by document
+ * number. The ids are read from the {@link FieldCache} of the id field of
+ * each segment instead of from the stored documents, so nothing is loaded
+ * for each hit. Lucene keeps the cache per segment, so it survives reopening
+ * readers as long as the segment itself is unchanged.
+ */
+class IdFieldCache
+{
+    private static final FieldCache.LongParser ID_PARSER = new IdParser();
+
+    private final IndexReader[] segments;
+    private final int[] starts;
+    private final long[][] ids;
+    private int current;
+
+    IdFieldCache( IndexReader reader )
+    {
+        List<IndexReader> segmentList = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders( segmentList, reader );
+        this.segments = segmentList.toArray( new IndexReader[segmentList.size()] );
+        this.starts = new int[segments.length];
+        this.ids = new long[segments.length][];
+        int start = 0;
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            starts[i] = start;
+            start += segments[i].maxDoc();
+        }
+    }
+
+    long idOf( int doc )
+    {
+        int segment = current;
+        if ( doc < starts[segment] || ( segment + 1 < starts.length && doc >= starts[segment + 1] ) )
+        {
+            segment = current = ReaderUtil.subIndex( doc, starts );
+        }
+        long[] segmentIds = ids[segment];
+        if ( segmentIds == null )
+        {
+            try
+            {
+                segmentIds = ids[segment] = FieldCache.DEFAULT.getLongs( segments[segment],
+                        LuceneIndex.KEY_DOC_ID, ID_PARSER );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+        return segmentIds[doc - starts[segment]];
+    }
+
+    /**
+     * @return the ids of all documents matching {@code query}, in no
+     * particular order.
+     */
+    static long[] collectIds( IndexSearcher searcher, Query query )
+    {
+        IdCollector collector = new IdCollector();
+        try
+        {
+            searcher.search( query, collector );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query with " + query, e );
+        }
+        return collector.ids();
+    }
+
+    private static class IdParser implements FieldCache.LongParser
+    {
+        private static final long serialVersionUID = 1L;
+
+        public long parseLong( String value )
+        {
+            return Long.parseLong( value );
+        }
+    }
+
+    private static class IdCollector extends Collector
+    {
+        private long[] ids = new long[16];
+        private int size;
+        private long[] segmentIds;
+
+        @Override
+        public void setScorer( Scorer scorer )
+        {
+        }
+
+        @Override
+        public void setNextReader( IndexReader reader, int docBase ) throws IOException
+        {
+            segmentIds = FieldCache.DEFAULT.getLongs( reader, LuceneIndex.KEY_DOC_ID, ID_PARSER );
+        }
+
+        @Override
+        public void collect( int doc )
+        {
+            if ( size == ids.length )
+            {
+                ids = Arrays.copyOf( ids, size * 2 );
+            }
+            ids[size++] = segmentIds[doc];
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder()
+        {
+            return true;
+        }
+
+        long[] ids()
+        {
+            return Arrays.copyOf( ids, size );
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import org.neo4j.graphdb.index.IndexIdHits;
+
+/**
+ * The primitive counterpart of a {@link DocToIdIterator} combined with the
+ * ids which were found without searching, i.e. those added in the current
+ * transaction or found in the cache. The searched ids are returned first,
+ * like a {@link CombinedIndexHits} would.
+ */
+class IdHitsIterator implements IndexIdHits
+{
+    private final DocHits source;
+    private final IdFieldCache idCache;
+    private final long[] exclude;
+    private final long[] ids;
+    private final float idsScore;
+    private final int size;
+    private IndexSearcherRef searcherOrNull;
+    private boolean searching;
+    private int position;
+    private boolean fetched;
+    private boolean hasNext;
+    private long next;
+    private boolean nextFromSource;
+    private boolean currentFromSource;
+
+    IdHitsIterator( Collection<Long> ids, DocHits sourceOrNull, IdFieldCache idCache,
+            Collection<Long> removed, IndexSearcherRef searcherOrNull )
+    {
+        this.source = sourceOrNull;
+        this.idCache = idCache;
+        this.ids = toArray( ids );
+        this.searcherOrNull = searcherOrNull;
+        this.searching = sourceOrNull != null;
+        this.idsScore = searching ? Float.NaN : 0;
+        int sourceSize = 0;
+        if ( searching )
+        {
+            // Ids found in the transaction are returned after the searched
+            // ones, so skip them while searching to not return them twice
+            long[] exclude = new long[removed.size() + this.ids.length];
+            System.arraycopy( toArray( removed ), 0, exclude, 0, removed.size() );
+            System.arraycopy( this.ids, 0, exclude, removed.size(), this.ids.length );
+            Arrays.sort( exclude );
+            this.exclude = exclude;
+            sourceSize = sourceOrNull.size() - removed.size();
+            if ( sourceOrNull.size() == 0 )
+            {
+                close();
+            }
+        }
+        else
+        {
+            this.exclude = null;
+        }
+        this.size = sourceSize + this.ids.length;
+    }
+
+    private static long[] toArray( Collection<Long> ids )
+    {
+        long[] result = new long[ids.size()];
+        int i = 0;
+        for ( Long id : ids )
+        {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    public boolean hasNext()
+    {
+        if ( !fetched )
+        {
+            hasNext = fetchNext();
+            fetched = true;
+        }
+        return hasNext;
+    }
+
+    public long next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        currentFromSource = nextFromSource;
+        return next;
+    }
+
+    private boolean fetchNext()
+    {
+        while ( searching )
+        {
+            int doc = source.nextDoc();
+            if ( doc == DocHits.NO_MORE_DOCS )
+            {
+                close();
+                break;
+            }
+            long id = idCache.idOf( doc );
+            if ( exclude.length == 0 || Arrays.binarySearch( exclude, id ) < 0 )
+            {
+                next = id;
+                nextFromSource = true;
+                return true;
+            }
+        }
+        if ( position < ids.length )
+        {
+            next = ids[position++];
+            nextFromSource = false;
+            return true;
+        }
+        return false;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public float currentScore()
+    {
+        return currentFromSource ? source.currentScore() : idsScore;
+    }
+
+    public void close()
+    {
+        searching = false;
+        if ( searcherOrNull != null )
+        {
+            searcherOrNull.closeStrict();
+            searcherOrNull = null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings( "deprecation" )
+    protected void finalize() throws Throwable
+    {
+        close();
+        super.finalize();
+    }
+}
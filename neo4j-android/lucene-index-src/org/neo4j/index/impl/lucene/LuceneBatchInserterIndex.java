@@ -21,6 +21,7 @@ package org.neo4j.index.impl.lucene;
 
 import static org.neo4j.index.impl.lucene.LuceneDataSource.LUCENE_VERSION;
 import static org.neo4j.index.impl.lucene.LuceneDataSource.getDirectory;
+import static org.neo4j.index.impl.lucene.LuceneDataSource.getFileDirectory;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -28,6 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.document.Document;
@@ -36,6 +38,7 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
@@ -52,8 +55,10 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
 {
     private final IndexIdentifier identifier;
     private final IndexType type;
+    private final String storeDir;
     
     private IndexWriter writer;
+    private ParallelIndexWriters parallelWriters;
     private boolean writerModified;
     private IndexSearcher searcher;
     private final boolean createdNow;
@@ -69,7 +74,8 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         this.createdNow = storeDir.other();
         this.identifier = identifier;
         this.type = IndexType.getIndexType( identifier, config );
-        this.writer = instantiateWriter( storeDir.first() );
+        this.storeDir = storeDir.first();
+        this.writer = instantiateWriter( this.storeDir );
     }
     
     /**
@@ -83,11 +89,58 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         this.commitBatchSize = size;
     }
 
+    /**
+     * Sets the number of threads building and writing documents added to
+     * this index. With more than one thread each of them writes to its own
+     * part of the index and the parts are merged into the index at
+     * {@link #shutdown()}. The default is 1, where documents are built and
+     * written by the thread calling {@link #add(long, Map)}.
+     * 
+     * @param threads the number of threads writing to this index.
+     */
+    public void setWriterThreads( int threads )
+    {
+        if ( parallelWriters != null )
+        {
+            closeParallelWriters();
+        }
+        if ( threads > 1 )
+        {
+            IndexWriterConfig[] configs = new IndexWriterConfig[threads];
+            for ( int i = 0; i < threads; i++ )
+            {
+                // Split the memory the single writer would have used among the parts
+                configs[i] = new IndexWriterConfig( LUCENE_VERSION, type.analyzer );
+                configs[i].setRAMBufferSizeMB( Math.max( configs[i].getRAMBufferSizeMB(),
+                        determineGoodBufferSize( 0 ) / threads ) );
+            }
+            parallelWriters = new ParallelIndexWriters( this,
+                    getFileDirectory( storeDir, identifier ), configs );
+        }
+        writerModified = true;
+    }
+
     public void add( long entityId, Map<String, Object> properties )
     {
+        Document document = identifier.entityType.newDocument( entityId );
+        if ( parallelWriters != null )
+        {
+            if ( createdNow && cache != null )
+            {
+                for ( Map.Entry<String, Object> entry : properties.entrySet() )
+                {
+                    for ( Object oneValue : IoPrimitiveUtils.asArray( entry.getValue() ) )
+                    {
+                        addToCache( entityId, entry.getKey(), indexValue( oneValue ) );
+                    }
+                }
+            }
+            parallelWriters.add( document, new HashMap<String, Object>( properties ) );
+            return;
+        }
+
         try
         {
-            Document document = identifier.entityType.newDocument( entityId );
             for ( Map.Entry<String, Object> entry : properties.entrySet() )
             {
                 String key = entry.getKey();
@@ -107,11 +160,31 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         }
     }
 
+    /**
+     * Adds {@code properties} to {@code document}, called by the
+     * {@link ParallelIndexWriters} workers. Cache updates are left to
+     * the batch inserter thread.
+     */
+    void addProperties( Document document, Map<String, Object> properties )
+    {
+        for ( Map.Entry<String, Object> entry : properties.entrySet() )
+        {
+            for ( Object oneValue : IoPrimitiveUtils.asArray( entry.getValue() ) )
+            {
+                type.addToDocument( document, entry.getKey(), indexValue( oneValue ) );
+            }
+        }
+    }
+
+    private static Object indexValue( Object value )
+    {
+        return value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+    }
+
     private void addSingleProperty( long entityId, Document document, String key, Object value ) {
         for ( Object oneValue : IoPrimitiveUtils.asArray(value) )
         {
-            boolean isValueContext = oneValue instanceof ValueContext;
-            oneValue = isValueContext ? ((ValueContext) oneValue).getCorrectValue() : oneValue.toString();
+            oneValue = indexValue( oneValue );
             type.addToDocument( document, key, oneValue );
             if ( createdNow )
             {
@@ -185,6 +258,10 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         {
             removeFromCache( entityId );
             writer.deleteDocuments( type.idTermQuery( entityId ) );
+            if ( parallelWriters != null )
+            {
+                parallelWriters.deleteDocuments( type.idTermQuery( entityId ) );
+            }
             add( entityId, properties );
         }
         catch ( IOException e )
@@ -276,6 +353,12 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
                     result.close();
                 }
                 IndexReader newReader = IndexReader.open( writer, true );
+                if ( parallelWriters != null )
+                {
+                    List<IndexReader> readers = parallelWriters.openReaders();
+                    readers.add( 0, newReader );
+                    newReader = new MultiReader( readers.toArray( new IndexReader[readers.size()] ) );
+                }
                 result = new IndexSearcher( newReader );
                 writerModified = false;
             }
@@ -291,6 +374,18 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         }
     }
     
+    private void closeParallelWriters()
+    {
+        try
+        {
+            parallelWriters.close( writer );
+        }
+        finally
+        {
+            parallelWriters = null;
+        }
+    }
+
     private void closeWriter()
     {
         try
@@ -315,15 +410,17 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     {
         try
         {
-            Hits hits = new Hits( searcher(), query, null );
+            IndexSearcher searcher = searcher();
+            Hits hits = new Hits( searcher, query, null );
             HitsIterator result = new HitsIterator( hits );
+            IdFieldCache idCache = new IdFieldCache( searcher.getIndexReader() );
             if ( key == null || this.cache == null || !this.cache.containsKey( key ) )
             {
-                return new DocToIdIterator( result, Collections.<Long>emptyList(), null );
+                return new DocToIdIterator( result, idCache, Collections.<Long>emptyList(), null );
             }
             else
             {
-                return new DocToIdIterator( result, Collections.<Long>emptyList(), null )
+                return new DocToIdIterator( result, idCache, Collections.<Long>emptyList(), null )
                 {
                     private final Collection<Long> ids = new ArrayList<Long>();
                     
@@ -372,6 +469,10 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     public void shutdown()
     {
         closeSearcher();
+        if ( parallelWriters != null )
+        {
+            closeParallelWriters();
+        }
         closeWriter();
     }
     
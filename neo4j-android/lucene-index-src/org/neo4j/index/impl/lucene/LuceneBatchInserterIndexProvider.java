@@ -51,6 +51,7 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
     final IndexStore indexStore;
     final EntityType nodeEntityType;
     final EntityType relationshipEntityType;
+    private int writerThreads = 1;
 
     public LuceneBatchInserterIndexProvider( final BatchInserter inserter )
     {
@@ -104,6 +105,19 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
         };
     }
     
+    /**
+     * Sets the number of threads building and writing documents for each
+     * index returned from this provider afterwards. More than one thread
+     * writes each index in parts which are merged when the provider is
+     * shut down. The default is 1.
+     * 
+     * @param threads the number of threads writing to each index.
+     */
+    public void setWriterThreads( int threads )
+    {
+        this.writerThreads = threads;
+    }
+
     public BatchInserterIndex nodeIndex( String indexName, Map<String, String> config )
     {
         config( Node.class, indexName, config );
@@ -141,6 +155,10 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
         if ( index == null )
         {
             index = new LuceneBatchInserterIndex( this, inserter, identifier, config );
+            if ( writerThreads > 1 )
+            {
+                index.setWriterThreads( writerThreads );
+            }
             indexes.put( identifier, index );
         }
         return index;
@@ -28,12 +28,18 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.KeywordAnalyzer;
@@ -48,6 +54,7 @@ import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -55,6 +62,7 @@ import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -66,7 +74,6 @@ import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.helpers.collection.ClosableIterable;
 import org.neo4j.kernel.Config;
-import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.index.IndexProviderStore;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
@@ -125,10 +132,19 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     public static final Analyzer KEYWORD_ANALYZER = new KeywordAnalyzer();
 
+    private static final Logger log = Logger.getLogger( LuceneDataSource.class.getName() );
+
     private final Map<IndexIdentifier,Pair<IndexWriter, AtomicBoolean>> indexWriters =
         new HashMap<IndexIdentifier,Pair<IndexWriter, AtomicBoolean>>();
     private final Map<IndexIdentifier,IndexSearcherRef> indexSearchers =
         new HashMap<IndexIdentifier,IndexSearcherRef>();
+    private final ConcurrentHashMap<IndexIdentifier,Object> refreshLocks =
+        new ConcurrentHashMap<IndexIdentifier,Object>();
+    private final Set<IndexIdentifier> refreshing = Collections.newSetFromMap(
+        new ConcurrentHashMap<IndexIdentifier,Boolean>() );
+    private final SearcherRefresher searcherRefresher;
+    private final IndexMaintainer indexMaintainer;
+    private final int mergeFactor;
 
     private final XaContainer xaContainer;
     private final String baseStorePath;
@@ -136,7 +152,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
     final IndexStore indexStore;
     final IndexProviderStore providerStore;
     private final IndexTypeCache typeCache;
-    private boolean closed;
+    private volatile boolean closed;
     private final Cache caching;
     EntityType nodeEntityType;
     EntityType relationshipEntityType;
@@ -154,13 +170,16 @@ public class LuceneDataSource extends LogBackedXaDataSource
         throws InstantiationException
     {
         super( params );
-        caching = new Cache();
+        caching = new Cache( Cache.configuredSize( params ) );
         String storeDir = (String) params.get( "store_dir" );
         this.baseStorePath = getStoreDir( storeDir ).first();
         cleanWriteLocks( baseStorePath );
         this.indexStore = (IndexStore) params.get( IndexStore.class );
         this.providerStore = newIndexStore( storeDir );
         this.typeCache = new IndexTypeCache( indexStore );
+        this.searcherRefresher = newSearcherRefresher( params );
+        Long mergeFactor = configuredNumber( params, Config.LUCENE_MERGE_FACTOR );
+        this.mergeFactor = mergeFactor != null ? mergeFactor.intValue() : -1;
         boolean isReadOnly = false;
         if ( params.containsKey( "read_only" ) )
         {
@@ -225,6 +244,48 @@ public class LuceneDataSource extends LogBackedXaDataSource
             setKeepLogicalLogsIfSpecified( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME );
             setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
         }
+        this.indexMaintainer = isReadOnly ? null : newIndexMaintainer( params );
+    }
+
+    private static Long configuredNumber( Map<Object,Object> params, String key )
+    {
+        Object value = params.get( key );
+        if ( value == null )
+        {
+            return null;
+        }
+        try
+        {
+            return Long.valueOf( value.toString().trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Unable to parse " + key + " " + value, e );
+        }
+    }
+
+    private SearcherRefresher newSearcherRefresher( Map<Object,Object> params )
+    {
+        Long interval = configuredNumber( params, Config.LUCENE_SEARCHER_REFRESH_INTERVAL );
+        if ( interval == null || interval < 0 )
+        {
+            return null;
+        }
+        SearcherRefresher refresher = new SearcherRefresher( interval );
+        refresher.start();
+        return refresher;
+    }
+
+    private IndexMaintainer newIndexMaintainer( Map<Object,Object> params )
+    {
+        Long idleTime = configuredNumber( params, Config.LUCENE_MAINTENANCE_IDLE_TIME );
+        if ( idleTime == null || idleTime < 0 )
+        {
+            return null;
+        }
+        IndexMaintainer maintainer = new IndexMaintainer( idleTime );
+        maintainer.start();
+        return maintainer;
     }
 
     IndexType getType( IndexIdentifier identifier )
@@ -283,6 +344,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
     @Override
     public void close()
     {
+        if ( searcherRefresher != null )
+        {
+            searcherRefresher.shutdown();
+        }
+        if ( indexMaintainer != null )
+        {
+            indexMaintainer.shutdown();
+        }
         synchronized ( this )
         {
             if ( closed )
@@ -290,18 +359,21 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 return;
             }
             closed = true;
-            for ( IndexSearcherRef searcher : indexSearchers.values() )
+            synchronized ( indexSearchers )
             {
-                try
-                {
-                    searcher.dispose();
-                }
-                catch ( IOException e )
+                for ( IndexSearcherRef searcher : indexSearchers.values() )
                 {
-                    e.printStackTrace();
+                    try
+                    {
+                        searcher.dispose();
+                    }
+                    catch ( IOException e )
+                    {
+                        e.printStackTrace();
+                    }
                 }
+                indexSearchers.clear();
             }
-            indexSearchers.clear();
 
             for ( Map.Entry<IndexIdentifier, Pair<IndexWriter, AtomicBoolean>> entry : indexWriters.entrySet() )
             {
@@ -410,37 +482,110 @@ public class LuceneDataSource extends LogBackedXaDataSource
     }
 
     /**
-     * If nothing has changed underneath (since the searcher was last created
-     * or refreshed) {@code null} is returned. But if something has changed a
-     * refreshed searcher is returned. It makes use if the
-     * {@link IndexReader#reopen()} which faster than opening an index from
-     * scratch.
-     *
-     * @param searcher the {@link IndexSearcher} to refresh.
-     * @return a refreshed version of the searcher or, if nothing has changed,
-     * {@code null}.
-     * @throws IOException if there's a problem with the index.
+     * Makes sure there's an open searcher for {@code identifier} which sees
+     * everything written to its writer. If the writer has changed since the
+     * searcher was last opened it is refreshed using {@link IndexReader#reopen()},
+     * which is faster than opening an index from scratch. Refreshes of the
+     * same index are serialized, but queries keep using the previous
+     * searcher until the refreshed one has been swapped in. Queries on an
+     * index which hasn't changed don't take the refresh lock at all.
      */
-    private IndexSearcherRef refreshSearcher( IndexSearcherRef searcher )
+    private void refreshSearcher( IndexIdentifier identifier )
     {
-        try
+        if ( isUpToDate( identifier ) )
+        {
+            return;
+        }
+        synchronized ( refreshLock( identifier ) )
         {
-            IndexReader reader = searcher.getSearcher().getIndexReader();
-            IndexReader reopened = reader.reopen();
-            if ( reopened != reader )
+            // Marked before clearing the changed flag, so that queries
+            // don't take the previous searcher as up to date meanwhile
+            refreshing.add( identifier );
+            try
             {
-                IndexSearcher newSearcher = new IndexSearcher( reopened );
-                searcher.detachOrClose();
-                return new IndexSearcherRef( searcher.getIdentifier(), newSearcher );
+                IndexSearcherRef searcher;
+                synchronized ( indexSearchers )
+                {
+                    searcher = indexSearchers.get( identifier );
+                }
+                AtomicBoolean changed = changedFlag( identifier );
+                if ( searcher == null )
+                {
+                    IndexWriter writer = getIndexWriter( identifier );
+                    changedFlag( identifier ).set( false );
+                    IndexReader reader = IndexReader.open( writer, true );
+                    swapSearcher( identifier, null,
+                            new IndexSearcherRef( identifier, new IndexSearcher( reader ) ) );
+                }
+                else if ( changed != null && changed.compareAndSet( true, false ) )
+                {
+                    IndexReader reader = searcher.getSearcher().getIndexReader();
+                    IndexReader reopened = reader.reopen();
+                    if ( reopened != reader )
+                    {
+                        swapSearcher( identifier, searcher,
+                                new IndexSearcherRef( identifier, new IndexSearcher( reopened ) ) );
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+            finally
+            {
+                refreshing.remove( identifier );
             }
-            return null;
         }
-        catch ( IOException e )
+    }
+
+    private boolean isUpToDate( IndexIdentifier identifier )
+    {
+        AtomicBoolean changed = changedFlag( identifier );
+        if ( changed == null || changed.get() || refreshing.contains( identifier ) )
         {
-            throw new RuntimeException( e );
+            return false;
+        }
+        synchronized ( indexSearchers )
+        {
+            return indexSearchers.containsKey( identifier );
         }
     }
 
+    private void swapSearcher( IndexIdentifier identifier, IndexSearcherRef previous,
+            IndexSearcherRef searcher ) throws IOException
+    {
+        synchronized ( indexSearchers )
+        {
+            indexSearchers.put( identifier, searcher );
+            if ( previous != null )
+            {
+                previous.detachOrClose();
+            }
+        }
+    }
+
+    private Object refreshLock( IndexIdentifier identifier )
+    {
+        Object lock = refreshLocks.get( identifier );
+        if ( lock == null )
+        {
+            Object newLock = new Object();
+            lock = refreshLocks.putIfAbsent( identifier, newLock );
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private synchronized AtomicBoolean changedFlag( IndexIdentifier identifier )
+    {
+        Pair<IndexWriter, AtomicBoolean> writer = indexWriters.get( identifier );
+        return writer != null ? writer.other() : null;
+    }
+
     static File getFileDirectory( String storeDir, byte entityType )
     {
         File path = new File( storeDir, "lucene" );
@@ -477,55 +622,181 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
 
-    synchronized IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    /**
+     * Returns the searcher to query {@code identifier} with. Normally it's
+     * refreshed first if something has been committed to the index since it
+     * was opened. If {@link Config#LUCENE_SEARCHER_REFRESH_INTERVAL} is set
+     * searchers are instead refreshed in the background after commits and
+     * the currently open searcher is returned right away.
+     */
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
     {
-        try
+        return getIndexSearcher( identifier, incRef, searcherRefresher == null );
+    }
+
+    /**
+     * Returns a searcher which sees everything committed to
+     * {@code identifier}, regardless of how searchers are refreshed.
+     * Committing transactions need this to find the current documents.
+     */
+    IndexSearcherRef getFreshIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    {
+        return getIndexSearcher( identifier, incRef, true );
+    }
+
+    private IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef,
+            boolean refresh )
+    {
+        while ( true )
         {
-            IndexSearcherRef searcher = indexSearchers.get( identifier );
-            if ( searcher == null )
+            if ( refresh )
             {
-                IndexWriter writer = getIndexWriter( identifier );
-                IndexReader reader = IndexReader.open( writer, true );
-                IndexSearcher indexSearcher = new IndexSearcher( reader );
-                searcher = new IndexSearcherRef( identifier, indexSearcher );
-                indexSearchers.put( identifier, searcher );
+                refreshSearcher( identifier );
             }
-            else
+            synchronized ( indexSearchers )
             {
-                Pair<IndexWriter, AtomicBoolean> writer = indexWriters.get( identifier );
-                if ( writer != null && writer.other().compareAndSet( true, false ) )
+                IndexSearcherRef searcher = indexSearchers.get( identifier );
+                if ( searcher != null )
                 {
-                    searcher = refreshSearcher( searcher );
-                    if ( searcher != null )
+                    if ( incRef )
                     {
-                        indexSearchers.put( identifier, searcher );
+                        searcher.incRef();
                     }
+                    return searcher;
                 }
             }
-            if ( incRef )
+            // Not opened yet, or closed since by deleteIndex
+            refresh = true;
+        }
+    }
+
+    XaTransaction createTransaction( int identifier,
+        XaLogicalLog logicalLog )
+    {
+        return new LuceneTransaction( identifier, logicalLog, this );
+    }
+
+    void invalidateIndexSearcher( IndexIdentifier identifier )
+    {
+        if ( markAsChanged( identifier ) && indexMaintainer != null )
+        {
+            indexMaintainer.changed( identifier );
+        }
+    }
+
+    private boolean markAsChanged( IndexIdentifier identifier )
+    {
+        AtomicBoolean changed = changedFlag( identifier );
+        if ( changed == null )
+        {
+            return false;
+        }
+        changed.set( true );
+        if ( searcherRefresher != null )
+        {
+            searcherRefresher.refreshLater( identifier );
+        }
+        return true;
+    }
+
+    /**
+     * Merges all segments of {@code identifier} into one, so that queries
+     * search one segment instead of many. It merges the segments there are
+     * when it starts and doesn't hold the data source lock meanwhile, so
+     * commits go on while it runs. The files of the merged segments are
+     * deleted the next time the writers are committed, i.e. at log rotation
+     * or shutdown.
+     */
+    void compact( IndexIdentifier identifier )
+    {
+        IndexWriter writer;
+        getReadLock();
+        try
+        {
+            writer = getIndexWriter( identifier );
+        }
+        finally
+        {
+            releaseReadLock();
+        }
+        try
+        {
+            // Closing the writer, at shutdown or when the index is deleted,
+            // waits for the merge to finish
+            writer.optimize();
+            getReadLock();
+            try
+            {
+                markAsChanged( identifier );
+            }
+            finally
             {
-                searcher.incRef();
+                releaseReadLock();
             }
-            return searcher;
+        }
+        catch ( AlreadyClosedException e )
+        {
+            // Closed before the merge started, there's nothing to compact
         }
         catch ( IOException e )
         {
-            throw new RuntimeException( e );
+            throw new RuntimeException( "Unable to compact " + identifier, e );
         }
     }
 
-    XaTransaction createTransaction( int identifier,
-        XaLogicalLog logicalLog )
+    /**
+     * @return the number of segments queries on {@code identifier}
+     * currently search.
+     */
+    int getSegmentCount( IndexIdentifier identifier )
     {
-        return new LuceneTransaction( identifier, logicalLog, this );
+        // Committing transactions use the current searcher without holding
+        // a reference to it, so don't reopen it under them
+        getReadLock();
+        try
+        {
+            IndexSearcherRef searcher = getFreshIndexSearcher( identifier, true );
+            try
+            {
+                IndexReader[] segments = searcher.getSearcher().getIndexReader().getSequentialSubReaders();
+                return segments != null ? segments.length : 1;
+            }
+            finally
+            {
+                searcher.closeStrict();
+            }
+        }
+        finally
+        {
+            releaseReadLock();
+        }
     }
 
-    synchronized void invalidateIndexSearcher( IndexIdentifier identifier )
+    /**
+     * Compacts, see {@link #compact(IndexIdentifier)}, every open index
+     * which has more than one segment. Applications can call this when the
+     * device is idle, e.g. while charging with the screen off, instead of
+     * or in addition to configuring
+     * {@link Config#LUCENE_MAINTENANCE_IDLE_TIME}.
+     */
+    public void runMaintenance()
     {
-        Pair<IndexWriter, AtomicBoolean> writer = indexWriters.get( identifier );
-        if ( writer != null )
+        Collection<IndexIdentifier> identifiers;
+        synchronized ( this )
         {
-            writer.other().set( true );
+            identifiers = new ArrayList<IndexIdentifier>( indexWriters.keySet() );
+        }
+        compactIfFragmented( identifiers );
+    }
+
+    private void compactIfFragmented( Collection<IndexIdentifier> identifiers )
+    {
+        for ( IndexIdentifier identifier : identifiers )
+        {
+            if ( !closed && changedFlag( identifier ) != null && getSegmentCount( identifier ) > 1 )
+            {
+                compact( identifier );
+            }
         }
     }
 
@@ -583,6 +854,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
             IndexType type = getType( identifier );
             IndexWriterConfig writerConfig = new IndexWriterConfig( LUCENE_VERSION, type.analyzer );
             writerConfig.setIndexDeletionPolicy( new MultipleBackupDeletionPolicy() );
+            if ( mergeFactor > 0 )
+            {
+                LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+                mergePolicy.setMergeFactor( mergeFactor );
+                writerConfig.setMergePolicy( mergePolicy );
+            }
             Similarity similarity = type.getSimilarity();
             if ( similarity != null )
             {
@@ -590,12 +867,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
             }
             IndexWriter indexWriter = new IndexWriter( dir, writerConfig );
             writer = Pair.of( indexWriter, new AtomicBoolean() );
-
-            // TODO We should tamper with this value and see how it affects the
-            // general performance. Lucene docs says rather <10 for mixed
-            // reads/writes
-//            writer.setMergeFactor( 8 );
-
             indexWriters.put( identifier, writer );
             return writer.first();
         }
@@ -661,30 +932,50 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    private synchronized void closeWriter( IndexIdentifier identifier )
+    private void closeWriter( IndexIdentifier identifier )
     {
-        try
+        synchronized ( refreshLock( identifier ) )
         {
-            IndexSearcherRef searcher = indexSearchers.remove( identifier );
-            Pair<IndexWriter, AtomicBoolean> writer = indexWriters.remove( identifier );
-            if ( searcher != null )
-            {
-                searcher.dispose();
-            }
-            if ( writer != null )
+            synchronized ( this )
             {
-                writer.first().close();
+                try
+                {
+                    IndexSearcherRef searcher;
+                    synchronized ( indexSearchers )
+                    {
+                        searcher = indexSearchers.remove( identifier );
+                    }
+                    Pair<IndexWriter, AtomicBoolean> writer = indexWriters.remove( identifier );
+                    if ( searcher != null )
+                    {
+                        searcher.dispose();
+                    }
+                    if ( writer != null )
+                    {
+                        writer.first().close();
+                    }
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( "Unable to close lucene writer " + identifier, e );
+                }
             }
         }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( "Unable to close lucene writer " + identifier, e );
-        }
     }
 
-    LruCache<String,Collection<Long>> getFromCache( IndexIdentifier identifier, String key )
+    boolean isCached( IndexIdentifier identifier, String key )
+    {
+        return caching.isEnabled( identifier, key );
+    }
+
+    long[] getFromCache( IndexIdentifier identifier, String key, String value )
+    {
+        return caching.get( identifier, key, value );
+    }
+
+    void putInCache( IndexIdentifier identifier, String key, String value, long[] ids )
     {
-        return caching.get( identifier, key );
+        caching.put( identifier, key, value, ids );
     }
 
     void setCacheCapacity( IndexIdentifier identifier, String key, int maxNumberOfCachedEntries )
@@ -694,17 +985,22 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     Integer getCacheCapacity( IndexIdentifier identifier, String key )
     {
-        LruCache<String, Collection<Long>> cache = this.caching.get( identifier, key );
-        return cache != null ? cache.maxSize() : null;
+        return this.caching.getCapacity( identifier, key );
+    }
+
+    Float getCacheHitRatio( IndexIdentifier identifier, String key )
+    {
+        return this.caching.getHitRatio( identifier, key );
+    }
+
+    Cache getCache()
+    {
+        return this.caching;
     }
 
     void invalidateCache( IndexIdentifier identifier, String key, Object value )
     {
-        LruCache<String,Collection<Long>> cache = caching.get( identifier, key );
-        if ( cache != null )
-        {
-            cache.remove( value.toString() );
-        }
+        caching.invalidate( identifier, key, value );
     }
 
     void invalidateCache( IndexIdentifier identifier )
@@ -824,4 +1120,175 @@ public class LuceneDataSource extends LogBackedXaDataSource
             }
         }
     }
+
+    /**
+     * Refreshes searchers of indexes which have been committed to, at most
+     * once per interval and index, so that queries don't have to.
+     */
+    private class SearcherRefresher extends Thread
+    {
+        private final long interval;
+        private final Set<IndexIdentifier> pending = new LinkedHashSet<IndexIdentifier>();
+        private boolean done;
+
+        SearcherRefresher( long interval )
+        {
+            super( "LuceneSearcherRefresher" );
+            this.interval = interval;
+            setDaemon( true );
+        }
+
+        synchronized void refreshLater( IndexIdentifier identifier )
+        {
+            if ( pending.add( identifier ) )
+            {
+                notifyAll();
+            }
+        }
+
+        synchronized void shutdown()
+        {
+            done = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                Collection<IndexIdentifier> identifiers;
+                synchronized ( this )
+                {
+                    try
+                    {
+                        while ( !done && pending.isEmpty() )
+                        {
+                            wait();
+                        }
+                        // Let more commits pile up before reopening
+                        long until = System.currentTimeMillis() + interval;
+                        for ( long left = interval; !done && left > 0;
+                                left = until - System.currentTimeMillis() )
+                        {
+                            wait( left );
+                        }
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                    if ( done )
+                    {
+                        return;
+                    }
+                    identifiers = new ArrayList<IndexIdentifier>( pending );
+                    pending.clear();
+                }
+                for ( IndexIdentifier identifier : identifiers )
+                {
+                    // Committing transactions use the current searcher without
+                    // holding a reference to it, so don't swap it under them
+                    getReadLock();
+                    try
+                    {
+                        if ( !closed && changedFlag( identifier ) != null )
+                        {
+                            refreshSearcher( identifier );
+                        }
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        if ( !closed )
+                        {
+                            log.log( Level.WARNING, "Unable to refresh searcher for " + identifier, e );
+                        }
+                    }
+                    finally
+                    {
+                        releaseReadLock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts the indexes which have been committed to once no index has
+     * been committed to for a while, so that merging doesn't compete with
+     * writes.
+     */
+    private class IndexMaintainer extends Thread
+    {
+        private final long idleTime;
+        private final Set<IndexIdentifier> changed = new LinkedHashSet<IndexIdentifier>();
+        private long lastChange;
+        private boolean done;
+
+        IndexMaintainer( long idleTime )
+        {
+            super( "LuceneIndexMaintainer" );
+            this.idleTime = idleTime;
+            setDaemon( true );
+            setPriority( MIN_PRIORITY );
+        }
+
+        synchronized void changed( IndexIdentifier identifier )
+        {
+            changed.add( identifier );
+            lastChange = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        synchronized void shutdown()
+        {
+            done = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                Collection<IndexIdentifier> identifiers;
+                synchronized ( this )
+                {
+                    try
+                    {
+                        while ( !done && changed.isEmpty() )
+                        {
+                            wait();
+                        }
+                        for ( long left = idleTime; !done && left > 0;
+                                left = lastChange + idleTime - System.currentTimeMillis() )
+                        {
+                            wait( left );
+                        }
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                    if ( done )
+                    {
+                        return;
+                    }
+                    identifiers = new ArrayList<IndexIdentifier>( changed );
+                    changed.clear();
+                }
+                try
+                {
+                    compactIfFragmented( identifiers );
+                }
+                catch ( RuntimeException e )
+                {
+                    if ( !closed )
+                    {
+                        log.log( Level.WARNING, "Unable to compact " + identifiers, e );
+                    }
+                }
+            }
+        }
+    }
 }
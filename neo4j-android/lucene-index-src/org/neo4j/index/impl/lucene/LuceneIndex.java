@@ -23,10 +23,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
 
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -40,8 +40,9 @@ import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexIdHits;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
 import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
 
@@ -218,13 +219,141 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return query( null, queryOrQueryObject );
     }
 
+    public IndexIdHits getIds( String key, Object value )
+    {
+        return queryIds( type.get( key, value ), key, value, null );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see #query(String, Object)
+     */
+    public IndexIdHits queryIds( String key, Object queryOrQueryObject )
+    {
+        QueryContext context = queryOrQueryObject instanceof QueryContext ?
+                (QueryContext) queryOrQueryObject : null;
+        return queryIds( type.query( key, context != null ?
+                context.getQueryOrQueryObject() : queryOrQueryObject, context ), null, null, context );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see #query(String, Object)
+     */
+    public IndexIdHits queryIds( Object queryOrQueryObject )
+    {
+        return queryIds( null, queryOrQueryObject );
+    }
+
     protected IndexHits<T> query( Query query, String keyForDirectLookup,
             Object valueForDirectLookup, QueryContext additionalParametersOrNull )
     {
-        List<Long> ids = new ArrayList<Long>();
+        if ( additionalParametersOrNull != null && additionalParametersOrNull.isPaged() )
+        {
+            return queryPage( query, additionalParametersOrNull );
+        }
+        Matches matches = findMatches( query, keyForDirectLookup, valueForDirectLookup,
+                additionalParametersOrNull );
+        IndexHits<Long> idIterator = null;
+        if ( matches.searchHits != null )
+        {
+            DocToIdIterator searchedIds = new DocToIdIterator( matches.searchHits,
+                    matches.idCache, matches.removedIds, matches.searcher );
+            if ( matches.ids.isEmpty() )
+            {
+                idIterator = searchedIds;
+            }
+            else
+            {
+                Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
+                iterators.add( searchedIds );
+                iterators.add( new ConstantScoreIterator<Long>( matches.ids, Float.NaN ) );
+                idIterator = new CombinedIndexHits<Long>( iterators );
+            }
+        }
+
+        idIterator = idIterator == null ? new ConstantScoreIterator<Long>( matches.ids, 0 ) : idIterator;
+        return newEntityIterator( idIterator );
+    }
+
+    /**
+     * Returns the page of the results of {@code query} which {@code context}
+     * asks for, see {@link QueryContext#skip(int)}. Pages are searched in the
+     * committed index, unless the current transaction has changes for this
+     * index, in which case all hits are found as usual and then paged.
+     */
+    private IndexHits<T> queryPage( Query query, QueryContext context )
+    {
+        PagedHits.EntityMapper<T> entities = new PagedHits.EntityMapper<T>()
+        {
+            public IndexHits<T> entities( IndexHits<Long> ids )
+            {
+                return newEntityIterator( ids );
+            }
+        };
         LuceneXaConnection con = getReadOnlyConnection();
         LuceneTransaction luceneTx = con != null ? con.getLuceneTx() : null;
+        if ( luceneTx != null && luceneTx.hasChanges( this ) && !context.getTradeCorrectnessForSpeed() )
+        {
+            QueryContext unpaged = new QueryContext( context.getQueryOrQueryObject() )
+                    .sort( context.getSorting() ).defaultOperator( context.getDefaultOperator() );
+            return PagedHits.page( queryIds( query, null, null, unpaged ), context, entities );
+        }
+
+        LuceneDataSource dataSource = service.dataSource();
+        dataSource.getReadLock();
+        IndexSearcherRef searcher = null;
+        try
+        {
+            searcher = dataSource.getIndexSearcher( identifier, true );
+            return PagedHits.search( searcher.getSearcher(), query, context, entities );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query " + this + " with " + query, e );
+        }
+        finally
+        {
+            if ( searcher != null )
+            {
+                searcher.closeStrict();
+            }
+            dataSource.releaseReadLock();
+        }
+    }
+
+    protected IndexIdHits queryIds( Query query, String keyForDirectLookup,
+            Object valueForDirectLookup, QueryContext additionalParametersOrNull )
+    {
+        Matches matches = findMatches( query, keyForDirectLookup, valueForDirectLookup,
+                additionalParametersOrNull );
+        return new IdHitsIterator( matches.ids, matches.searchHits, matches.idCache,
+                matches.removedIds, matches.searcher );
+    }
+
+    /**
+     * What a query matched, before it's turned into hits: the ids which were
+     * found in the transaction state or the cache, the ids removed in the
+     * transaction and, if the index had to be searched, the search result.
+     */
+    private static class Matches
+    {
+        final List<Long> ids = new ArrayList<Long>();
         Collection<Long> removedIds = Collections.emptySet();
+        IndexSearcherRef searcher;
+        DocHits searchHits;
+        IdFieldCache idCache;
+    }
+
+    private Matches findMatches( Query query, String keyForDirectLookup,
+            Object valueForDirectLookup, QueryContext additionalParametersOrNull )
+    {
+        Matches matches = new Matches();
+        List<Long> ids = matches.ids;
+        LuceneXaConnection con = getReadOnlyConnection();
+        LuceneTransaction luceneTx = con != null ? con.getLuceneTx() : null;
         IndexSearcher additionsSearcher = null;
         if ( luceneTx != null )
         {
@@ -236,55 +365,54 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             {
                 additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
             }
-            removedIds = keyForDirectLookup != null ?
+            matches.removedIds = keyForDirectLookup != null ?
                     luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup ) :
                     luceneTx.getRemovedIds( this, query );
         }
-        service.dataSource().getReadLock();
-        IndexHits<Long> idIterator = null;
-        IndexSearcherRef searcher = null;
+        LuceneDataSource dataSource = service.dataSource();
+        dataSource.getReadLock();
         try
         {
-            searcher = service.dataSource().getIndexSearcher( identifier, true );
-            if ( searcher != null )
+            if ( keyForDirectLookup != null && !( valueForDirectLookup instanceof ValueContext ) &&
+                    dataSource.isCached( identifier, keyForDirectLookup ) )
             {
-                boolean foundInCache = false;
-                LruCache<String, Collection<Long>> cachedIdsMap = null;
-                if ( keyForDirectLookup != null )
-                {
-                    cachedIdsMap = service.dataSource().getFromCache(
-                            identifier, keyForDirectLookup );
-                    foundInCache = fillFromCache( cachedIdsMap, ids,
-                            keyForDirectLookup, valueForDirectLookup.toString(), removedIds );
-                }
-
-                if ( !foundInCache )
+                String value = valueForDirectLookup.toString();
+                long[] cachedIds = dataSource.getFromCache( identifier, keyForDirectLookup, value );
+                if ( cachedIds == null )
                 {
-                    DocToIdIterator searchedIds = new DocToIdIterator( search( searcher,
-                            query, additionalParametersOrNull, additionsSearcher, removedIds ), removedIds, searcher );
-                    if ( ids.isEmpty() )
+                    // Only what's committed goes into the cache, so search without
+                    // the transaction state and with a searcher seeing every commit
+                    IndexSearcherRef searcher = dataSource.getFreshIndexSearcher( identifier, true );
+                    try
                     {
-                        idIterator = searchedIds;
+                        cachedIds = IdFieldCache.collectIds( searcher.getSearcher(), query );
                     }
-                    else
+                    finally
                     {
-                        Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
-                        iterators.add( searchedIds );
-                        iterators.add( new ConstantScoreIterator<Long>( ids, Float.NaN ) );
-                        idIterator = new CombinedIndexHits<Long>( iterators );
+                        searcher.closeStrict();
                     }
+                    dataSource.putInCache( identifier, keyForDirectLookup, value, cachedIds );
                 }
+                addCachedIds( ids, cachedIds, matches.removedIds );
+            }
+            else
+            {
+                IndexSearcherRef searcher = dataSource.getIndexSearcher( identifier, true );
+                IndexSearcher indexSearcher = searcherFor( searcher, query, additionsSearcher,
+                        matches.removedIds );
+                matches.searchHits = search( indexSearcher, query, additionalParametersOrNull,
+                        indexSearcher == searcher.getSearcher() );
+                matches.idCache = new IdFieldCache( indexSearcher.getIndexReader() );
+                matches.searcher = searcher;
             }
         }
         finally
         {
-            // The DocToIdIterator closes the IndexSearchRef instance anyways,
-            // or the LazyIterator if it's a lazy one. So no need here.
-            service.dataSource().releaseReadLock();
+            // The DocToIdIterator/IdHitsIterator closes the IndexSearchRef
+            // instance anyways. So no need here.
+            dataSource.releaseReadLock();
         }
-
-        idIterator = idIterator == null ? new ConstantScoreIterator<Long>( ids, 0 ) : idIterator;
-        return newEntityIterator( idIterator );
+        return matches;
     }
 
     @Override
@@ -311,32 +439,22 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         };
     }
 
-    private boolean fillFromCache(
-            LruCache<String, Collection<Long>> cachedNodesMap,
-            List<Long> ids, String key, String valueAsString,
-            Collection<Long> deletedNodes )
+    private static void addCachedIds( List<Long> ids, long[] cachedIds, Collection<Long> removedIds )
     {
-        boolean found = false;
-        if ( cachedNodesMap != null )
+        // Entities added in this transaction may already be in the committed result
+        Collection<Long> addedIds = ids.isEmpty() ? Collections.<Long>emptySet() : new HashSet<Long>( ids );
+        for ( long id : cachedIds )
         {
-            Collection<Long> cachedNodes = cachedNodesMap.get( valueAsString );
-            if ( cachedNodes != null )
+            Long boxedId = id;
+            if ( !removedIds.contains( boxedId ) && !addedIds.contains( boxedId ) )
             {
-                found = true;
-                for ( Long cachedNodeId : cachedNodes )
-                {
-                    if ( !deletedNodes.contains( cachedNodeId ) )
-                    {
-                        ids.add( cachedNodeId );
-                    }
-                }
+                ids.add( boxedId );
             }
         }
-        return found;
     }
 
-    private IndexHits<Document> search( IndexSearcherRef searcherRef, Query query,
-            QueryContext additionalParametersOrNull, IndexSearcher additionsSearcher, Collection<Long> removed )
+    private IndexSearcher searcherFor( IndexSearcherRef searcherRef, Query query,
+            IndexSearcher additionsSearcher, Collection<Long> removed )
     {
         try
         {
@@ -345,10 +463,30 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
                 letThroughAdditions( additionsSearcher, query, removed );
             }
 
-            IndexSearcher searcher = additionsSearcher == null ? searcherRef.getSearcher() :
+            return additionsSearcher == null ? searcherRef.getSearcher() :
                     new IndexSearcher( new MultiReader( searcherRef.getSearcher().getIndexReader(),
                             additionsSearcher.getIndexReader() ) );
-            IndexHits<Document> result = null;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query " + this + " with "
+                                        + query, e );
+        }
+    }
+
+    private DocHits search( IndexSearcher searcher, Query query,
+            QueryContext additionalParametersOrNull, boolean committedOnly )
+    {
+        try
+        {
+            // The sorted numeric values are kept per reader, so it's no use
+            // building them for a reader including the transaction state
+            DocHits result = committedOnly ?
+                    SortedNumericIndex.search( searcher, query, additionalParametersOrNull ) : null;
+            if ( result != null )
+            {
+                return result;
+            }
             if ( additionalParametersOrNull != null && additionalParametersOrNull.getTop() > 0 )
             {
                 result = new TopDocsIterator( query, additionalParametersOrNull, searcher );
@@ -393,6 +531,36 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return service.dataSource().getCacheCapacity( identifier, key );
     }
 
+    /**
+     * @return the ratio of exact lookups for {@code key} which were answered
+     * from the cache, or {@code null} if caching isn't enabled for it.
+     */
+    public Float getCacheHitRatio( String key )
+    {
+        return service.dataSource().getCacheHitRatio( identifier, key );
+    }
+
+    /**
+     * Merges the segments of this index into one, see
+     * {@link LuceneDataSource#runMaintenance()}. Queries are faster on a
+     * compacted index, but compacting a large index takes a while and
+     * commits wait for it to finish.
+     */
+    public void compact()
+    {
+        assertNotDeleted();
+        service.dataSource().compact( identifier );
+    }
+
+    /**
+     * @return the number of segments this index currently consists of.
+     */
+    public int getSegmentCount()
+    {
+        assertNotDeleted();
+        return service.dataSource().getSegmentCount( identifier );
+    }
+
     protected abstract T getById( long id );
 
     protected abstract long getEntityId( T entity );
@@ -75,6 +75,15 @@ class LuceneTransaction extends XaTransaction
                 RelationshipId.of( (Relationship) entity );
     }
     
+    /**
+     * @return whether or not {@code index} has been added to, removed from or
+     * deleted in this transaction.
+     */
+    <T extends PropertyContainer> boolean hasChanges( LuceneIndex<T> index )
+    {
+        return txData.containsKey( index.getIdentifier() );
+    }
+
     <T extends PropertyContainer> TxDataBoth getTxData( LuceneIndex<T> index,
             boolean createIfNotExists )
     {
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreCachingWrappingScorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexIdHits;
+import org.neo4j.index.lucene.PagedIndexHits;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.QueryCursor;
+
+/**
+ * One page of the results of a query, see {@link QueryContext#skip(int)}
+ * and {@link QueryContext#after(QueryCursor)}.
+ */
+class PagedHits<T> implements PagedIndexHits<T>
+{
+    private final IndexHits<T> hits;
+    private final QueryCursor cursor;
+    private final int totalHits;
+
+    private PagedHits( IndexHits<T> hits, QueryCursor cursor, int totalHits )
+    {
+        this.hits = hits;
+        this.cursor = cursor;
+        this.totalHits = totalHits;
+    }
+
+    /**
+     * Searches for the page {@code context} asks for and returns its ids,
+     * in order, as the entities {@code entities} makes of them.
+     */
+    static <T> PagedHits<T> search( IndexSearcher searcher, Query query, QueryContext context,
+            EntityMapper<T> entities ) throws IOException
+    {
+        IndexReader reader = searcher.getIndexReader();
+        long generation = reader.getVersion();
+        QueryCursor after = context.getCursor();
+        int offset = after != null ? after.getOffset() : context.getSkip();
+        int limit = context.getTop() > 0 ? context.getTop() : Math.max( reader.maxDoc(), 1 );
+        Sort sorting = context.getSorting();
+        boolean byScore = sorting == null || Sort.RELEVANCE.equals( sorting );
+
+        TopDocs docs;
+        int first;
+        int totalHits;
+        if ( byScore && after != null && after.getGeneration() == generation && after.getLastDoc() >= 0 )
+        {
+            // Nothing has changed since the previous page, so only the hits
+            // after its last one need to be collected
+            TopScoreDocCollector collector = TopScoreDocCollector.create( limit, false );
+            searcher.search( query, new AfterCollector( collector, after ) );
+            docs = collector.topDocs();
+            first = 0;
+            totalHits = offset + docs.totalHits;
+        }
+        else
+        {
+            int n = (int) Math.min( (long) offset + limit, Math.max( reader.maxDoc(), 1 ) );
+            docs = topDocs( searcher, query, context, sorting, n );
+            first = Math.min( offset, docs.scoreDocs.length );
+            totalHits = docs.totalHits;
+        }
+
+        int size = docs.scoreDocs.length - first;
+        long[] ids = new long[size];
+        float[] scores = new float[size];
+        IdFieldCache idCache = new IdFieldCache( reader );
+        for ( int i = 0; i < size; i++ )
+        {
+            ScoreDoc doc = docs.scoreDocs[first + i];
+            ids[i] = idCache.idOf( doc.doc );
+            scores[i] = doc.score;
+        }
+        QueryCursor next = null;
+        if ( size > 0 && offset + size < totalHits )
+        {
+            ScoreDoc last = docs.scoreDocs[first + size - 1];
+            next = new QueryCursor( generation, offset + size, byScore ? last.doc : -1, last.score );
+        }
+        return new PagedHits<T>( entities.entities( new ScoredIds( ids, scores ) ), next, totalHits );
+    }
+
+    /**
+     * Returns the page {@code context} asks for out of all of {@code ids},
+     * for results which can't be searched for page by page, i.e. which
+     * include the transaction state. The cursor to the next page only has
+     * the offset, so that page is found by skipping too.
+     */
+    static <T> PagedHits<T> page( IndexIdHits ids, QueryContext context, EntityMapper<T> entities )
+    {
+        QueryCursor after = context.getCursor();
+        int offset = after != null ? after.getOffset() : context.getSkip();
+        int limit = context.getTop() > 0 ? context.getTop() : Integer.MAX_VALUE;
+        long[] pageIds = new long[Math.min( limit, 16 )];
+        float[] scores = new float[pageIds.length];
+        int size = 0;
+        int totalHits = 0;
+        try
+        {
+            for ( ; ids.hasNext(); totalHits++ )
+            {
+                long id = ids.next();
+                if ( totalHits < offset || size == limit )
+                {
+                    continue;
+                }
+                if ( size == pageIds.length )
+                {
+                    pageIds = Arrays.copyOf( pageIds, size * 2 );
+                    scores = Arrays.copyOf( scores, size * 2 );
+                }
+                pageIds[size] = id;
+                scores[size++] = ids.currentScore();
+            }
+        }
+        finally
+        {
+            ids.close();
+        }
+        QueryCursor next = null;
+        if ( size > 0 && offset + size < totalHits )
+        {
+            next = new QueryCursor( -1, offset + size, -1, scores[size - 1] );
+        }
+        return new PagedHits<T>( entities.entities( new ScoredIds(
+                Arrays.copyOf( pageIds, size ), Arrays.copyOf( scores, size ) ) ), next, totalHits );
+    }
+
+    private static TopDocs topDocs( IndexSearcher searcher, Query query, QueryContext context,
+            Sort sorting, int n ) throws IOException
+    {
+        if ( sorting == null )
+        {
+            return searcher.search( query, n );
+        }
+        if ( !context.getTradeCorrectnessForSpeed() )
+        {
+            TopFieldCollector collector = LuceneDataSource.scoringCollector( sorting, n );
+            searcher.search( query, collector );
+            return collector.topDocs();
+        }
+        return searcher.search( query, null, n, sorting );
+    }
+
+    /**
+     * Makes entities of the ids of a page.
+     */
+    interface EntityMapper<T>
+    {
+        IndexHits<T> entities( IndexHits<Long> ids );
+    }
+
+    public QueryCursor getCursor()
+    {
+        return cursor;
+    }
+
+    public int getTotalHits()
+    {
+        return totalHits;
+    }
+
+    public Iterator<T> iterator()
+    {
+        return this;
+    }
+
+    public boolean hasNext()
+    {
+        return hits.hasNext();
+    }
+
+    public T next()
+    {
+        return hits.next();
+    }
+
+    public void remove()
+    {
+        hits.remove();
+    }
+
+    public int size()
+    {
+        return hits.size();
+    }
+
+    public void close()
+    {
+        hits.close();
+    }
+
+    public T getSingle()
+    {
+        return hits.getSingle();
+    }
+
+    public float currentScore()
+    {
+        return hits.currentScore();
+    }
+
+    /**
+     * Passes on the hits which come after a cursor in score order, i.e.
+     * which have a lower score, or the same score and a higher document
+     * number.
+     */
+    private static class AfterCollector extends Collector
+    {
+        private final Collector delegate;
+        private final int lastDoc;
+        private final float lastScore;
+        private Scorer scorer;
+        private int docBase;
+
+        AfterCollector( Collector delegate, QueryCursor after )
+        {
+            this.delegate = delegate;
+            this.lastDoc = after.getLastDoc();
+            this.lastScore = after.getLastScore();
+        }
+
+        @Override
+        public void setScorer( Scorer scorer ) throws IOException
+        {
+            this.scorer = new ScoreCachingWrappingScorer( scorer );
+            delegate.setScorer( this.scorer );
+        }
+
+        @Override
+        public void collect( int doc ) throws IOException
+        {
+            float score = scorer.score();
+            if ( score < lastScore || ( score == lastScore && docBase + doc > lastDoc ) )
+            {
+                delegate.collect( doc );
+            }
+        }
+
+        @Override
+        public void setNextReader( IndexReader reader, int docBase ) throws IOException
+        {
+            this.docBase = docBase;
+            delegate.setNextReader( reader, docBase );
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder()
+        {
+            return delegate.acceptsDocsOutOfOrder();
+        }
+    }
+
+    private static class ScoredIds extends AbstractIndexHits<Long>
+    {
+        private final long[] ids;
+        private final float[] scores;
+        private int position = -1;
+
+        ScoredIds( long[] ids, float[] scores )
+        {
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        @Override
+        protected Long fetchNextOrNull()
+        {
+            return ++position < ids.length ? ids[position] : null;
+        }
+
+        public int size()
+        {
+            return ids.length;
+        }
+
+        public float currentScore()
+        {
+            return position < ids.length ? scores[position] : 0;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Builds and writes documents for a {@link LuceneBatchInserterIndex} on a
+ * number of worker threads. Each worker has its own {@link IndexWriter} in a
+ * directory next to the index and added documents are handed out to them in
+ * chunks, round robin. The parts are added to the index writer when
+ * {@link #close(IndexWriter)} is called.
+ *
+ * Only the thread using the batch inserter may call methods on this class.
+ */
+class ParallelIndexWriters
+{
+    private static final int CHUNK_SIZE = 1000;
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final List<PendingDocument> END = Collections.emptyList();
+
+    private final LuceneBatchInserterIndex index;
+    private final Worker[] workers;
+    private List<PendingDocument> chunk = new ArrayList<PendingDocument>( CHUNK_SIZE );
+    private int nextWorker;
+    private int chunksInFlight;
+    private volatile Throwable failure;
+
+    ParallelIndexWriters( LuceneBatchInserterIndex index, File indexDirectory,
+            IndexWriterConfig[] writerConfigs )
+    {
+        this.index = index;
+        this.workers = new Worker[writerConfigs.length];
+        try
+        {
+            for ( int i = 0; i < workers.length; i++ )
+            {
+                File directory = new File( indexDirectory.getPath() + "-batch-part-" + i );
+                FileUtils.deleteRecursively( directory );
+                writerConfigs[i].setOpenMode( OpenMode.CREATE );
+                Directory luceneDirectory = FSDirectory.open( directory );
+                workers[i] = new Worker( i, directory, luceneDirectory,
+                        new IndexWriter( luceneDirectory, writerConfigs[i] ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        for ( Worker worker : workers )
+        {
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues {@code document} to have {@code properties} added to it and
+     * then be written by one of the workers. The caller must not modify
+     * {@code properties} afterwards.
+     */
+    void add( Document document, Map<String, Object> properties )
+    {
+        chunk.add( new PendingDocument( document, properties ) );
+        if ( chunk.size() == CHUNK_SIZE )
+        {
+            dispatch();
+        }
+    }
+
+    private void dispatch()
+    {
+        checkFailure();
+        if ( chunk.isEmpty() )
+        {
+            return;
+        }
+        synchronized ( this )
+        {
+            chunksInFlight++;
+        }
+        Worker worker = workers[nextWorker];
+        nextWorker = (nextWorker + 1) % workers.length;
+        put( worker, chunk );
+        chunk = new ArrayList<PendingDocument>( CHUNK_SIZE );
+    }
+
+    private void put( Worker worker, List<PendingDocument> documents )
+    {
+        try
+        {
+            worker.queue.put( documents );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Waits for all documents added so far to be written.
+     */
+    void drain()
+    {
+        dispatch();
+        synchronized ( this )
+        {
+            while ( chunksInFlight > 0 )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException( e );
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private synchronized void chunkDone()
+    {
+        chunksInFlight--;
+        notifyAll();
+    }
+
+    private void checkFailure()
+    {
+        if ( failure != null )
+        {
+            throw new RuntimeException( "Unable to write batch index documents", failure );
+        }
+    }
+
+    void deleteDocuments( Query query ) throws IOException
+    {
+        drain();
+        for ( Worker worker : workers )
+        {
+            worker.writer.deleteDocuments( query );
+        }
+    }
+
+    /**
+     * @return near real-time readers for all the parts, with everything added
+     * so far written to them.
+     */
+    List<IndexReader> openReaders() throws IOException
+    {
+        drain();
+        List<IndexReader> readers = new ArrayList<IndexReader>();
+        for ( Worker worker : workers )
+        {
+            readers.add( IndexReader.open( worker.writer, true ) );
+        }
+        return readers;
+    }
+
+    /**
+     * Writes what's left, stops the workers and adds all parts to
+     * {@code target}. The part writers are closed and the part directories
+     * deleted afterwards, also if writing or adding the parts failed, in
+     * which case the first failure is thrown.
+     */
+    void close( IndexWriter target )
+    {
+        RuntimeException firstFailure = null;
+        try
+        {
+            drain();
+        }
+        catch ( RuntimeException e )
+        {
+            firstFailure = e;
+        }
+        for ( Worker worker : workers )
+        {
+            try
+            {
+                put( worker, END );
+            }
+            catch ( RuntimeException e )
+            {
+                firstFailure = first( firstFailure, e );
+            }
+        }
+        for ( Worker worker : workers )
+        {
+            try
+            {
+                worker.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                firstFailure = first( firstFailure, new RuntimeException( e ) );
+            }
+        }
+
+        try
+        {
+            if ( firstFailure == null )
+            {
+                Directory[] directories = new Directory[workers.length];
+                for ( int i = 0; i < workers.length; i++ )
+                {
+                    LuceneUtil.close( workers[i].writer );
+                    directories[i] = workers[i].luceneDirectory;
+                }
+                target.addIndexes( directories );
+            }
+        }
+        catch ( IOException e )
+        {
+            firstFailure = new RuntimeException( e );
+        }
+        catch ( RuntimeException e )
+        {
+            firstFailure = e;
+        }
+        finally
+        {
+            for ( Worker worker : workers )
+            {
+                try
+                {
+                    LuceneUtil.close( worker.writer );
+                    worker.luceneDirectory.close();
+                    FileUtils.deleteRecursively( worker.directory );
+                }
+                catch ( IOException e )
+                {
+                    firstFailure = first( firstFailure, new RuntimeException( e ) );
+                }
+                catch ( RuntimeException e )
+                {
+                    firstFailure = first( firstFailure, e );
+                }
+            }
+        }
+        if ( firstFailure != null )
+        {
+            throw firstFailure;
+        }
+    }
+
+    private static RuntimeException first( RuntimeException first, RuntimeException next )
+    {
+        return first != null ? first : next;
+    }
+
+    private static class PendingDocument
+    {
+        private final Document document;
+        private final Map<String, Object> properties;
+
+        PendingDocument( Document document, Map<String, Object> properties )
+        {
+            this.document = document;
+            this.properties = properties;
+        }
+    }
+
+    private class Worker extends Thread
+    {
+        private final File directory;
+        private final Directory luceneDirectory;
+        private final IndexWriter writer;
+        private final BlockingQueue<List<PendingDocument>> queue =
+                new ArrayBlockingQueue<List<PendingDocument>>( CHUNKS_PER_WORKER );
+
+        Worker( int number, File directory, Directory luceneDirectory, IndexWriter writer )
+        {
+            super( "LuceneBatchIndexWriter-" + number );
+            this.directory = directory;
+            this.luceneDirectory = luceneDirectory;
+            this.writer = writer;
+            setDaemon( true );
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                List<PendingDocument> documents;
+                try
+                {
+                    documents = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    failure = e;
+                    return;
+                }
+                if ( documents == END )
+                {
+                    return;
+                }
+
+                try
+                {
+                    // Keep taking chunks after a failure so that the batch
+                    // inserter thread doesn't block on a full queue
+                    if ( failure == null )
+                    {
+                        for ( PendingDocument pending : documents )
+                        {
+                            index.addProperties( pending.document, pending.properties );
+                            writer.addDocument( pending.document );
+                        }
+                    }
+                }
+                catch ( Throwable e )
+                {
+                    failure = e;
+                }
+                finally
+                {
+                    chunkDone();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.NumericUtils;
+import org.neo4j.index.lucene.QueryContext;
+
+/**
+ * The full precision values of a numeric field in an {@link IndexReader},
+ * sorted, together with the documents having them. Long and double values
+ * are kept in their sortable long form, see {@link NumericUtils}.
+ *
+ * It answers numeric range queries, optionally ordered by the value, with a
+ * binary search instead of collecting the matching documents from the trie
+ * terms and sorting them. One is built per reader and field the first time
+ * it's needed and dropped together with the reader.
+ */
+class SortedNumericIndex
+{
+    private static final Map<IndexReader, Map<String, SortedNumericIndex>> INDEXES =
+            new WeakHashMap<IndexReader, Map<String, SortedNumericIndex>>();
+
+    private final long[] values;
+    private final int[] docs;
+    private final boolean multiValued;
+
+    private SortedNumericIndex( long[] values, int[] docs, boolean multiValued )
+    {
+        this.values = values;
+        this.docs = docs;
+        this.multiValued = multiValued;
+    }
+
+    /**
+     * Answers {@code query} from the sorted values of {@code searcher}s
+     * reader if it's a long or double range query and the result is
+     * unsorted or sorted on the queried field only.
+     *
+     * @return the hits for {@code query}, or {@code null} if it has to be
+     * searched for the usual way.
+     */
+    static DocHits search( IndexSearcher searcher, Query query, QueryContext contextOrNull )
+            throws IOException
+    {
+        if ( !( query instanceof NumericRangeQuery ) )
+        {
+            return null;
+        }
+        NumericRangeQuery<?> rangeQuery = (NumericRangeQuery<?>) query;
+        Number min = rangeQuery.getMin();
+        Number max = rangeQuery.getMax();
+        Number number = min != null ? min : max;
+        boolean isDouble = number instanceof Double;
+        if ( number == null || !( isDouble || number instanceof Long ) )
+        {
+            return null;
+        }
+
+        boolean reversed = false;
+        Sort sorting = contextOrNull != null ? contextOrNull.getSorting() : null;
+        if ( sorting != null )
+        {
+            SortField[] fields = sorting.getSort();
+            if ( fields.length != 1 || !rangeQuery.getField().equals( fields[0].getField() ) ||
+                    fields[0].getType() != (isDouble ? SortField.DOUBLE : SortField.LONG) )
+            {
+                return null;
+            }
+            reversed = fields[0].getReverse();
+        }
+
+        SortedNumericIndex index = get( searcher.getIndexReader(), rangeQuery.getField() );
+        int start = 0;
+        int end = index.values.length;
+        if ( min != null )
+        {
+            long value = sortable( min, isDouble );
+            start = rangeQuery.includesMin() ? index.lowerBound( value ) : index.upperBound( value );
+        }
+        if ( max != null )
+        {
+            long value = sortable( max, isDouble );
+            end = rangeQuery.includesMax() ? index.upperBound( value ) : index.lowerBound( value );
+        }
+        int top = contextOrNull != null ? contextOrNull.getTop() : 0;
+        return index.new Hits( searcher, start, Math.max( start, end ), reversed, top );
+    }
+
+    private static long sortable( Number number, boolean isDouble )
+    {
+        return isDouble ? NumericUtils.doubleToSortableLong( number.doubleValue() ) : number.longValue();
+    }
+
+    static SortedNumericIndex get( IndexReader reader, String field ) throws IOException
+    {
+        Map<String, SortedNumericIndex> fields;
+        synchronized ( INDEXES )
+        {
+            fields = INDEXES.get( reader );
+            if ( fields == null )
+            {
+                fields = new HashMap<String, SortedNumericIndex>();
+                INDEXES.put( reader, fields );
+            }
+        }
+        synchronized ( fields )
+        {
+            SortedNumericIndex index = fields.get( field );
+            if ( index == null )
+            {
+                index = build( reader, field );
+                fields.put( field, index );
+            }
+            return index;
+        }
+    }
+
+    private static SortedNumericIndex build( IndexReader reader, String field ) throws IOException
+    {
+        long[] values = new long[16];
+        int[] docs = new int[16];
+        int size = 0;
+        BitSet seen = new BitSet( reader.maxDoc() );
+        boolean multiValued = false;
+
+        // Full precision terms have the lowest shift and so come first, in value order
+        TermEnum terms = reader.terms( new Term( field, NumericUtils.longToPrefixCoded( Long.MIN_VALUE ) ) );
+        TermDocs termDocs = reader.termDocs();
+        try
+        {
+            for ( Term term = terms.term(); term != null; term = terms.next() ? terms.term() : null )
+            {
+                String text = term.text();
+                if ( !term.field().equals( field ) || text.length() == 0 ||
+                        text.charAt( 0 ) != NumericUtils.SHIFT_START_LONG )
+                {
+                    break;
+                }
+                long value;
+                try
+                {
+                    value = NumericUtils.prefixCodedToLong( text );
+                }
+                catch ( NumberFormatException e )
+                {
+                    // A string value which happens to look like a numeric term
+                    continue;
+                }
+                termDocs.seek( terms );
+                while ( termDocs.next() )
+                {
+                    if ( size == values.length )
+                    {
+                        values = Arrays.copyOf( values, size * 2 );
+                        docs = Arrays.copyOf( docs, size * 2 );
+                    }
+                    int doc = termDocs.doc();
+                    values[size] = value;
+                    docs[size++] = doc;
+                    if ( seen.get( doc ) )
+                    {
+                        multiValued = true;
+                    }
+                    seen.set( doc );
+                }
+            }
+        }
+        finally
+        {
+            termDocs.close();
+            terms.close();
+        }
+        return new SortedNumericIndex( Arrays.copyOf( values, size ), Arrays.copyOf( docs, size ),
+                multiValued );
+    }
+
+    /**
+     * @return the index of the first value which is {@code >= value}.
+     */
+    private int lowerBound( long value )
+    {
+        int low = 0;
+        int high = values.length;
+        while ( low < high )
+        {
+            int middle = (low + high) >>> 1;
+            if ( values[middle] < value )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first value which is {@code > value}.
+     */
+    private int upperBound( long value )
+    {
+        int low = 0;
+        int high = values.length;
+        while ( low < high )
+        {
+            int middle = (low + high) >>> 1;
+            if ( values[middle] <= value )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The documents of the values in {@code [start,end)}, in value order or
+     * reversed. A document with several values in the range is returned once,
+     * at its first position.
+     */
+    private class Hits extends DocHits
+    {
+        private final IndexSearcher searcher;
+        private final int start;
+        private final int end;
+        private final boolean reversed;
+        private final BitSet returned;
+        private final int size;
+        private int position;
+        private int count;
+
+        Hits( IndexSearcher searcher, int start, int end, boolean reversed, int top )
+        {
+            this.searcher = searcher;
+            this.start = start;
+            this.end = end;
+            this.reversed = reversed;
+            this.position = reversed ? end - 1 : start;
+            this.returned = multiValued ? new BitSet( searcher.getIndexReader().maxDoc() ) : null;
+            int size = multiValued ? distinctDocs() : end - start;
+            this.size = top > 0 ? Math.min( top, size ) : size;
+        }
+
+        private int distinctDocs()
+        {
+            BitSet distinct = new BitSet();
+            for ( int i = start; i < end; i++ )
+            {
+                distinct.set( docs[i] );
+            }
+            return distinct.cardinality();
+        }
+
+        @Override
+        int nextDoc()
+        {
+            while ( count < size && position >= start && position < end )
+            {
+                int doc = docs[position];
+                position += reversed ? -1 : 1;
+                if ( returned == null || !returned.get( doc ) )
+                {
+                    if ( returned != null )
+                    {
+                        returned.set( doc );
+                    }
+                    count++;
+                    return doc;
+                }
+            }
+            return NO_MORE_DOCS;
+        }
+
+        @Override
+        protected Document fetchNextOrNull()
+        {
+            int doc = nextDoc();
+            try
+            {
+                return doc != NO_MORE_DOCS ? searcher.doc( doc ) : null;
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+
+        public float currentScore()
+        {
+            return Float.NaN;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+    }
+}
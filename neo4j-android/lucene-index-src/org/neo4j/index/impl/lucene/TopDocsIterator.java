@@ -32,7 +32,7 @@ import org.apache.lucene.search.TopFieldCollector;
 import org.neo4j.helpers.collection.ArrayIterator;
 import org.neo4j.index.lucene.QueryContext;
 
-class TopDocsIterator extends AbstractIndexHits<Document>
+class TopDocsIterator extends DocHits
 {
     private final Iterator<ScoreDoc> iterator;
     private ScoreDoc currentDoc;
@@ -75,14 +75,14 @@ class TopDocsIterator extends AbstractIndexHits<Document>
     @Override
     protected Document fetchNextOrNull()
     {
-        if ( !iterator.hasNext() )
+        int doc = nextDoc();
+        if ( doc == NO_MORE_DOCS )
         {
             return null;
         }
-        currentDoc = iterator.next();
         try
         {
-            return searcher.doc( currentDoc.doc );
+            return searcher.doc( doc );
         }
         catch ( IOException e )
         {
@@ -90,6 +90,17 @@ class TopDocsIterator extends AbstractIndexHits<Document>
         }
     }
 
+    @Override
+    int nextDoc()
+    {
+        if ( !iterator.hasNext() )
+        {
+            return NO_MORE_DOCS;
+        }
+        currentDoc = iterator.next();
+        return currentDoc.doc;
+    }
+
     public float currentScore()
     {
         return currentDoc.score;
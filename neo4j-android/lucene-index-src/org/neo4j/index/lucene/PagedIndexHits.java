@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * The {@link IndexHits} returned from {@link Index#query(String, Object)}
+ * and {@link Index#query(Object)} for a {@link QueryContext} which asks for
+ * a page of the results, i.e. one with {@link QueryContext#skip(int)} or
+ * {@link QueryContext#after(QueryCursor)} set.
+ *
+ * @param <T> the type of entities in the page.
+ */
+public interface PagedIndexHits<T> extends IndexHits<T>
+{
+    /**
+     * @return the cursor to pass to {@link QueryContext#after(QueryCursor)}
+     * to get the page following this one, or {@code null} if this is the
+     * last page.
+     */
+    QueryCursor getCursor();
+
+    /**
+     * @return the number of hits of the query in total, on all pages.
+     */
+    int getTotalHits();
+}
@@ -42,6 +42,8 @@ public class QueryContext
     private Operator defaultOperator;
     private boolean tradeCorrectnessForSpeed;
     private int topHits;
+    private int skip = -1;
+    private QueryCursor cursor;
     
     public QueryContext( Object queryOrQueryObject )
     {
@@ -227,6 +229,74 @@ public class QueryContext
         return this.topHits;
     }
     
+    /**
+     * Skips the first {@code numberOfHits} hits, so that together with
+     * {@link #top(int)} a page of the results is returned. The returned
+     * {@link IndexHits} are {@link PagedIndexHits}, which has the cursor to
+     * the next page, so use {@code skip(0)} for the first page. Pages include
+     * the modifications of the current transaction, but if it has modified
+     * the index all hits are found and then paged, which is slower, unless
+     * {@link #tradeCorrectnessForSpeed()} is set.
+     *
+     * @param numberOfHits the number of hits to skip.
+     * @return A {@link QueryContext} with the number of hits to skip set.
+     */
+    public QueryContext skip( int numberOfHits )
+    {
+        if ( numberOfHits < 0 )
+        {
+            throw new IllegalArgumentException( "Negative number of hits to skip " + numberOfHits );
+        }
+        this.skip = numberOfHits;
+        return this;
+    }
+
+    /**
+     * Returns the number of hits to skip.
+     *
+     * @return the number of hits set with {@link #skip(int)}.
+     */
+    public int getSkip()
+    {
+        return Math.max( this.skip, 0 );
+    }
+
+    /**
+     * Returns the page following the one {@code cursor} was taken from, see
+     * {@link PagedIndexHits#getCursor()}. Use it with {@link #top(int)} to
+     * set the page size and with the same query and sorting as the previous
+     * page. As long as nothing has been committed to the index in between
+     * the hits before the cursor aren't searched again. See {@link #skip(int)}
+     * for more.
+     *
+     * @param cursor the cursor of the previous page.
+     * @return A {@link QueryContext} which continues after {@code cursor}.
+     */
+    public QueryContext after( QueryCursor cursor )
+    {
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * Returns the cursor which the results continue after.
+     *
+     * @return the cursor set with {@link #after(QueryCursor)}.
+     */
+    public QueryCursor getCursor()
+    {
+        return this.cursor;
+    }
+
+    /**
+     * @return whether or not this context asks for a page of the results,
+     * i.e. if {@link #skip(int)} or {@link #after(QueryCursor)} is set.
+     */
+    public boolean isPaged()
+    {
+        return this.skip >= 0 || this.cursor != null;
+    }
+
     /**
      * Will create a {@link QueryContext} with a query for numeric ranges, that is
      * values that have been indexed using {@link ValueContext#indexNumeric()}.
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene;
+
+/**
+ * Where a page of query results ended, so that the next page can be
+ * fetched with {@link QueryContext#after(QueryCursor)} without having the
+ * index skip past all the earlier results again. A cursor is only as
+ * stable as the index it was taken from: as long as nothing has been
+ * committed to the index since, the next page continues exactly where the
+ * previous one ended. After commits the next page starts at the same
+ * offset into the new results, so hits can be repeated or missed, like
+ * when paging with {@link QueryContext#skip(int)}.
+ *
+ * Cursors can be passed around as strings, see {@link #toString()} and
+ * {@link #parse(String)}.
+ */
+public final class QueryCursor
+{
+    private final long generation;
+    private final int offset;
+    private final int lastDoc;
+    private final float lastScore;
+
+    /**
+     * @param generation the version of the index the page was read from.
+     * @param offset the number of hits before the next page.
+     * @param lastDoc the lucene document number of the last hit of the page,
+     * or -1 if hits weren't ordered by score.
+     * @param lastScore the score of the last hit of the page.
+     */
+    public QueryCursor( long generation, int offset, int lastDoc, float lastScore )
+    {
+        this.generation = generation;
+        this.offset = offset;
+        this.lastDoc = lastDoc;
+        this.lastScore = lastScore;
+    }
+
+    /**
+     * @return the version of the index the page was read from.
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * @return the number of hits before the next page.
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return the document number of the last hit of the page, or -1 if the
+     * hits weren't ordered by score.
+     */
+    public int getLastDoc()
+    {
+        return lastDoc;
+    }
+
+    /**
+     * @return the score of the last hit of the page.
+     */
+    public float getLastScore()
+    {
+        return lastScore;
+    }
+
+    /**
+     * @param cursor a string returned from {@link #toString()}.
+     * @return the cursor {@code cursor} was made from.
+     * @throws IllegalArgumentException if {@code cursor} isn't a cursor.
+     */
+    public static QueryCursor parse( String cursor )
+    {
+        String[] parts = cursor.split( ":" );
+        if ( parts.length != 4 )
+        {
+            throw new IllegalArgumentException( "Not a query cursor '" + cursor + "'" );
+        }
+        try
+        {
+            return new QueryCursor( Long.parseLong( parts[0] ), Integer.parseInt( parts[1] ),
+                    Integer.parseInt( parts[2] ), Float.intBitsToFloat( (int) Long.parseLong( parts[3], 16 ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Not a query cursor '" + cursor + "'", e );
+        }
+    }
+
+    /**
+     * @return this cursor as a string which {@link #parse(String)} accepts.
+     */
+    @Override
+    public String toString()
+    {
+        return generation + ":" + offset + ":" + lastDoc + ":" +
+                Integer.toHexString( Float.floatToIntBits( lastScore ) );
+    }
+
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( !( obj instanceof QueryCursor ) )
+        {
+            return false;
+        }
+        QueryCursor other = (QueryCursor) obj;
+        return generation == other.generation && offset == other.offset &&
+                lastDoc == other.lastDoc &&
+                Float.floatToIntBits( lastScore ) == Float.floatToIntBits( other.lastScore );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) ( generation ^ ( generation >>> 32 ) ) * 31 + offset;
+    }
+}